@@ -0,0 +1,187 @@
+package bufmgr;
+
+import global.PageId;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * The "Adaptive Replacement Cache" policy (Megiddo and Modha): resident pages
+ * are split between T1, for pages used once recently, and T2, for pages used
+ * at least twice.  Ghost lists B1 and B2 remember the ids of pages recently
+ * evicted from each; a miss on a ghost shifts the target size of T1 toward
+ * the list that would have kept the page, so the policy adapts between
+ * recency and frequency.
+ */
+class ARC extends Replacer {
+
+  /** Frame state: in the T1 list. */
+  protected static final int T1 = 1;
+
+  /** Frame state: in the T2 list. */
+  protected static final int T2 = 2;
+
+  // --------------------------------------------------------------------------
+
+  /** Pages used once recently, from least to most recently used. */
+  protected LinkedHashSet<FrameDesc> t1;
+
+  /** Pages used at least twice, from least to most recently used. */
+  protected LinkedHashSet<FrameDesc> t2;
+
+  /** Ids of pages evicted from T1, oldest first. */
+  protected LinkedHashSet<Integer> b1;
+
+  /** Ids of pages evicted from T2, oldest first. */
+  protected LinkedHashSet<Integer> b2;
+
+  /** Target size of T1, in frames. */
+  protected int target;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs an ARC policy with all frames empty.
+   */
+  public ARC(BufMgr bufmgr) {
+    super(bufmgr);
+    t1 = new LinkedHashSet<FrameDesc>();
+    t2 = new LinkedHashSet<FrameDesc>();
+    b1 = new LinkedHashSet<Integer>();
+    b2 = new LinkedHashSet<Integer>();
+    target = 0;
+  }
+
+  /**
+   * An empty frame is reused first.
+   */
+  public void freePage(FrameDesc fdesc) {
+    t1.remove(fdesc);
+    t2.remove(fdesc);
+    free_frames.add(fdesc);
+  }
+
+  /**
+   * A hit moves the page to the most recently used end of T2.
+   */
+  public void pinPage(FrameDesc fdesc) {
+    if (fdesc.state == T1) {
+      t1.remove(fdesc);
+    } else {
+      t2.remove(fdesc);
+    }
+    fdesc.state = T2;
+    t2.add(fdesc);
+  }
+
+  /**
+   * A miss on a ghost adapts the target and puts the page in T2; any other
+   * miss puts it in T1, and trims the ghost lists.
+   */
+  public void loadPage(FrameDesc fdesc) {
+
+    int pid = fdesc.pageno.pid;
+    int size = frametab.length;
+    if (b1.contains(pid)) {
+
+      // T1 was too small
+      int delta = (b1.size() >= b2.size()) ? 1 : b2.size() / b1.size();
+      target = Math.min(size, target + delta);
+      b1.remove(pid);
+      fdesc.state = T2;
+      t2.add(fdesc);
+
+    } else if (b2.contains(pid)) {
+
+      // T2 was too small
+      int delta = (b2.size() >= b1.size()) ? 1 : b1.size() / b2.size();
+      target = Math.max(0, target - delta);
+      b2.remove(pid);
+      fdesc.state = T2;
+      t2.add(fdesc);
+
+    } else {
+
+      // remember at most one pool of pages per side
+      fdesc.state = T1;
+      t1.add(fdesc);
+      while ((t1.size() + b1.size() > size) && !b1.isEmpty()) {
+        removeOldest(b1);
+      }
+      while (t1.size() + t2.size() + b1.size() + b2.size() > 2 * size) {
+        removeOldest(b2.isEmpty() ? b1 : b2);
+      }
+
+    }
+
+  } // public void loadPage(FrameDesc fdesc)
+
+  /**
+   * Unpinning doesn't change the order.
+   */
+  public void unpinPage(FrameDesc fdesc) {
+  }
+
+  /**
+   * Picks an empty frame, or else the least recently used page of T1 if it's
+   * over its target size, or else of T2, remembering its id in the matching
+   * ghost list.
+   */
+  public int pickVictim(PageId pageno) {
+
+    FrameDesc fdesc = free_frames.poll();
+    if (fdesc != null) {
+      return fdesc.index;
+    }
+
+    // choose a list as ARC's REPLACE does, falling back if it's all pinned
+    boolean from_t1 = !t1.isEmpty() && ((t1.size() > target)
+        || ((t1.size() == target) && b2.contains(pageno.pid)));
+    fdesc = unpinned(from_t1 ? t1 : t2);
+    if (fdesc == null) {
+      from_t1 = !from_t1;
+      fdesc = unpinned(from_t1 ? t1 : t2);
+      if (fdesc == null) {
+        return -1;
+      }
+    }
+    (from_t1 ? b1 : b2).add(fdesc.pageno.pid);
+    return fdesc.index;
+
+  } // public int pickVictim(PageId pageno)
+
+  /**
+   * Keeps the target size of T1 within the new size of the pool; the ghost
+   * lists shrink as pages are loaded.
+   */
+  public void resize(FrameDesc[] frametab) {
+    super.resize(frametab);
+    target = Math.min(target, frametab.length);
+  }
+
+  /**
+   * Removes and returns the least recently used unpinned frame in the list,
+   * or null if there isn't one.
+   */
+  protected static FrameDesc unpinned(LinkedHashSet<FrameDesc> list) {
+    Iterator<FrameDesc> frames = list.iterator();
+    while (frames.hasNext()) {
+      FrameDesc fdesc = frames.next();
+      if (fdesc.pincnt == 0) {
+        frames.remove();
+        return fdesc;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Forgets the oldest page id in the ghost list.
+   */
+  protected static void removeOldest(LinkedHashSet<Integer> ghosts) {
+    Iterator<Integer> oldest = ghosts.iterator();
+    oldest.next();
+    oldest.remove();
+  }
+
+} // class ARC extends Replacer
@@ -0,0 +1,51 @@
+package bufmgr;
+
+import global.GlobalConst;
+
+/**
+ * A buffer access strategy keeps the pages that a bulk operation (i.e. a
+ * sequential scan) reads from taking over the buffer pool.  Pages that miss
+ * under the strategy are loaded into a small ring of frames, which are reused
+ * in turn once the ring is full, instead of evicting other pages.  Pages
+ * already in the pool are pinned as usual.  A strategy is meant for one scan
+ * at a time, and is created with BufMgr.newScanStrategy.
+ */
+public class AccessStrategy implements GlobalConst {
+
+  /** Index of the frame in each slot of the ring, or -1 if none yet. */
+  protected int[] frames;
+
+  /** Id of the page last loaded into each slot's frame. */
+  protected int[] pages;
+
+  /** Current slot of the ring. */
+  protected int current;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a strategy with an empty ring of the given size.
+   *
+   * @throws IllegalArgumentException if the ring size isn't positive
+   */
+  public AccessStrategy(int ring_size) {
+    if (ring_size < 1) {
+      throw new IllegalArgumentException("Invalid ring size");
+    }
+    frames = new int[ring_size];
+    pages = new int[ring_size];
+    for (int i = 0; i < ring_size; i++) {
+      frames[i] = -1;
+      pages[i] = INVALID_PAGEID;
+    }
+    current = -1;
+  } // public AccessStrategy(int ring_size)
+
+  /**
+   * Gets the number of frames in the ring.
+   */
+  public int getRingSize() {
+    return frames.length;
+  }
+
+} // public class AccessStrategy implements GlobalConst
@@ -0,0 +1,1407 @@
+package bufmgr;
+
+import diskmgr.FlushBatch;
+import global.GlobalConst;
+import global.LatencyHistogram;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * <h3>Minibase Buffer Manager</h3>
+ * The buffer manager reads disk pages into a main memory page as needed. The
+ * collection of main memory pages (called frames) used by the buffer manager
+ * for this purpose is called the buffer pool. This is just an array of Page
+ * objects. The buffer manager is used by access methods, heap files, and
+ * relational operators to read, write, allocate, and de-allocate pages.
+ * <p>
+ * The frames are slices of one large off-heap region, rather than separate
+ * arrays on the heap, so the pool adds no garbage collector work however big
+ * it is, and disk I/O can go straight between a frame and the OS file.
+ * <p>
+ * Which frame to reuse for a page that isn't in the pool is decided by a
+ * replacement policy (see Replacer), chosen when the buffer manager is
+ * constructed.  Dirty pages are written in the background by the page
+ * cleaner (see PageCleaner), so that unpinning them is cheap.  When the
+ * database is reopened, the pages that were in use are reloaded in the
+ * background (see PageWarmer).
+ * <p>
+ * Hits, misses, evictions, and write-backs are counted by the type of page
+ * and the file it belongs to, which callers pass when pinning (see
+ * BufStats).  These metrics are exported over JMX (see BufMgrMXBean).
+ * <p>
+ * The pool can be resized while it's in use (see resize), to trade memory
+ * with other caches as the load shifts.
+ * <p>
+ * Any number of threads may pin and unpin pages at once.  The page map is a
+ * concurrent (lock-striped) hash table, and pin counts are updated
+ * atomically, so pinning a page that is already pinned takes no lock at all.
+ * The replacement policy is only consulted (under its own lock) when a pin
+ * count goes to or from 0.  To load or free a page, a frame is claimed by
+ * setting its pin count to CLAIMED; other threads that want the frame wait
+ * for the claim to end, and all disk I/O is done while holding only the
+ * frame's own latch.  Threads that share a pinned page should hold its latch
+ * (see latchPage) while they read or modify it.
+ */
+public class BufMgr implements GlobalConst, BufMgrMXBean {
+
+  /** Pin count of a frame being loaded, evicted, or freed. */
+  protected static final int CLAIMED = -1;
+
+  /** Atomically updates the pin counts. */
+  protected static final AtomicIntegerFieldUpdater<FrameDesc> PINCNT =
+      AtomicIntegerFieldUpdater.newUpdater(FrameDesc.class, "pincnt");
+
+  /** Most memory allocated off the heap at once (in bytes). */
+  protected static final int CHUNK_SIZE = 1 << 26;
+
+  /** Alignment of the frames' memory, enough for direct I/O (in bytes). */
+  protected static final int FRAME_ALIGN = 4096;
+
+  // --------------------------------------------------------------------------
+
+  /** Actual pool of pages (can be viewed as an array of byte arrays). */
+  protected volatile Page[] bufpool;
+
+  /** Array of descriptors, each containing the pin count, dirty status, etc. */
+  protected volatile FrameDesc[] frametab;
+
+  /** Number of frames pages may be loaded into; the rest are being removed. */
+  protected volatile int limit;
+
+  /** Maps current page numbers to frames; used for efficient lookups. */
+  protected ConcurrentHashMap<Integer, FrameDesc> pagemap;
+
+  /** The replacement policy to use; also locks its own state. */
+  protected Replacer replacer;
+
+  /** Writes dirty frames in the background. */
+  protected PageCleaner cleaner;
+
+  /** Saves and reloads the hot pages; null until warmStart. */
+  protected PageWarmer warmer;
+
+  /** Prefetches pages for sequential pins; null if disabled. */
+  protected volatile ReadAhead read_ahead;
+
+  /** Number of pages being prefetched, whose frames are busy until loaded. */
+  protected final AtomicInteger prefetching = new AtomicInteger();
+
+  /** Counters for each type of page of each file, by type and file name. */
+  protected ConcurrentHashMap<String, BufStats> stats;
+
+  /** Counters for pages pinned without saying what they are. */
+  protected BufStats other;
+
+  /** Times that pins waited for frames claimed by other threads. */
+  protected LatencyHistogram pinwait;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a buffer manager with the given number of frames, using the
+   * clock replacement policy.
+   */
+  public BufMgr(int numbufs) {
+    this(numbufs, REPLACE_CLOCK);
+  }
+
+  /**
+   * Constructs a buffer manager with the given number of frames and
+   * replacement policy.
+   *
+   * @param numbufs number of frames in the buffer pool
+   * @param policy replacement policy (i.e. REPLACE_CLOCK)
+   * @throws IllegalArgumentException if the policy is unknown
+   */
+  public BufMgr(int numbufs, int policy) {
+
+    // initialize the buffer pool and frame table
+    bufpool = newFrames(numbufs);
+    frametab = new FrameDesc[numbufs];
+    for (int i = 0; i < numbufs; i++) {
+      frametab[i] = new FrameDesc(i);
+    }
+    limit = numbufs;
+
+    // initialize the specialized page map and replacer
+    pagemap = new ConcurrentHashMap<Integer, FrameDesc>(numbufs);
+    replacer = newReplacer(policy);
+    cleaner = new PageCleaner(this);
+    read_ahead = new ReadAhead(this);
+
+    // initialize the metrics
+    stats = new ConcurrentHashMap<String, BufStats>();
+    other = getStats(PAGE_OTHER, null);
+    pinwait = new LatencyHistogram();
+
+  } // public BufMgr(int numbufs, int policy)
+
+  /**
+   * Allocates the given number of frames off the heap.  The region is
+   * allocated in chunks, each aligned for direct I/O, so that a chunk's
+   * memory can be given back once resize removes all of its frames; the
+   * frames are slices of the chunks.
+   */
+  protected static Page[] newFrames(int numbufs) {
+    Page[] frames = new Page[numbufs];
+    int page_size = Minibase.PageSize;
+    int per_chunk = CHUNK_SIZE / page_size;
+    for (int first = 0; first < numbufs; first += per_chunk) {
+      int count = Math.min(per_chunk, numbufs - first);
+      ByteBuffer chunk = ByteBuffer.allocateDirect(count * page_size
+          + 2 * FRAME_ALIGN).alignedSlice(FRAME_ALIGN);
+      for (int i = 0; i < count; i++) {
+        frames[first + i] = new Page(chunk.slice(i * page_size, page_size));
+      }
+    }
+    return frames;
+  } // protected static Page[] newFrames(int numbufs)
+
+  /**
+   * Creates the replacement policy for this buffer manager; subclasses may
+   * override this to plug in their own policies.
+   *
+   * @throws IllegalArgumentException if the policy is unknown
+   */
+  protected Replacer newReplacer(int policy) {
+    switch (policy) {
+      case REPLACE_CLOCK:
+        return new Clock(this);
+      case REPLACE_LRU:
+        return new LRU(this);
+      case REPLACE_LRUK:
+        return new LRUK(this);
+      case REPLACE_2Q:
+        return new TwoQ(this);
+      case REPLACE_ARC:
+        return new ARC(this);
+      default:
+        throw new IllegalArgumentException("Invalid replacement policy");
+    }
+  } // protected Replacer newReplacer(int policy)
+
+  /**
+   * Allocates a set of new pages, and pins the first one in an appropriate
+   * frame in the buffer pool.
+   *
+   * @param firstpg holds the contents of the first page
+   * @param run_size number of new pages to allocate
+   * @return page id of the first new page
+   * @throws IllegalArgumentException if PIN_MEMCPY and the page is pinned
+   * @throws IllegalStateException if all pages are pinned (i.e. pool exceeded)
+   */
+  public PageId newPage(Page firstpg, int run_size) {
+
+    // allocate the run
+    PageId firstid = Minibase.DiskManager.allocate_page(run_size);
+
+    // try to pin the first page, giving the run back if that fails
+    try {
+      pinPage(firstid, firstpg, PIN_MEMCPY);
+    } catch (RuntimeException exc) {
+      Minibase.DiskManager.deallocate_page(firstid, run_size);
+      throw exc;
+    }
+    return firstid;
+
+  } // public PageId newPage(Page firstpg, int run_size)
+
+  /**
+   * Deallocates a single page from disk, freeing it from the pool if needed.
+   *
+   * @param pageno identifies the page to remove
+   * @throws IllegalArgumentException if the page is pinned
+   */
+  public void freePage(PageId pageno) {
+
+    // claim the frame, if the page is in the pool
+    FrameDesc fdesc;
+    while ((fdesc = pagemap.get(pageno.pid)) != null) {
+      boolean claimed = false;
+      synchronized (replacer) {
+        if (fdesc.pincnt > 0 && fdesc.pageno.pid == pageno.pid) {
+          throw new IllegalArgumentException("Page currently pinned");
+        }
+        if (fdesc.pincnt == 0 && fdesc.pageno.pid == pageno.pid) {
+          fdesc.pincnt = CLAIMED;
+          claimed = true;
+        }
+      }
+      if (claimed) {
+
+        // empty the frame and give it back
+        fdesc.latch.writeLock().lock();
+        pagemap.remove(pageno.pid, fdesc);
+        fdesc.pageno.pid = INVALID_PAGEID;
+        fdesc.dirty = false;
+        fdesc.latch.writeLock().unlock();
+        releaseFrame(fdesc, false);
+        break;
+
+      }
+      awaitFrame(fdesc);
+    } // while
+
+    // deallocate the page on disk
+    Minibase.DiskManager.deallocate_page(pageno);
+
+  } // public void freePage(PageId pageno)
+
+  /**
+   * Pins a disk page into the buffer pool. If the page is already pinned, this
+   * simply increments the pin count. Otherwise, this selects another page in
+   * the pool to replace, flushing it to disk if dirty.
+   *
+   * @param pageno identifies the page to pin
+   * @param mempage page that references the pinned frame
+   * @param contents PIN_DISKIO to read the page from disk, PIN_MEMCPY to
+   * copy mempage into the frame, or PIN_NOOP to leave the frame as is
+   * @throws IllegalArgumentException if PIN_MEMCPY and the page is pinned
+   * @throws IllegalStateException if all pages are pinned (i.e. pool exceeded)
+   */
+  public void pinPage(PageId pageno, Page mempage, int contents) {
+    pinPage(pageno, mempage, contents, null, null);
+  }
+
+  /**
+   * Pins a disk page into the buffer pool as above, counting the pin in the
+   * given metrics.
+   *
+   * @param pageno identifies the page to pin
+   * @param mempage page that references the pinned frame
+   * @param contents PIN_DISKIO to read the page from disk, PIN_MEMCPY to
+   * copy mempage into the frame, or PIN_NOOP to leave the frame as is
+   * @param stats counters for the type of page and its file (see getStats)
+   * @throws IllegalArgumentException if PIN_MEMCPY and the page is pinned
+   * @throws IllegalStateException if all pages are pinned (i.e. pool exceeded)
+   */
+  public void pinPage(PageId pageno, Page mempage, int contents,
+      BufStats stats) {
+    pinPage(pageno, mempage, contents, null, stats);
+  }
+
+  /**
+   * Pins a disk page into the buffer pool as above, but if it has to be
+   * loaded, the given access strategy chooses the frame.
+   *
+   * @param pageno identifies the page to pin
+   * @param mempage page that references the pinned frame
+   * @param contents PIN_DISKIO to read the page from disk, PIN_MEMCPY to
+   * copy mempage into the frame, or PIN_NOOP to leave the frame as is
+   * @param strategy ring of frames to load the page into; null to use the
+   * whole pool
+   * @throws IllegalArgumentException if PIN_MEMCPY and the page is pinned
+   * @throws IllegalStateException if all pages are pinned (i.e. pool exceeded)
+   */
+  public void pinPage(PageId pageno, Page mempage, int contents,
+      AccessStrategy strategy) {
+    pinPage(pageno, mempage, contents, strategy, null);
+  }
+
+  /**
+   * Pins a disk page into the buffer pool as above, but if it has to be
+   * loaded, the given access strategy chooses the frame.
+   *
+   * @param pageno identifies the page to pin
+   * @param mempage page that references the pinned frame
+   * @param contents PIN_DISKIO to read the page from disk, PIN_MEMCPY to
+   * copy mempage into the frame, or PIN_NOOP to leave the frame as is
+   * @param strategy ring of frames to load the page into; null to use the
+   * whole pool
+   * @param stats counters for the type of page and its file; null if unknown
+   * @throws IllegalArgumentException if PIN_MEMCPY and the page is pinned
+   * @throws IllegalStateException if all pages are pinned (i.e. pool exceeded)
+   */
+  public void pinPage(PageId pageno, Page mempage, int contents,
+      AccessStrategy strategy, BufStats stats) {
+
+    // validate the pin method
+    if ((contents != PIN_MEMCPY) && (contents != PIN_DISKIO)
+        && (contents != PIN_NOOP)) {
+      throw new IllegalArgumentException(
+          "Illegal parameter value for contents");
+    }
+
+    // retry until the page is pinned in the pool, or loaded into it
+    if (stats == null) {
+      stats = other;
+    }
+    int pid = pageno.pid;
+    FrameDesc fdesc = null;
+    while (fdesc == null) {
+      FrameDesc found = pagemap.get(pid);
+      if (found == null) {
+        if (contents == PIN_DISKIO) {
+          readAhead(pid, strategy, stats);
+        }
+        try {
+          fdesc = loadFrame(pageno, mempage, contents, strategy, stats);
+        } catch (IllegalStateException exc) {
+          // frames being prefetched are only busy until they're loaded
+          if (!awaitPrefetches()) {
+            throw exc;
+          }
+        }
+      } else if (pinFrame(found, pid, contents)) {
+        fdesc = found;
+        fdesc.refs++;
+        stats.hits.increment();
+        if (contents == PIN_MEMCPY) {
+          bufpool[fdesc.index].copyPage(mempage);
+        } else if (fdesc.prefetched) {
+          fdesc.prefetched = false;
+          readAhead(pid, strategy, stats);
+        }
+      }
+    }
+
+    // wrap the buffer
+    mempage.setPage(bufpool[fdesc.index]);
+
+  } // public void pinPage(PageId pageno, Page mempage, int contents, ...)
+
+  /**
+   * Pins a disk page into the buffer pool, reading it from disk if needed,
+   * and points the given view at its frame.  Nothing is copied or allocated,
+   * so callers can keep one view (i.e. from Page.newView) for all their
+   * pins; the view is only valid until the page is unpinned.
+   *
+   * @param pageno identifies the page to pin
+   * @param view page (of any type) to point at the pinned frame
+   * @param stats counters for the type of page and its file; null if unknown
+   * @return the view
+   * @throws IllegalStateException if all pages are pinned (i.e. pool exceeded)
+   */
+  public <T extends Page> T pinView(PageId pageno, T view, BufStats stats) {
+    pinPage(pageno, view, PIN_DISKIO, null, stats);
+    return view;
+  }
+
+  /**
+   * Pins a disk page and points the given view at its frame as above, but
+   * if it has to be loaded, the given access strategy chooses the frame.
+   *
+   * @param pageno identifies the page to pin
+   * @param view page (of any type) to point at the pinned frame
+   * @param strategy ring of frames to load the page into; null to use the
+   * whole pool
+   * @param stats counters for the type of page and its file; null if unknown
+   * @return the view
+   * @throws IllegalStateException if all pages are pinned (i.e. pool exceeded)
+   */
+  public <T extends Page> T pinView(PageId pageno, T view,
+      AccessStrategy strategy, BufStats stats) {
+    pinPage(pageno, view, PIN_DISKIO, strategy, stats);
+    return view;
+  }
+
+  /**
+   * Starts loading the given pages into the pool without pinning them, so
+   * that they are (or are being) read by the time they're pinned.  This is
+   * only a hint: pages already in the pool are skipped, and pages are not
+   * loaded if the I/O threads are all busy or all frames are pinned.
+   *
+   * @param ids identifies the pages to load, in any order
+   */
+  public void prefetch(PageId... ids) {
+    prefetch(ids, null, null);
+  }
+
+  /**
+   * Starts loading a run of pages into the pool without pinning them; see
+   * prefetch.
+   *
+   * @param first identifies the first page of the run
+   * @param run_size number of pages in the run
+   * @throws IllegalArgumentException if run_size is negative
+   */
+  public void prefetchRun(PageId first, int run_size) {
+    if (run_size < 0) {
+      throw new IllegalArgumentException("Invalid run size");
+    }
+    PageId[] ids = new PageId[run_size];
+    for (int i = 0; i < run_size; i++) {
+      ids[i] = new PageId(first.pid + i);
+    }
+    prefetch(ids, null, null);
+  }
+
+  /**
+   * Starts loading the given pages into the pool without pinning them, as
+   * above.  Loads are counted as misses, so the pins that find the pages
+   * count as hits.
+   *
+   * @param ids identifies the pages to load, in any order
+   * @param strategy ring of frames to load the pages into; null to use the
+   * whole pool
+   * @param stats counters for the type of page and its file; null if unknown
+   */
+  public void prefetch(PageId[] ids, AccessStrategy strategy,
+      BufStats stats) {
+    prefetch(ids, strategy, stats, false);
+  }
+
+  /**
+   * Starts loading the given pages into the pool without pinning them, as
+   * above; if ahead, they are for read-ahead, and their first pins are
+   * recorded by it.
+   */
+  protected void prefetch(PageId[] ids, AccessStrategy strategy,
+      BufStats stats, boolean ahead) {
+
+    // sort the pages that aren't in the pool yet
+    int[] pids = new int[ids.length];
+    int count = 0;
+    for (PageId pageno : ids) {
+      if (!pagemap.containsKey(pageno.pid)) {
+        pids[count++] = pageno.pid;
+      }
+    }
+    Arrays.sort(pids, 0, count);
+
+    // load each run of adjacent pages in order, with one request
+    BufStats counters = (stats == null) ? other : stats;
+    int start = 0;
+    for (int i = 1; i <= count; i++) {
+      if ((i == count) || (pids[i] != pids[i - 1] + 1)) {
+        int[] run = Arrays.copyOfRange(pids, start, i);
+        Minibase.DiskManager.tryRunAsync(() -> loadRun(run, strategy,
+            counters, ahead));
+        start = i;
+      }
+    }
+
+  } // protected void prefetch(PageId[] ids, AccessStrategy strategy, ...)
+
+  /**
+   * Sets whether sequential and strided pins from disk are detected and the
+   * pages that follow them are prefetched (see ReadAhead); enabled by
+   * default.
+   */
+  public void setReadAhead(boolean enabled) {
+    if (!enabled) {
+      read_ahead = null;
+    } else if (read_ahead == null) {
+      read_ahead = new ReadAhead(this);
+    }
+  }
+
+  /**
+   * Unpins a disk page from the buffer pool, decreasing its pin count.
+   *
+   * @param pageno identifies the page to unpin
+   * @param dirty UNPIN_DIRTY if the page was modified, UNPIN_CLEAN otherwise
+   * @throws IllegalArgumentException if the page is not present or not pinned
+   */
+  public void unpinPage(PageId pageno, boolean dirty) {
+
+    // first check if the page is unpinned
+    FrameDesc fdesc = pagemap.get(pageno.pid);
+    if ((fdesc == null) || (fdesc.pageno.pid != pageno.pid)) {
+      throw new IllegalArgumentException("Page not in buffer pool");
+    }
+    if (fdesc.pincnt <= 0) {
+      throw new IllegalArgumentException("Page not pinned");
+    }
+
+    // mark it dirty before the pin count drops, so eviction sees it
+    if (dirty && !fdesc.dirty) {
+      fdesc.dirtied = System.nanoTime();
+      fdesc.dirty = true;
+      if (cleaner.thread == null) {
+        cleaner.start();
+      }
+    }
+    unpinFrame(fdesc);
+
+  } // public void unpinPage(PageId pageno, boolean dirty)
+
+  /**
+   * Immediately writes a page in the buffer pool to disk, if dirty.
+   *
+   * @throws IllegalArgumentException if the page is not in the pool
+   */
+  public void flushPage(PageId pageno) {
+
+    // find the frame, and write it under its latch
+    FrameDesc fdesc = pagemap.get(pageno.pid);
+    if (fdesc != null) {
+      fdesc.latch.readLock().lock();
+      if (fdesc.pageno.pid == pageno.pid) {
+        fdesc.writing.lock();
+        if (fdesc.dirty) {
+          fdesc.dirty = false;
+          Minibase.DiskManager.write_page(fdesc.pageno, bufpool[fdesc.index]);
+          fdesc.stats.writebacks.increment();
+        }
+        fdesc.writing.unlock();
+        fdesc.latch.readLock().unlock();
+        return;
+      }
+      fdesc.latch.readLock().unlock();
+    }
+    throw new IllegalArgumentException("Page " + pageno.pid
+        + " not in buffer pool");
+
+  } // public void flushPage(PageId pageno)
+
+  /**
+   * Writes all valid and dirty frames to disk, in page order as one flush.
+   */
+  public void flushAllFrames() {
+
+    FlushBatch batch = Minibase.DiskManager.begin_flush();
+    try {
+      for (FrameDesc fdesc : frametab) {
+        // a frame marked clean may still be being written by another thread
+        if (fdesc.dirty || fdesc.writing.isLocked()) {
+          writeFrame(fdesc, true);
+        }
+      }
+    } finally {
+      Minibase.DiskManager.end_flush(batch);
+    }
+
+  } // public void flushAllFrames()
+
+  /**
+   * Changes the number of frames in the buffer pool, while it's in use.
+   * Growing adds empty frames.  Shrinking removes the frames past the new
+   * size: their pages are evicted (and written first, if dirty) as soon as
+   * they're unpinned, so this waits for any that are pinned, but other pages
+   * may be pinned and loaded meanwhile.  Unpinned pages in those frames
+   * aren't pinned there again; they're reloaded into other frames instead.
+   * If pages stay pinned for RESIZE_TIMEOUT, the pool keeps its old size.
+   * The memory of removed frames is given back a chunk at a time, when the
+   * garbage collector frees it.
+   *
+   * @param numbufs new number of frames in the buffer pool
+   * @throws IllegalArgumentException if numbufs is not positive
+   * @throws IllegalStateException if shrinking timed out
+   */
+  public synchronized void resize(int numbufs) {
+
+    // validate the pool size
+    if (numbufs < 1) {
+      throw new IllegalArgumentException("Invalid pool size");
+    }
+    int oldbufs = frametab.length;
+    if (numbufs > oldbufs) {
+
+      // allocate and describe the new frames, then hand them to the replacer
+      Page[] frames = newFrames(numbufs - oldbufs);
+      Page[] pool = Arrays.copyOf(bufpool, numbufs);
+      FrameDesc[] descs = Arrays.copyOf(frametab, numbufs);
+      for (int i = oldbufs; i < numbufs; i++) {
+        pool[i] = frames[i - oldbufs];
+        descs[i] = new FrameDesc(i);
+      }
+      synchronized (replacer) {
+        bufpool = pool;
+        frametab = descs;
+        limit = numbufs;
+        replacer.resize(descs);
+      }
+
+    } else if (numbufs < oldbufs) {
+
+      // stop loading pages into the frames being removed
+      synchronized (replacer) {
+        limit = numbufs;
+      }
+
+      // evict the unpinned ones as one flush, then wait for the others
+      FrameDesc[] descs = frametab;
+      FlushBatch batch = Minibase.DiskManager.begin_flush();
+      try {
+        for (int i = numbufs; i < oldbufs; i++) {
+          if (claimFrame(descs[i])) {
+            retireFrame(descs[i]);
+          }
+        }
+      } finally {
+        Minibase.DiskManager.end_flush(batch);
+      }
+      long deadline = System.currentTimeMillis() + RESIZE_TIMEOUT;
+      for (int i = numbufs; i < oldbufs; i++) {
+        while (!claimFrame(descs[i])) {
+          long left = deadline - System.currentTimeMillis();
+          if (left <= 0) {
+            restoreFrames(descs, numbufs);
+            throw new IllegalStateException(
+                "Pages still pinned; resize aborted");
+          }
+          awaitUnpinned(descs[i], left);
+        }
+        retireFrame(descs[i]);
+      }
+
+      // drop them from the pool
+      synchronized (replacer) {
+        bufpool = Arrays.copyOf(bufpool, numbufs);
+        frametab = Arrays.copyOf(descs, numbufs);
+        replacer.resize(frametab);
+      }
+
+    } // else if shrinking
+
+  } // public synchronized void resize(int numbufs)
+
+  /**
+   * Stops the page cleaner, waiting for any writes it's doing; call this
+   * before closing the database.  It starts again when a page is next
+   * dirtied.
+   */
+  public void stopCleaner() {
+    cleaner.stop();
+  }
+
+  /**
+   * Starts reloading the pages listed in the given file (if it exists) in
+   * the background, and saving the pages in the pool to it periodically;
+   * call this when the database is opened.
+   *
+   * @param path name of the file that lists the hot pages
+   */
+  public void warmStart(String path) {
+    warmStop();
+    warmer = new PageWarmer(this, path);
+    warmer.start();
+  }
+
+  /**
+   * Stops reloading pages, waiting for the current batch, and saves the
+   * pages in the pool for the next warmStart; call this before closing the
+   * database.
+   */
+  public void warmStop() {
+    if (warmer != null) {
+      warmer.stop();
+      warmer.save();
+      warmer = null;
+    }
+  }
+
+  /**
+   * Latches a pinned page, so that other threads sharing it can't modify it
+   * (shared) or access it at all (exclusive) until it's unlatched.
+   *
+   * @param pageno identifies the page to latch
+   * @param exclusive true to modify the page, false to read it
+   * @throws IllegalArgumentException if the page is not present or not pinned
+   */
+  public void latchPage(PageId pageno, boolean exclusive) {
+    latchOf(pageno, exclusive).lock();
+  }
+
+  /**
+   * Releases a latch acquired with latchPage.
+   *
+   * @param pageno identifies the page to unlatch
+   * @param exclusive must match the latchPage call
+   * @throws IllegalArgumentException if the page is not present or not pinned
+   */
+  public void unlatchPage(PageId pageno, boolean exclusive) {
+    latchOf(pageno, exclusive).unlock();
+  }
+
+  /**
+   * Creates an access strategy for a large sequential scan, so that it only
+   * loads pages into a small ring of frames (1/8 of the pool, up to 256 KB).
+   */
+  public AccessStrategy newScanStrategy() {
+    int ring_size = Math.min(SCAN_RING_BYTES / Minibase.PageSize,
+        frametab.length / 8);
+    return new AccessStrategy(Math.max(ring_size, 1));
+  }
+
+  /**
+   * Gets the total number of buffer frames.
+   */
+  public int getNumFrames() {
+    return bufpool.length;
+  }
+
+  /**
+   * Gets the total number of unpinned buffer frames.
+   */
+  public int getNumUnpinned() {
+    int cnt = 0;
+    for (FrameDesc fdesc : frametab) {
+      if (fdesc.pincnt == 0) {
+        cnt++;
+      }
+    }
+    return cnt;
+  }
+
+  /**
+   * Gets the number of frames that differ from their pages on disk.
+   */
+  public int getNumDirty() {
+    int cnt = 0;
+    for (FrameDesc fdesc : frametab) {
+      if (fdesc.dirty) {
+        cnt++;
+      }
+    }
+    return cnt;
+  }
+
+  /**
+   * Gets the counters for the given type of page of the given file, to pass
+   * when pinning those pages.
+   *
+   * @param type type of page (i.e. PAGE_DATA)
+   * @param file name of the file, or null if none (i.e. temporary)
+   * @throws IllegalArgumentException if the type is unknown
+   */
+  public BufStats getStats(int type, String file) {
+    String key = type + ":" + file;
+    BufStats found = stats.get(key);
+    if (found == null) {
+      BufStats created = new BufStats(type, file);
+      found = stats.putIfAbsent(key, created);
+      if (found == null) {
+        found = created;
+      }
+    }
+    return found;
+  } // public BufStats getStats(int type, String file)
+
+  /**
+   * Gets the counters for each type of page, totaled over all files.
+   */
+  public List<BufStats> getStatsByType() {
+    ArrayList<BufStats> totals = new ArrayList<BufStats>();
+    for (int type = PAGE_OTHER; type <= PAGE_DATA; type++) {
+      BufStats total = new BufStats(type, null);
+      for (BufStats each : stats.values()) {
+        if (each.type == type) {
+          total.add(each);
+        }
+      }
+      totals.add(total);
+    }
+    return totals;
+  } // public List<BufStats> getStatsByType()
+
+  /**
+   * Gets the counters for each type of page of each file, by file name.
+   */
+  public List<BufStats> getStatsByFile() {
+    ArrayList<BufStats> list = new ArrayList<BufStats>(stats.values());
+    list.sort(Comparator.comparing((BufStats each) -> String.valueOf(
+        each.file)).thenComparingInt(each -> each.type));
+    return list;
+  }
+
+  /**
+   * Gets the number of pins that found the page in the pool.
+   */
+  public long getHits() {
+    long sum = 0;
+    for (BufStats each : stats.values()) {
+      sum += each.getHits();
+    }
+    return sum;
+  }
+
+  /**
+   * Gets the number of pins that had to load the page.
+   */
+  public long getMisses() {
+    long sum = 0;
+    for (BufStats each : stats.values()) {
+      sum += each.getMisses();
+    }
+    return sum;
+  }
+
+  /**
+   * Gets the fraction of pins that found the page in the pool.
+   */
+  public double getHitRatio() {
+    long hits = getHits();
+    long pins = hits + getMisses();
+    return (pins == 0) ? 0 : (double) hits / pins;
+  }
+
+  /**
+   * Gets the number of pages replaced by other pages.
+   */
+  public long getEvictions() {
+    long sum = 0;
+    for (BufStats each : stats.values()) {
+      sum += each.getEvictions();
+    }
+    return sum;
+  }
+
+  /**
+   * Gets the number of dirty pages written to disk.
+   */
+  public long getWriteBacks() {
+    long sum = 0;
+    for (BufStats each : stats.values()) {
+      sum += each.getWriteBacks();
+    }
+    return sum;
+  }
+
+  /**
+   * Gets the times that pins waited for frames being loaded or evicted by
+   * other threads.
+   */
+  public LatencyHistogram getPinWait() {
+    return pinwait;
+  }
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Pins a frame found in the page map, if it still holds the page.  Frames
+   * that are already pinned just get another pin; unpinning frames are only
+   * pinned under the replacer's lock, so it can't evict them at the same
+   * time.
+   *
+   * @return true if pinned, or false to look the page up again
+   * @throws IllegalArgumentException if PIN_MEMCPY and the page is pinned
+   */
+  protected boolean pinFrame(FrameDesc fdesc, int pid, int contents) {
+
+    // if it's already pinned, just count another pin
+    int pincnt = fdesc.pincnt;
+    if (pincnt > 0) {
+      if (contents == PIN_MEMCPY) {
+        if (fdesc.pageno.pid == pid) {
+          throw new IllegalArgumentException(
+              "Page pinned; PIN_MEMCPY not allowed");
+        }
+        return false;
+      }
+      if (!PINCNT.compareAndSet(fdesc, pincnt, pincnt + 1)) {
+        return false;
+      }
+
+      // the frame may have been reused for another page in the meantime
+      if (fdesc.pageno.pid != pid) {
+        unpinFrame(fdesc);
+        return false;
+      }
+      return true;
+
+    } // if pinned
+
+    // if it's being loaded, evicted, or freed, wait for that to finish
+    if (pincnt == CLAIMED) {
+      long start = System.nanoTime();
+      awaitFrame(fdesc);
+      pinwait.recordSince(start);
+      return false;
+    }
+
+    // if it's being removed, evict it so the page is loaded elsewhere
+    if (fdesc.index >= limit) {
+      if (claimFrame(fdesc)) {
+        retireFrame(fdesc);
+      }
+      return false;
+    }
+
+    // otherwise pin it and let the replacer know
+    synchronized (replacer) {
+      if ((fdesc.pincnt != 0) || (fdesc.pageno.pid != pid)) {
+        return false;
+      }
+      fdesc.pincnt = 1;
+      replacer.pinPage(fdesc);
+    }
+    return true;
+
+  } // protected boolean pinFrame(FrameDesc fdesc, int pid, int contents)
+
+  /**
+   * Decrements a frame's pin count, letting the replacer know if it drops
+   * to 0.
+   *
+   * @throws IllegalArgumentException if the frame is not pinned
+   */
+  protected void unpinFrame(FrameDesc fdesc) {
+    int pincnt;
+    do {
+      pincnt = fdesc.pincnt;
+      if (pincnt <= 0) {
+        throw new IllegalArgumentException("Page not pinned");
+      }
+    } while (!PINCNT.compareAndSet(fdesc, pincnt, pincnt - 1));
+    if (pincnt == 1) {
+      synchronized (replacer) {
+        replacer.unpinPage(fdesc);
+      }
+
+      // a frame being removed can now be evicted
+      if (fdesc.index >= limit) {
+        synchronized (fdesc) {
+          fdesc.notifyAll();
+        }
+      }
+    }
+  } // protected void unpinFrame(FrameDesc fdesc)
+
+  /**
+   * Loads a page that wasn't found in the page map into a victim frame,
+   * writing out the frame's old page if it was dirty.  The load is counted
+   * as a miss in the given metrics.
+   *
+   * @return the pinned frame, or null if another thread loaded the page first
+   * @throws IllegalStateException if all pages are pinned (i.e. pool exceeded)
+   */
+  protected FrameDesc loadFrame(PageId pageno, Page mempage, int contents,
+      AccessStrategy strategy, BufStats stats) {
+
+    // map the page to a victim frame, unless another thread got there first
+    FrameDesc fdesc = mapFrame(pageno, strategy, stats);
+    if (fdesc == null) {
+      return null;
+    }
+
+    // fill the frame, leaving it empty if the read fails
+    try {
+      if (contents == PIN_MEMCPY) {
+        bufpool[fdesc.index].copyPage(mempage);
+      } else if (contents == PIN_DISKIO) {
+        Minibase.DiskManager.read_page(pageno, bufpool[fdesc.index]);
+      }
+    } catch (RuntimeException exc) {
+      unmapFrame(fdesc);
+      throw exc;
+    }
+
+    // release the frame pinned
+    fdesc.refs = 1;
+    fdesc.latch.writeLock().unlock();
+    releaseFrame(fdesc, true);
+    stats.misses.increment();
+    return fdesc;
+
+  } // protected FrameDesc loadFrame(PageId pageno, Page mempage, ...)
+
+  /**
+   * Claims a victim frame for a page that wasn't found in the page map, and
+   * maps the page to it, writing out the frame's old page if it was dirty.
+   *
+   * @return the frame, still claimed and write latched; or null if another
+   * thread mapped the page first
+   * @throws IllegalStateException if all pages are pinned (i.e. pool exceeded)
+   */
+  protected FrameDesc mapFrame(PageId pageno, AccessStrategy strategy,
+      BufStats stats) {
+
+    // claim an unpinned frame; nothing else can pin it until it's released
+    FrameDesc fdesc = claimVictim(pageno, strategy);
+    fdesc.latch.writeLock().lock();
+
+    // if the frame was in use and dirty, write it to disk before unmapping
+    if (fdesc.pageno.pid != INVALID_PAGEID) {
+      if (fdesc.dirty) {
+        Minibase.DiskManager.write_page(fdesc.pageno, bufpool[fdesc.index]);
+        fdesc.stats.writebacks.increment();
+        cleaner.wakeup();
+      }
+      fdesc.stats.evictions.increment();
+      pagemap.remove(fdesc.pageno.pid, fdesc);
+    }
+    fdesc.pageno.pid = pageno.pid;
+    fdesc.dirty = false;
+    fdesc.prefetched = false;
+    fdesc.stats = stats;
+
+    // map the new page, or release the frame empty
+    if (pagemap.putIfAbsent(pageno.pid, fdesc) != null) {
+      fdesc.pageno.pid = INVALID_PAGEID;
+      fdesc.latch.writeLock().unlock();
+      releaseFrame(fdesc, false);
+      return null;
+    }
+    return fdesc;
+
+  } // protected FrameDesc mapFrame(PageId pageno, AccessStrategy strategy, ...)
+
+  /**
+   * Unmaps the page from a frame returned by mapFrame (i.e. if it couldn't
+   * be read), and releases the frame empty.
+   */
+  protected void unmapFrame(FrameDesc fdesc) {
+    pagemap.remove(fdesc.pageno.pid, fdesc);
+    fdesc.pageno.pid = INVALID_PAGEID;
+    fdesc.latch.writeLock().unlock();
+    releaseFrame(fdesc, false);
+  }
+
+  /**
+   * Loads a run of adjacent pages into the pool, unpinned, reading each run
+   * of them that isn't in the pool yet with a single I/O.  Each page starts
+   * with the given number of references.  Stops early if all frames are
+   * pinned.
+   *
+   * @throws IllegalArgumentException if the run is invalid
+   */
+  protected void loadBatch(int first, int[] refs, BufStats stats) {
+
+    // map each page that isn't in the pool to a frame
+    int count = refs.length;
+    FrameDesc[] fdescs = new FrameDesc[count];
+    try {
+      for (int i = 0; i < count; i++) {
+        if (!pagemap.containsKey(first + i)) {
+          fdescs[i] = mapFrame(new PageId(first + i), null, stats);
+        }
+      }
+    } catch (IllegalStateException exc) {
+      // load as many as there was room for
+    }
+
+    // read each run of mapped frames at once
+    Page[] pages = new Page[count];
+    RuntimeException failed = null;
+    for (int i = 0; i < count; ) {
+      int run = 0;
+      while ((i + run < count) && (fdescs[i + run] != null)) {
+        pages[run] = bufpool[fdescs[i + run].index];
+        run++;
+      }
+      if ((run > 0) && (failed == null)) {
+        try {
+          Minibase.DiskManager.read_pages(new PageId(first + i), run, pages);
+        } catch (RuntimeException exc) {
+          failed = exc;
+        }
+      }
+      i += Math.max(run, 1);
+    }
+
+    // release the frames unpinned, or empty if the reads failed
+    for (int i = 0; i < count; i++) {
+      FrameDesc fdesc = fdescs[i];
+      if (fdesc != null) {
+        if (failed != null) {
+          unmapFrame(fdesc);
+        } else {
+          fdesc.refs = refs[i];
+          fdesc.latch.writeLock().unlock();
+          releaseFrame(fdesc, true);
+          stats.misses.increment();
+          unpinFrame(fdesc);
+        }
+      }
+    }
+    if (failed != null) {
+      throw failed;
+    }
+
+  } // protected void loadBatch(int first, int[] refs, BufStats stats)
+
+  /**
+   * Loads the given pages into the pool and unpins them, for prefetch;
+   * pages already in the pool are skipped.  Gives up quietly if a page is
+   * invalid or all frames are pinned.  Pages loaded ahead are marked, so
+   * their first pins continue read-ahead.
+   */
+  protected void loadRun(int[] pids, AccessStrategy strategy,
+      BufStats stats, boolean ahead) {
+    for (int pid : pids) {
+      if (pagemap.containsKey(pid)) {
+        continue;
+      }
+      prefetching.incrementAndGet();
+      try {
+        FrameDesc fdesc = loadFrame(new PageId(pid), null, PIN_DISKIO,
+            strategy, stats);
+        if (fdesc != null) {
+          fdesc.prefetched = ahead;
+          unpinFrame(fdesc);
+        }
+      } catch (RuntimeException exc) {
+        return;
+      } finally {
+        prefetching.decrementAndGet();
+      }
+    }
+  } // protected void loadRun(int[] pids, AccessStrategy strategy, ...)
+
+  /**
+   * Records a pin for read-ahead, if it's enabled.
+   */
+  protected void readAhead(int pid, AccessStrategy strategy, BufStats stats) {
+    ReadAhead ahead = read_ahead;
+    if (ahead != null) {
+      ahead.access(pid, strategy, stats);
+    }
+  }
+
+  /**
+   * Asks the replacer for a victim, and claims it.  Frames that were pinned
+   * or claimed since the replacer last saw them are skipped.  Given a
+   * strategy, this reuses the next frame of its ring instead, if it's
+   * unpinned and still holds the page the ring put there; otherwise the
+   * victim takes that place in the ring.
+   *
+   * @throws IllegalStateException if all pages are pinned (i.e. pool exceeded)
+   */
+  protected FrameDesc claimVictim(PageId pageno, AccessStrategy strategy) {
+    synchronized (replacer) {
+
+      // try the ring first
+      int slot = -1;
+      if (strategy != null) {
+        slot = (strategy.current + 1) % strategy.frames.length;
+        strategy.current = slot;
+        int frameno = strategy.frames[slot];
+        if ((frameno >= 0) && (frameno < limit)) {
+          FrameDesc fdesc = frametab[frameno];
+          if ((fdesc.pincnt == 0)
+              && (fdesc.pageno.pid == strategy.pages[slot])) {
+            replacer.takeFrame(fdesc);
+            fdesc.pincnt = CLAIMED;
+            strategy.pages[slot] = pageno.pid;
+            return fdesc;
+          }
+        }
+      }
+
+      // otherwise take a victim from the whole pool
+      for (int tries = 0; tries <= frametab.length; tries++) {
+        int frameno = replacer.pickVictim(pageno);
+        if (frameno < 0) {
+          break;
+        }
+        FrameDesc fdesc = frametab[frameno];
+        if ((fdesc.pincnt == 0) && (frameno < limit)) {
+          fdesc.pincnt = CLAIMED;
+          if (slot >= 0) {
+            strategy.frames[slot] = frameno;
+            strategy.pages[slot] = pageno.pid;
+          }
+          return fdesc;
+        }
+      }
+
+    } // synchronized
+    throw new IllegalStateException("Buffer pool exceeded");
+  } // protected FrameDesc claimVictim(PageId pageno, ...)
+
+  /**
+   * Claims a frame that's being removed, if it's unpinned, taking it away
+   * from the replacer.
+   *
+   * @return true if claimed, or false if it's pinned or claimed already
+   */
+  protected boolean claimFrame(FrameDesc fdesc) {
+    synchronized (replacer) {
+      if (fdesc.pincnt != 0) {
+        return false;
+      }
+      replacer.takeFrame(fdesc);
+      fdesc.pincnt = CLAIMED;
+      return true;
+    }
+  } // protected boolean claimFrame(FrameDesc fdesc)
+
+  /**
+   * Evicts the page from a claimed frame that's being removed, writing it
+   * first if dirty, and ends the claim with the frame empty.  Only resize
+   * can claim the frame after that.
+   */
+  protected void retireFrame(FrameDesc fdesc) {
+
+    // unmap the page under the frame's latch
+    fdesc.latch.writeLock().lock();
+    if (fdesc.pageno.pid != INVALID_PAGEID) {
+      if (fdesc.dirty) {
+        Minibase.DiskManager.write_page(fdesc.pageno, bufpool[fdesc.index]);
+        fdesc.stats.writebacks.increment();
+      }
+      fdesc.stats.evictions.increment();
+      pagemap.remove(fdesc.pageno.pid, fdesc);
+      fdesc.pageno.pid = INVALID_PAGEID;
+    }
+    fdesc.dirty = false;
+    fdesc.latch.writeLock().unlock();
+
+    // wake up any threads that found the page before it was unmapped
+    synchronized (replacer) {
+      fdesc.pincnt = 0;
+    }
+    synchronized (fdesc) {
+      fdesc.notifyAll();
+    }
+
+  } // protected void retireFrame(FrameDesc fdesc)
+
+  /**
+   * Gives the frames past the given size back to the replacer after a
+   * shrink was aborted, and lets pages be loaded into them again.  Frames
+   * that were emptied are freed once (taking them first drops any earlier
+   * free entry).
+   */
+  protected void restoreFrames(FrameDesc[] descs, int numbufs) {
+    synchronized (replacer) {
+      for (int i = numbufs; i < descs.length; i++) {
+        FrameDesc fdesc = descs[i];
+        if ((fdesc.pincnt == 0) && (fdesc.pageno.pid == INVALID_PAGEID)) {
+          replacer.takeFrame(fdesc);
+          replacer.freePage(fdesc);
+        }
+      }
+      limit = descs.length;
+    }
+  } // protected void restoreFrames(FrameDesc[] descs, int numbufs)
+
+  /**
+   * Ends a frame's claim, either pinned with a newly loaded page or empty,
+   * and wakes up any threads waiting for it.
+   */
+  protected void releaseFrame(FrameDesc fdesc, boolean loaded) {
+    synchronized (replacer) {
+      if (loaded) {
+        fdesc.pincnt = 1;
+        replacer.loadPage(fdesc);
+      } else {
+        fdesc.pincnt = 0;
+        replacer.freePage(fdesc);
+      }
+    }
+    synchronized (fdesc) {
+      fdesc.notifyAll();
+    }
+  } // protected void releaseFrame(FrameDesc fdesc, boolean loaded)
+
+  /**
+   * Writes a frame to disk under its shared latch, if it holds a page and is
+   * dirty.  Unless told to wait, this skips frames whose latch is busy or
+   * that another thread is writing.
+   *
+   * @return true if the frame was written
+   */
+  protected boolean writeFrame(FrameDesc fdesc, boolean wait) {
+    Lock latch = fdesc.latch.readLock();
+    if (wait) {
+      latch.lock();
+      fdesc.writing.lock();
+    } else if (!latch.tryLock()) {
+      return false;
+    } else if (!fdesc.writing.tryLock()) {
+      latch.unlock();
+      return false;
+    }
+    boolean written = fdesc.dirty && (fdesc.pageno.pid != INVALID_PAGEID);
+    if (written) {
+      fdesc.dirty = false;
+      Minibase.DiskManager.write_page(fdesc.pageno, bufpool[fdesc.index]);
+      fdesc.stats.writebacks.increment();
+    }
+    fdesc.writing.unlock();
+    latch.unlock();
+    return written;
+  } // protected boolean writeFrame(FrameDesc fdesc, boolean wait)
+
+  /**
+   * Waits until a frame is claimed or unpinned, as long as pages are being
+   * prefetched, so that a pin that found all frames pinned can retry once
+   * their frames are unpinned.
+   *
+   * @return false if all frames are pinned and nothing is being prefetched
+   */
+  protected boolean awaitPrefetches() {
+    while (true) {
+      boolean busy = (prefetching.get() > 0);
+      FrameDesc[] descs = frametab;
+      int stop = Math.min(limit, descs.length);
+      for (int i = 0; i < stop; i++) {
+        int pincnt = descs[i].pincnt;
+        if (pincnt == CLAIMED) {
+          awaitFrame(descs[i]);
+        }
+        if (pincnt <= 0) {
+          return true;
+        }
+      }
+      if (!busy) {
+        return false;
+      }
+      Thread.yield();
+    }
+  } // protected boolean awaitPrefetches()
+
+  /**
+   * Waits until a frame is no longer claimed.
+   */
+  protected static void awaitFrame(FrameDesc fdesc) {
+    boolean interrupted = false;
+    synchronized (fdesc) {
+      while (fdesc.pincnt == CLAIMED) {
+        try {
+          fdesc.wait();
+        } catch (InterruptedException exc) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  } // protected static void awaitFrame(FrameDesc fdesc)
+
+  /**
+   * Waits until a frame is neither pinned nor claimed, or for the given time
+   * (in milliseconds).  Only frames being removed are notified when they're
+   * unpinned.
+   */
+  protected static void awaitUnpinned(FrameDesc fdesc, long millis) {
+    boolean interrupted = false;
+    long deadline = System.currentTimeMillis() + millis;
+    synchronized (fdesc) {
+      long left = millis;
+      while ((fdesc.pincnt != 0) && (left > 0)) {
+        try {
+          fdesc.wait(left);
+        } catch (InterruptedException exc) {
+          interrupted = true;
+        }
+        left = deadline - System.currentTimeMillis();
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  } // protected static void awaitUnpinned(FrameDesc fdesc, long millis)
+
+  /**
+   * Gets the shared or exclusive latch of a pinned page.
+   *
+   * @throws IllegalArgumentException if the page is not present or not pinned
+   */
+  protected Lock latchOf(PageId pageno, boolean exclusive) {
+    FrameDesc fdesc = pagemap.get(pageno.pid);
+    if ((fdesc == null) || (fdesc.pageno.pid != pageno.pid)) {
+      throw new IllegalArgumentException("Page not in buffer pool");
+    }
+    if (fdesc.pincnt <= 0) {
+      throw new IllegalArgumentException("Page not pinned");
+    }
+    return exclusive ? fdesc.latch.writeLock() : fdesc.latch.readLock();
+  }
+
+} // public class BufMgr implements GlobalConst
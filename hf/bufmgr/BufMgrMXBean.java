@@ -0,0 +1,74 @@
+package bufmgr;
+
+import global.LatencyHistogram;
+
+import java.util.List;
+
+/**
+ * Management interface of the buffer manager, through which its metrics are
+ * exported over JMX (see Minibase), and the pool can be resized.
+ */
+public interface BufMgrMXBean {
+
+  /**
+   * Changes the number of frames in the buffer pool, while it's in use.
+   */
+  public void resize(int numbufs);
+
+  /**
+   * Gets the total number of buffer frames.
+   */
+  public int getNumFrames();
+
+  /**
+   * Gets the total number of unpinned buffer frames.
+   */
+  public int getNumUnpinned();
+
+  /**
+   * Gets the number of frames that differ from their pages on disk.
+   */
+  public int getNumDirty();
+
+  /**
+   * Gets the number of pins that found the page in the pool.
+   */
+  public long getHits();
+
+  /**
+   * Gets the number of pins that had to load the page.
+   */
+  public long getMisses();
+
+  /**
+   * Gets the fraction of pins that found the page in the pool.
+   */
+  public double getHitRatio();
+
+  /**
+   * Gets the number of pages replaced by other pages.
+   */
+  public long getEvictions();
+
+  /**
+   * Gets the number of dirty pages written to disk.
+   */
+  public long getWriteBacks();
+
+  /**
+   * Gets the counters for each type of page, totaled over all files.
+   */
+  public List<BufStats> getStatsByType();
+
+  /**
+   * Gets the counters for each type of page of each file.
+   */
+  public List<BufStats> getStatsByFile();
+
+  /**
+   * Gets the times that pins waited for frames being loaded or evicted by
+   * other threads.
+   */
+  public LatencyHistogram getPinWait();
+
+} // public interface BufMgrMXBean
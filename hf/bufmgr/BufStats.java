@@ -0,0 +1,120 @@
+package bufmgr;
+
+import global.GlobalConst;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Buffer pool counters for one type of page (i.e. PAGE_DATA) of one file.
+ * Callers get them from BufMgr.getStats and pass them when pinning, so the
+ * buffer manager can tell what it's caching; hits and misses are counted
+ * for the pinner, and evictions and write-backs for whoever loaded the page.
+ * The counters may be updated by any number of threads at once.
+ */
+public class BufStats implements GlobalConst {
+
+  /** Display names of the page types, from PAGE_OTHER on. */
+  protected static final String[] TYPE_NAMES = { "other", "header",
+      "space map", "directory", "data" };
+
+  // --------------------------------------------------------------------------
+
+  /** Type of the pages counted (i.e. PAGE_DATA). */
+  protected int type;
+
+  /** Name of the file the pages belong to, or null if none. */
+  protected String file;
+
+  /** Number of pins that found the page in the pool. */
+  protected LongAdder hits;
+
+  /** Number of pins that had to load the page. */
+  protected LongAdder misses;
+
+  /** Number of pages replaced by other pages. */
+  protected LongAdder evictions;
+
+  /** Number of dirty pages written to disk. */
+  protected LongAdder writebacks;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs zeroed counters for the given type of page of the given file.
+   *
+   * @throws IllegalArgumentException if the type is unknown
+   */
+  public BufStats(int type, String file) {
+    if ((type < PAGE_OTHER) || (type >= PAGE_OTHER + TYPE_NAMES.length)) {
+      throw new IllegalArgumentException("Invalid page type");
+    }
+    this.type = type;
+    this.file = file;
+    hits = new LongAdder();
+    misses = new LongAdder();
+    evictions = new LongAdder();
+    writebacks = new LongAdder();
+  } // public BufStats(int type, String file)
+
+  /**
+   * Gets the display name of the type of page counted.
+   */
+  public String getType() {
+    return TYPE_NAMES[type - PAGE_OTHER];
+  }
+
+  /**
+   * Gets the name of the file the pages belong to, or null if none.
+   */
+  public String getFile() {
+    return file;
+  }
+
+  /**
+   * Gets the number of pins that found the page in the pool.
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Gets the number of pins that had to load the page.
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Gets the fraction of pins that found the page in the pool.
+   */
+  public double getHitRatio() {
+    long hits = getHits();
+    long pins = hits + getMisses();
+    return (pins == 0) ? 0 : (double) hits / pins;
+  }
+
+  /**
+   * Gets the number of pages replaced by other pages.
+   */
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  /**
+   * Gets the number of dirty pages written to disk.
+   */
+  public long getWriteBacks() {
+    return writebacks.sum();
+  }
+
+  /**
+   * Adds the given counters into these ones (i.e. to total them by type).
+   */
+  protected void add(BufStats stats) {
+    hits.add(stats.getHits());
+    misses.add(stats.getMisses());
+    evictions.add(stats.getEvictions());
+    writebacks.add(stats.getWriteBacks());
+  }
+
+} // public class BufStats implements GlobalConst
@@ -0,0 +1,84 @@
+package bufmgr;
+
+import global.PageId;
+
+/**
+ * The "Clock" replacement policy: frames are arranged in a circle, and a hand
+ * sweeps around it looking for a frame that wasn't referenced since the last
+ * sweep.  Unpinned frames get a second chance before they are evicted.
+ * Empty frames are simply available, so the free list isn't used.
+ */
+class Clock extends Replacer {
+
+  /** Frame state: may be replaced. */
+  protected static final int AVAILABLE = 10;
+
+  /** Frame state: unpinned, but referenced since the last sweep. */
+  protected static final int REFERENCED = 11;
+
+  /** Frame state: pinned, and may not be replaced. */
+  protected static final int PINNED = 12;
+
+  /** Index of the frame the hand last pointed to. */
+  protected int head;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a clock policy with all frames available.
+   */
+  public Clock(BufMgr bufmgr) {
+    super(bufmgr);
+    for (FrameDesc fdesc : frametab) {
+      fdesc.state = AVAILABLE;
+    }
+    head = -1;
+  }
+
+  /**
+   * An empty frame is available.
+   */
+  public void freePage(FrameDesc fdesc) {
+    fdesc.state = AVAILABLE;
+  }
+
+  /**
+   * A pinned frame is unavailable.
+   */
+  public void pinPage(FrameDesc fdesc) {
+    fdesc.state = PINNED;
+  }
+
+  /**
+   * A loaded frame is pinned.
+   */
+  public void loadPage(FrameDesc fdesc) {
+    fdesc.state = PINNED;
+  }
+
+  /**
+   * A frame that's no longer pinned gets a second chance.
+   */
+  public void unpinPage(FrameDesc fdesc) {
+    if (fdesc.pincnt == 0) {
+      fdesc.state = REFERENCED;
+    }
+  }
+
+  /**
+   * Sweeps the frames (at most twice) for an available one.
+   */
+  public int pickVictim(PageId pageno) {
+    for (int count = 0; count < 2 * frametab.length; count++) {
+      head = (head + 1) % frametab.length;
+      if (frametab[head].state == REFERENCED) {
+        frametab[head].state = AVAILABLE;
+      }
+      if (frametab[head].state == AVAILABLE) {
+        return head;
+      }
+    }
+    return -1;
+  } // public int pickVictim(PageId pageno)
+
+} // class Clock extends Replacer
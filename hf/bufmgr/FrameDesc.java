@@ -0,0 +1,68 @@
+package bufmgr;
+
+import global.GlobalConst;
+import global.PageId;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A frame description holds the state of a buffer frame, and is shared with
+ * the replacement policy.  The pin count and dirty status may change at any
+ * time on other threads; the page id only changes while the frame is claimed
+ * by the buffer manager (i.e. pincnt is negative) and write latched.
+ */
+public class FrameDesc implements GlobalConst {
+
+  /** Index of the frame in the buffer pool. */
+  public int index;
+
+  /** Identifies the page in the frame, or INVALID_PAGEID if it's empty. */
+  public PageId pageno;
+
+  /** Number of times the page is currently pinned. */
+  public volatile int pincnt;
+
+  /** Whether the frame differs from the page on disk. */
+  public volatile boolean dirty;
+
+  /** When the frame last became dirty (System.nanoTime). */
+  public volatile long dirtied;
+
+  /** Number of times the page was pinned since it was loaded; approximate,
+   * as it's counted without synchronization. */
+  public int refs;
+
+  /** Whether the page was prefetched, and hasn't been pinned since. */
+  public boolean prefetched;
+
+  /** Counters of whoever loaded the page into the frame. */
+  public BufStats stats;
+
+  /** Replacement state, for the policy's own use. */
+  public int state;
+
+  /** Latch that guards the frame's contents while they are read or written. */
+  public final ReentrantReadWriteLock latch;
+
+  /** Held (with the shared latch) while the frame is written, from when it's
+   * marked clean until its contents are saved, so that a flush can wait for a
+   * write that's under way. */
+  public final ReentrantLock writing;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs an empty frame description for the given frame.
+   */
+  public FrameDesc(int index) {
+    this.index = index;
+    pageno = new PageId();
+    pincnt = 0;
+    dirty = false;
+    state = 0;
+    latch = new ReentrantReadWriteLock();
+    writing = new ReentrantLock();
+  }
+
+} // public class FrameDesc implements GlobalConst
@@ -0,0 +1,73 @@
+package bufmgr;
+
+import global.PageId;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * The "Least Recently Used" replacement policy: evicts the page that was
+ * unpinned the longest time ago.
+ */
+class LRU extends Replacer {
+
+  /** Unpinned frames, from least to most recently unpinned. */
+  protected LinkedHashSet<FrameDesc> unpinned;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs an LRU policy with all frames empty.
+   */
+  public LRU(BufMgr bufmgr) {
+    super(bufmgr);
+    unpinned = new LinkedHashSet<FrameDesc>();
+  }
+
+  /**
+   * An empty frame is reused first.
+   */
+  public void freePage(FrameDesc fdesc) {
+    unpinned.remove(fdesc);
+    free_frames.add(fdesc);
+  }
+
+  /**
+   * A pinned frame can't be evicted.
+   */
+  public void pinPage(FrameDesc fdesc) {
+    unpinned.remove(fdesc);
+  }
+
+  /**
+   * A loaded frame is pinned.
+   */
+  public void loadPage(FrameDesc fdesc) {
+  }
+
+  /**
+   * A frame that's no longer pinned becomes the most recently used.
+   */
+  public void unpinPage(FrameDesc fdesc) {
+    if (fdesc.pincnt == 0) {
+      unpinned.add(fdesc);
+    }
+  }
+
+  /**
+   * Picks an empty frame, or else the least recently used one.
+   */
+  public int pickVictim(PageId pageno) {
+    FrameDesc fdesc = free_frames.poll();
+    if (fdesc == null) {
+      Iterator<FrameDesc> lru = unpinned.iterator();
+      if (!lru.hasNext()) {
+        return -1;
+      }
+      fdesc = lru.next();
+      lru.remove();
+    }
+    return fdesc.index;
+  } // public int pickVictim(PageId pageno)
+
+} // class LRU extends Replacer
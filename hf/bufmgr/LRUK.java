@@ -0,0 +1,137 @@
+package bufmgr;
+
+import global.PageId;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The "LRU-K" replacement policy (O'Neil et al.), with K = 2: evicts the page
+ * whose K-th most recent reference is the oldest.  Pages referenced fewer
+ * than K times go first, least recently used first, so a page read once by a
+ * scan doesn't displace pages that are used repeatedly.  Re-pinning a page
+ * that is still pinned is a correlated reference, and doesn't count.  The
+ * history of recently evicted pages is kept, so pages that return soon are
+ * recognized.
+ */
+class LRUK extends Replacer {
+
+  /** Number of references that count. */
+  protected static final int K = 2;
+
+  /** Logical time, advanced by each reference. */
+  protected long clock;
+
+  /** Times of the last K references to the page in each frame, latest first. */
+  protected long[][] history;
+
+  /** Reference history of evicted pages, by page id. */
+  protected LinkedHashMap<Integer, long[]> retained;
+
+  /** Unpinned frames, in eviction order. */
+  protected TreeSet<FrameDesc> unpinned;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs an LRU-K policy with all frames empty.
+   */
+  @SuppressWarnings("serial")
+  public LRUK(BufMgr bufmgr) {
+    super(bufmgr);
+    history = new long[frametab.length][K];
+    retained = new LinkedHashMap<Integer, long[]>() {
+      protected boolean removeEldestEntry(Map.Entry<Integer, long[]> eldest) {
+        return size() > frametab.length;
+      }
+    };
+    unpinned = new TreeSet<FrameDesc>(Comparator
+        .comparingLong((FrameDesc fdesc) -> history[fdesc.index][K - 1])
+        .thenComparingLong(fdesc -> history[fdesc.index][0])
+        .thenComparingInt(fdesc -> fdesc.index));
+  } // public LRUK(BufMgr bufmgr)
+
+  /**
+   * An empty frame is reused first.
+   */
+  public void freePage(FrameDesc fdesc) {
+    unpinned.remove(fdesc);
+    Arrays.fill(history[fdesc.index], 0);
+    free_frames.add(fdesc);
+  }
+
+  /**
+   * Records a reference, unless the page was already pinned.
+   */
+  public void pinPage(FrameDesc fdesc) {
+    if (fdesc.pincnt == 1) {
+      unpinned.remove(fdesc);
+      reference(fdesc);
+    }
+  }
+
+  /**
+   * Restores the page's history if it was evicted recently, and records a
+   * reference.
+   */
+  public void loadPage(FrameDesc fdesc) {
+    long[] times = retained.remove(fdesc.pageno.pid);
+    if (times != null) {
+      System.arraycopy(times, 0, history[fdesc.index], 0, K);
+    } else {
+      Arrays.fill(history[fdesc.index], 0);
+    }
+    reference(fdesc);
+  }
+
+  /**
+   * A frame that's no longer pinned becomes a candidate for eviction.
+   */
+  public void unpinPage(FrameDesc fdesc) {
+    if (fdesc.pincnt == 0) {
+      unpinned.add(fdesc);
+    }
+  }
+
+  /**
+   * Picks an empty frame, or else the one with the oldest K-th reference,
+   * and retains the history of the page it evicts.
+   */
+  public int pickVictim(PageId pageno) {
+    FrameDesc fdesc = free_frames.poll();
+    if (fdesc == null) {
+      fdesc = unpinned.pollFirst();
+      if (fdesc == null) {
+        return -1;
+      }
+      retained.put(fdesc.pageno.pid, history[fdesc.index].clone());
+    }
+    return fdesc.index;
+  } // public int pickVictim(PageId pageno)
+
+  /**
+   * Makes room for the history of any new frames.
+   */
+  public void resize(FrameDesc[] frametab) {
+    history = Arrays.copyOf(history, frametab.length);
+    for (int i = 0; i < history.length; i++) {
+      if (history[i] == null) {
+        history[i] = new long[K];
+      }
+    }
+    super.resize(frametab);
+  } // public void resize(FrameDesc[] frametab)
+
+  /**
+   * Shifts the frame's history and records a reference now.
+   */
+  protected void reference(FrameDesc fdesc) {
+    long[] times = history[fdesc.index];
+    System.arraycopy(times, 0, times, 1, K - 1);
+    times[0] = ++clock;
+  }
+
+} // class LRUK extends Replacer
@@ -0,0 +1,163 @@
+package bufmgr;
+
+import diskmgr.FlushBatch;
+import global.GlobalConst;
+import global.Minibase;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * The page cleaner writes dirty frames to disk on a background thread, so
+ * that unpinning a modified page only marks its frame, and loading a page
+ * rarely has to write out its victim first.  Every CLEAN_INTERVAL ms (or
+ * sooner, when a dirty frame is evicted) it writes the unpinned frames that
+ * have been dirty for longer than CLEAN_MAX_AGE ms, and then the oldest ones
+ * until at most CLEAN_DIRTY_PERCENT of the pool is dirty.  That also bounds
+ * how much is left to flush when the database is closed.
+ * <p>
+ * The thread starts when a page is first dirtied, and stops when the buffer
+ * manager is asked to (i.e. before the database is closed), or when another
+ * buffer manager takes its place.
+ */
+class PageCleaner implements GlobalConst, Runnable {
+
+  /** The buffer manager whose frames are cleaned. */
+  protected BufMgr bufmgr;
+
+  /** The cleaner thread, or null if it's stopped. */
+  protected volatile Thread thread;
+
+  /** Whether a dirty frame was evicted since the last round. */
+  protected boolean behind;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a stopped page cleaner for the given buffer manager.
+   */
+  public PageCleaner(BufMgr bufmgr) {
+    this.bufmgr = bufmgr;
+  }
+
+  /**
+   * Starts the cleaner thread, if it isn't already running.
+   */
+  public synchronized void start() {
+    if (thread == null) {
+      thread = new Thread(this, "page cleaner");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  /**
+   * Stops the cleaner thread, and waits for its current round to finish.
+   */
+  public void stop() {
+    Thread stopping;
+    synchronized (this) {
+      stopping = thread;
+      thread = null;
+      notifyAll();
+    }
+    if ((stopping != null) && (stopping != Thread.currentThread())) {
+      boolean interrupted = false;
+      while (stopping.isAlive()) {
+        try {
+          stopping.join();
+        } catch (InterruptedException exc) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  } // public void stop()
+
+  /**
+   * Starts the next round now, since the foreground had to write a dirty
+   * frame itself.
+   */
+  public synchronized void wakeup() {
+    behind = true;
+    notifyAll();
+  }
+
+  /**
+   * Cleans the pool every round until stopped.
+   */
+  public void run() {
+    while (true) {
+      synchronized (this) {
+        if (!behind && (thread == Thread.currentThread())) {
+          try {
+            wait(CLEAN_INTERVAL);
+          } catch (InterruptedException exc) {
+            thread = null;
+          }
+        }
+        // stop if the pool was replaced without closing its database
+        if (Minibase.BufferManager != bufmgr) {
+          thread = null;
+        }
+        if (thread != Thread.currentThread()) {
+          return;
+        }
+        behind = false;
+      }
+      clean();
+    }
+  } // public void run()
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Writes the unpinned dirty frames that are too old, and then the oldest
+   * ones until the pool is under its dirty target, as one flush.
+   */
+  protected void clean() {
+
+    // find the dirty frames that aren't in use, noting when they were dirtied
+    int num_dirty = 0;
+    ArrayList<FrameDesc> candidates = new ArrayList<FrameDesc>();
+    HashMap<FrameDesc, Long> dirtied = new HashMap<FrameDesc, Long>();
+    for (FrameDesc fdesc : bufmgr.frametab) {
+      if (fdesc.dirty) {
+        num_dirty++;
+        if (fdesc.pincnt == 0) {
+          candidates.add(fdesc);
+          dirtied.put(fdesc, fdesc.dirtied);
+        }
+      }
+    }
+    if (candidates.isEmpty()) {
+      return;
+    }
+
+    // write them oldest first, until none are too old or too many
+    candidates.sort(Comparator.comparing(dirtied::get));
+    int target = bufmgr.frametab.length * CLEAN_DIRTY_PERCENT / 100;
+    long deadline = System.nanoTime() - CLEAN_MAX_AGE * 1000000L;
+    if ((num_dirty <= target) && (dirtied.get(candidates.get(0)) > deadline)) {
+      return;
+    }
+    FlushBatch batch = Minibase.DiskManager.begin_flush();
+    try {
+      for (FrameDesc fdesc : candidates) {
+        if ((num_dirty <= target) && (dirtied.get(fdesc) > deadline)) {
+          break;
+        }
+        if (bufmgr.writeFrame(fdesc, false)) {
+          num_dirty--;
+        }
+      }
+    } finally {
+      Minibase.DiskManager.end_flush(batch);
+    }
+
+  } // protected void clean()
+
+} // class PageCleaner implements GlobalConst, Runnable
@@ -0,0 +1,244 @@
+package bufmgr;
+
+import global.GlobalConst;
+import global.Minibase;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The page warmer brings the buffer pool back to its working set when the
+ * database is reopened, instead of letting the first queries re-read it one
+ * page at a time.  The ids of the pages in the pool, with how often each was
+ * pinned, are saved to a file next to the database every WARM_SAVE_INTERVAL
+ * ms and when it's closed.  When it's opened again, the most used pages that
+ * fit in the pool are loaded on a background thread, in page order, reading
+ * each batch of adjacent pages at once; pages pinned meanwhile are found (or
+ * waited for) as usual.
+ * <p>
+ * The file is only a hint: if it's missing, stale, or can't be written, the
+ * pool just starts cold.
+ */
+class PageWarmer implements GlobalConst, Runnable {
+
+  /** Identifies a file of hot pages. */
+  protected static final int MAGIC = 0x484f5450;
+
+  /** Most pages read at once. */
+  protected static final int MAX_BATCH = 64;
+
+  // --------------------------------------------------------------------------
+
+  /** The buffer manager whose pages are saved and reloaded. */
+  protected BufMgr bufmgr;
+
+  /** Name of the file that lists the hot pages. */
+  protected String path;
+
+  /** The warmer thread, or null if it's stopped. */
+  protected volatile Thread thread;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a stopped page warmer for the given buffer manager and file.
+   */
+  public PageWarmer(BufMgr bufmgr, String path) {
+    this.bufmgr = bufmgr;
+    this.path = path;
+  }
+
+  /**
+   * Starts the warmer thread, if it isn't already running.
+   */
+  public synchronized void start() {
+    if (thread == null) {
+      thread = new Thread(this, "page warmer");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  /**
+   * Stops the warmer thread, and waits for its current batch or save to
+   * finish.
+   */
+  public void stop() {
+    Thread stopping;
+    synchronized (this) {
+      stopping = thread;
+      thread = null;
+      notifyAll();
+    }
+    if ((stopping != null) && (stopping != Thread.currentThread())) {
+      boolean interrupted = false;
+      while (stopping.isAlive()) {
+        try {
+          stopping.join();
+        } catch (InterruptedException exc) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  } // public void stop()
+
+  /**
+   * Reloads the hot pages, then saves them every round until stopped.
+   */
+  public void run() {
+    load();
+    while (true) {
+      synchronized (this) {
+        if (thread == Thread.currentThread()) {
+          try {
+            wait(WARM_SAVE_INTERVAL);
+          } catch (InterruptedException exc) {
+            thread = null;
+          }
+        }
+        if (!running()) {
+          if (thread == Thread.currentThread()) {
+            thread = null;
+          }
+          return;
+        }
+      }
+      save();
+    }
+  } // public void run()
+
+  /**
+   * Saves the ids of the pages in the pool, most used first, replacing the
+   * file at once so that a crash leaves the previous list.
+   */
+  public void save() {
+
+    // note each page in the pool and how often it was used
+    ArrayList<int[]> pages = new ArrayList<int[]>();
+    for (FrameDesc fdesc : bufmgr.frametab) {
+      int pid = fdesc.pageno.pid;
+      if (pid != INVALID_PAGEID) {
+        pages.add(new int[] { pid, fdesc.refs });
+      }
+    }
+    pages.sort(Comparator.comparingInt((int[] page) -> page[1]).reversed());
+
+    // write them to a new file, and put it in place of the old one
+    File temp = new File(path + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(temp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(pages.size());
+      for (int[] page : pages) {
+        out.writeInt(page[0]);
+        out.writeInt(page[1]);
+      }
+    } catch (IOException exc) {
+      temp.delete();
+      return;
+    }
+    try {
+      Files.move(temp.toPath(), new File(path).toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException exc) {
+      temp.delete();
+    }
+
+  } // public void save()
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Whether the thread should keep going: it wasn't stopped, and its pool
+   * wasn't replaced without closing the database.
+   */
+  protected boolean running() {
+    return (thread == Thread.currentThread())
+        && (Minibase.BufferManager == bufmgr);
+  }
+
+  /**
+   * Loads the most used pages that fit in the pool, in sorted batches of
+   * adjacent pages.
+   */
+  protected void load() {
+
+    // keep the most used pages that fit, in page order
+    int[][] pages = read();
+    if (pages == null) {
+      return;
+    }
+    int count = Math.min(pages.length, bufmgr.limit);
+    pages = Arrays.copyOf(pages, count);
+    Arrays.sort(pages, Comparator.comparingInt((int[] page) -> page[0]));
+
+    // load each run of adjacent pages, a batch at a time
+    int start = 0;
+    for (int i = 1; i <= count; i++) {
+      if ((i == count) || (pages[i][0] != pages[i - 1][0] + 1)
+          || (i - start == MAX_BATCH)) {
+        if (!running()) {
+          return;
+        }
+        int[] refs = new int[i - start];
+        for (int j = start; j < i; j++) {
+          refs[j - start] = pages[j][1];
+        }
+        try {
+          bufmgr.loadBatch(pages[start][0], refs, bufmgr.other);
+        } catch (IllegalArgumentException exc) {
+          // the pages are no longer in the database
+        }
+        start = i;
+      }
+    }
+
+  } // protected void load()
+
+  /**
+   * Reads the saved list of pages, most used first.
+   *
+   * @return the page ids and reference counts, or null if there's no valid
+   * list
+   */
+  protected int[][] read() {
+    File file = new File(path);
+    if (!file.exists()) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC) {
+        return null;
+      }
+      int count = in.readInt();
+      if ((count < 0) || (count > (file.length() - 8) / 8)) {
+        return null;
+      }
+      int[][] pages = new int[count][2];
+      for (int i = 0; i < count; i++) {
+        pages[i][0] = in.readInt();
+        pages[i][1] = in.readInt();
+      }
+      return pages;
+    } catch (IOException exc) {
+      return null;
+    }
+  } // protected int[][] read()
+
+} // class PageWarmer implements GlobalConst, Runnable
@@ -0,0 +1,169 @@
+package bufmgr;
+
+import global.PageId;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Detects sequential and strided streams of pages pinned from disk and
+ * prefetches the pages that each stream will pin next into the buffer pool
+ * (see BufMgr.prefetch), with the same access strategy.  A stream's second
+ * pin fixes its stride, and each pin after that which continues it (i.e.
+ * is one stride past its last pin) makes its window of prefetched pages
+ * grow, from MIN_WINDOW up to MAX_WINDOW pages (or half the ring or pool);
+ * the next window is loaded in the background as soon as less than a
+ * window of prefetched pages is left.  Pins that don't continue any stream
+ * start a new one, so random pins (or a pair of adjacent ones) are never
+ * prefetched.
+ * <p>
+ * Only pins that read from disk, and first pins of prefetched pages, are
+ * recorded.  A pin never waits to record itself: if another thread is
+ * recording one, it's skipped.
+ */
+class ReadAhead {
+
+  /** Number of streams tracked at once. */
+  protected static final int NUM_STREAMS = 8;
+
+  /** Largest stride (in pages) that counts as a stream. */
+  protected static final int MAX_STRIDE = 8;
+
+  /** Size of the first window (in pages). */
+  protected static final int MIN_WINDOW = 4;
+
+  /** Largest window (in pages). */
+  protected static final int MAX_WINDOW = 64;
+
+  /**
+   * A stream of pins, each a fixed stride past the previous one.
+   */
+  protected static class Stream {
+
+    /** Last page pinned, or -1 if the stream is unused. */
+    public int last = -1;
+
+    /** Distance between pins, or 0 until the second pin. */
+    public int stride;
+
+    /** Number of pages in the next window, or 0 until the third pin. */
+    public int window;
+
+    /** Next page to prefetch. */
+    public int ahead;
+
+    /** When the stream was last pinned, for replacement. */
+    public long used;
+
+  } // protected static class Stream
+
+  // --------------------------------------------------------------------------
+
+  /** The buffer manager to prefetch into. */
+  protected BufMgr bufmgr;
+
+  /** The streams being tracked. */
+  protected Stream[] streams;
+
+  /** Number of pins recorded so far; orders the streams by use. */
+  protected long clock;
+
+  /** Guards the streams. */
+  protected final ReentrantLock lock = new ReentrantLock();
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs read-ahead for the given buffer manager.
+   */
+  public ReadAhead(BufMgr bufmgr) {
+    this.bufmgr = bufmgr;
+    streams = new Stream[NUM_STREAMS];
+    for (int i = 0; i < NUM_STREAMS; i++) {
+      streams[i] = new Stream();
+    }
+  }
+
+  /**
+   * Records a pin of the given page, and prefetches ahead of its stream.
+   *
+   * @param strategy ring of frames the page is pinned into; null if it's
+   * the whole pool
+   * @param stats counters for the type of page and its file
+   */
+  public void access(int pageno, AccessStrategy strategy, BufStats stats) {
+
+    // don't make the pin wait for another one
+    if (!lock.tryLock()) {
+      return;
+    }
+    int first;
+    int count;
+    int stride;
+    try {
+
+      // find the stream that this pin continues, or replace the oldest
+      clock++;
+      Stream stream = null;
+      Stream oldest = streams[0];
+      for (Stream s : streams) {
+        int gap = pageno - s.last;
+        if ((s.last >= 0) && ((s.stride == 0) ? (gap > 0) && (gap <= MAX_STRIDE)
+            : (gap == s.stride))) {
+          stream = s;
+          break;
+        }
+        if (s.used < oldest.used) {
+          oldest = s;
+        }
+      }
+      if (stream == null) {
+        stream = oldest;
+        stream.last = pageno;
+        stream.stride = 0;
+        stream.used = clock;
+        return;
+      }
+
+      // a stream's second pin fixes its stride, and the third starts the
+      // window
+      stream.used = clock;
+      if (stream.stride == 0) {
+        stream.stride = pageno - stream.last;
+        stream.ahead = pageno + stream.stride;
+        stream.window = 0;
+        stream.last = pageno;
+        return;
+      }
+      if (stream.window == 0) {
+        stream.window = MIN_WINDOW;
+      }
+      stream.last = pageno;
+
+      // load the next window once less than a window is left; the window
+      // must fit in the frames, or pages would be evicted before they're used
+      stride = stream.stride;
+      int max_window = Math.min(MAX_WINDOW, ((strategy != null)
+          ? strategy.getRingSize() : bufmgr.limit) / 2);
+      if ((max_window < 1) || ((stream.ahead - pageno) / stride
+          > Math.min(stream.window, max_window))) {
+        return;
+      }
+      first = Math.max(stream.ahead, pageno + stride);
+      count = Math.min(stream.window, max_window);
+      stream.ahead = first + count * stride;
+      stream.window = Math.min(stream.window * 2, MAX_WINDOW);
+
+    } finally {
+      lock.unlock();
+    }
+
+    // pages past the end of the database are quietly skipped
+    PageId[] ids = new PageId[count];
+    for (int i = 0; i < count; i++) {
+      ids[i] = new PageId(first + i * stride);
+    }
+    bufmgr.prefetch(ids, strategy, stats, true);
+
+  } // public void access(int pageno, AccessStrategy strategy, ...)
+
+} // class ReadAhead
@@ -0,0 +1,97 @@
+package bufmgr;
+
+import global.GlobalConst;
+import global.PageId;
+
+import java.util.ArrayDeque;
+
+/**
+ * A replacement policy decides which frame of the buffer pool to reuse when a
+ * page that isn't in the pool is pinned.  The buffer manager reports each
+ * event in a frame's life, and asks for a victim when it needs a frame.
+ * Frames that are empty (i.e. initially or after freePage) are kept on a free
+ * list, which policies should use up before evicting any page.
+ * <p>
+ * The buffer manager makes all calls while synchronized on the replacer, so
+ * policies don't need to be thread-safe themselves.  Pin counts still change
+ * on other threads, though: a count may drop to 0 before unpinPage is called,
+ * and the manager skips any victim whose count isn't 0 when it's picked.
+ */
+public abstract class Replacer implements GlobalConst {
+
+  /** The frame descriptions of the buffer pool. */
+  protected FrameDesc[] frametab;
+
+  /** Frames that hold no page. */
+  protected ArrayDeque<FrameDesc> free_frames;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a policy for the given buffer manager, with all of its frames
+   * empty.
+   */
+  protected Replacer(BufMgr bufmgr) {
+    frametab = bufmgr.frametab;
+    free_frames = new ArrayDeque<FrameDesc>();
+    for (FrameDesc fdesc : frametab) {
+      free_frames.add(fdesc);
+    }
+  }
+
+  /**
+   * Notifies the policy that the page in the frame was freed, so the frame is
+   * now empty.
+   */
+  public abstract void freePage(FrameDesc fdesc);
+
+  /**
+   * Notifies the policy that the page in the frame was pinned (i.e. a hit).
+   */
+  public abstract void pinPage(FrameDesc fdesc);
+
+  /**
+   * Notifies the policy that a new page was loaded into the frame, which is
+   * now pinned (i.e. a miss).
+   */
+  public abstract void loadPage(FrameDesc fdesc);
+
+  /**
+   * Notifies the policy that the page in the frame was unpinned; it may still
+   * be pinned by others.
+   */
+  public abstract void unpinPage(FrameDesc fdesc);
+
+  /**
+   * Selects an unpinned frame to hold the given page; the page in the frame
+   * (if any) will be evicted.
+   *
+   * @return the frame's index, or -1 if all frames are pinned
+   */
+  public abstract int pickVictim(PageId pageno);
+
+  /**
+   * Takes an unpinned frame away from the policy without evicting it the
+   * usual way (i.e. to reuse it in an access strategy's ring); its page
+   * isn't remembered.  The frame will be loaded next.
+   */
+  public void takeFrame(FrameDesc fdesc) {
+    freePage(fdesc);
+    free_frames.remove(fdesc);
+  }
+
+  /**
+   * Notifies the policy that the buffer pool was resized to the given
+   * frames.  Frames added at the end are empty; frames removed from the end
+   * were taken away first (see takeFrame).  Policies whose state depends on
+   * the size of the pool should override this, calling the superclass.
+   */
+  public void resize(FrameDesc[] frametab) {
+    int oldbufs = this.frametab.length;
+    this.frametab = frametab;
+    for (int i = oldbufs; i < frametab.length; i++) {
+      freePage(frametab[i]);
+    }
+  } // public void resize(FrameDesc[] frametab)
+
+} // public abstract class Replacer implements GlobalConst
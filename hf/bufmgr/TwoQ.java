@@ -0,0 +1,167 @@
+package bufmgr;
+
+import global.PageId;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * The "2Q" replacement policy (Johnson and Shasha): pages enter a FIFO queue
+ * (A1in) when first loaded, and only move to the main LRU queue (Am) if they
+ * are loaded again while their id is still remembered in a ghost queue
+ * (A1out).  Pages that are only used once, like those of a scan, pass
+ * through A1in without disturbing Am.
+ */
+class TwoQ extends Replacer {
+
+  /** Frame state: in the A1in queue. */
+  protected static final int A1IN = 1;
+
+  /** Frame state: in the Am queue. */
+  protected static final int AM = 2;
+
+  /** Target size of A1in, as a fraction of the pool. */
+  protected static final double KIN = 0.25;
+
+  /** Size of A1out, as a fraction of the pool. */
+  protected static final double KOUT = 0.5;
+
+  // --------------------------------------------------------------------------
+
+  /** Frames loaded once, in FIFO order. */
+  protected LinkedHashSet<FrameDesc> a1in;
+
+  /** Frames loaded again, from least to most recently used. */
+  protected LinkedHashSet<FrameDesc> am;
+
+  /** Ids of pages recently evicted from A1in, oldest first. */
+  protected LinkedHashSet<Integer> a1out;
+
+  /** Target size of A1in, in frames. */
+  protected int max_a1in;
+
+  /** Size of A1out, in page ids. */
+  protected int max_a1out;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a 2Q policy with all frames empty.
+   */
+  public TwoQ(BufMgr bufmgr) {
+    super(bufmgr);
+    a1in = new LinkedHashSet<FrameDesc>();
+    am = new LinkedHashSet<FrameDesc>();
+    a1out = new LinkedHashSet<Integer>();
+    setSizes();
+  }
+
+  /**
+   * Sets the target sizes of the queues for the size of the pool.
+   */
+  protected void setSizes() {
+    max_a1in = Math.max(1, (int) (frametab.length * KIN));
+    max_a1out = Math.max(1, (int) (frametab.length * KOUT));
+  }
+
+  /**
+   * Scales the queues to the new size of the pool.
+   */
+  public void resize(FrameDesc[] frametab) {
+    super.resize(frametab);
+    setSizes();
+  }
+
+  /**
+   * An empty frame is reused first.
+   */
+  public void freePage(FrameDesc fdesc) {
+    a1in.remove(fdesc);
+    am.remove(fdesc);
+    free_frames.add(fdesc);
+  }
+
+  /**
+   * A hit in Am makes the page the most recently used; a hit in A1in
+   * doesn't change anything.
+   */
+  public void pinPage(FrameDesc fdesc) {
+    if (fdesc.state == AM) {
+      am.remove(fdesc);
+      am.add(fdesc);
+    }
+  }
+
+  /**
+   * A page that was evicted from A1in recently goes to Am; otherwise it
+   * starts in A1in.
+   */
+  public void loadPage(FrameDesc fdesc) {
+    if (a1out.remove(fdesc.pageno.pid)) {
+      fdesc.state = AM;
+      am.add(fdesc);
+    } else {
+      fdesc.state = A1IN;
+      a1in.add(fdesc);
+    }
+  }
+
+  /**
+   * Unpinning doesn't change the order.
+   */
+  public void unpinPage(FrameDesc fdesc) {
+  }
+
+  /**
+   * Picks an empty frame, or else the oldest page in A1in if it's over its
+   * target size (remembering its id in A1out), or else the least recently
+   * used page in Am.
+   */
+  public int pickVictim(PageId pageno) {
+
+    FrameDesc fdesc = free_frames.poll();
+    if (fdesc != null) {
+      return fdesc.index;
+    }
+
+    // evict from A1in first if it's too big, or if all of Am is pinned
+    boolean from_a1in = a1in.size() > max_a1in;
+    fdesc = unpinned(from_a1in ? a1in : am);
+    if (fdesc == null) {
+      from_a1in = !from_a1in;
+      fdesc = unpinned(from_a1in ? a1in : am);
+      if (fdesc == null) {
+        return -1;
+      }
+    }
+
+    // remember pages evicted from A1in
+    if (from_a1in) {
+      a1out.add(fdesc.pageno.pid);
+      if (a1out.size() > max_a1out) {
+        Iterator<Integer> oldest = a1out.iterator();
+        oldest.next();
+        oldest.remove();
+      }
+    }
+    return fdesc.index;
+
+  } // public int pickVictim(PageId pageno)
+
+  /**
+   * Removes and returns the first unpinned frame in the queue, or null if
+   * there isn't one.
+   */
+  protected static FrameDesc unpinned(LinkedHashSet<FrameDesc> queue) {
+    Iterator<FrameDesc> frames = queue.iterator();
+    while (frames.hasNext()) {
+      FrameDesc fdesc = frames.next();
+      if (fdesc.pincnt == 0) {
+        frames.remove();
+        return fdesc;
+      }
+    }
+    return null;
+  }
+
+} // class TwoQ extends Replacer
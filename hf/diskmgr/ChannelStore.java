@@ -0,0 +1,146 @@
+package diskmgr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Disk store that uses positional reads and writes on a FileChannel.  Each
+ * page I/O is a single system call that doesn't move a shared file pointer,
+ * so concurrent requests for different pages don't serialize on each other.
+ * Pages move directly between the channel and their buffers, so off-heap
+ * buffers avoid any copying.
+ */
+class ChannelStore implements DiskStore {
+
+  /** The channel to the OS file. */
+  protected FileChannel channel;
+
+  /** Size of a page, in bytes. */
+  protected int page_size;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Opens (or creates) the OS file with the given name and page size.
+   */
+  public ChannelStore(String fname, int page_size) throws IOException {
+    this.page_size = page_size;
+    channel = FileChannel.open(Paths.get(fname), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Reads the given page; any part of it past the end of the file reads as
+   * zeros.
+   */
+  public void read(int pageno, ByteBuffer data) throws IOException {
+    ByteBuffer buf = data.duplicate().clear();
+    long pos = (long) pageno * page_size;
+    while (buf.hasRemaining()) {
+      int n = channel.read(buf, pos + buf.position());
+      if (n < 0) {
+        zero(buf);
+        break;
+      }
+    }
+  } // public void read(int pageno, ByteBuffer data)
+
+  /**
+   * Writes the given page.
+   */
+  public void write(int pageno, ByteBuffer data) throws IOException {
+    ByteBuffer buf = data.duplicate().clear();
+    long pos = (long) pageno * page_size;
+    while (buf.hasRemaining()) {
+      channel.write(buf, pos + buf.position());
+    }
+  } // public void write(int pageno, ByteBuffer data)
+
+  /**
+   * Reads a run of pages with one scattering read.  Scattering reads use the
+   * channel's position, so they are serialized with each other (but not with
+   * single-page reads and writes).
+   */
+  public void read(int first, ByteBuffer[] data) throws IOException {
+    ByteBuffer[] bufs = duplicate(data);
+    long pos = (long) first * page_size;
+    long end = pos + (long) data.length * page_size;
+    synchronized (this) {
+      channel.position(pos);
+      while (pos < end) {
+        long n = channel.read(bufs);
+        if (n < 0) {
+          for (ByteBuffer buf : bufs) {
+            zero(buf);
+          }
+          break;
+        }
+        pos += n;
+      }
+    }
+  } // public void read(int first, ByteBuffer[] data)
+
+  /**
+   * Writes a run of pages with one gathering write.
+   */
+  public void write(int first, ByteBuffer[] data) throws IOException {
+    ByteBuffer[] bufs = duplicate(data);
+    long pos = (long) first * page_size;
+    long end = pos + (long) data.length * page_size;
+    synchronized (this) {
+      channel.position(pos);
+      while (pos < end) {
+        pos += channel.write(bufs);
+      }
+    }
+  } // public void write(int first, ByteBuffer[] data)
+
+  /**
+   * Extends the file by writing its last byte, leaving it sparse.
+   */
+  public void extend(int num_pages) throws IOException {
+    long length = (long) num_pages * page_size;
+    if (channel.size() < length) {
+      channel.write(ByteBuffer.allocate(1), length - 1);
+    }
+  }
+
+  /**
+   * Forces the file contents (but not metadata) to disk.
+   */
+  public void force() throws IOException {
+    channel.force(false);
+  }
+
+  /**
+   * Closes the channel.
+   */
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Duplicates each page's buffer, so the channel can move their positions
+   * without changing the originals.
+   */
+  protected static ByteBuffer[] duplicate(ByteBuffer[] data) {
+    ByteBuffer[] bufs = new ByteBuffer[data.length];
+    for (int i = 0; i < data.length; i++) {
+      bufs[i] = data[i].duplicate().clear();
+    }
+    return bufs;
+  }
+
+  /**
+   * Fills the rest of the buffer (i.e. past the end of the file) with zeros.
+   */
+  protected static void zero(ByteBuffer buf) {
+    while (buf.hasRemaining()) {
+      buf.put((byte) 0);
+    }
+  }
+
+} // class ChannelStore implements DiskStore
@@ -0,0 +1,448 @@
+package diskmgr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Disk store that compresses each page (see PageCodec) and packs it into a
+ * variable-size slot.  A page-translation table maps each page number to its
+ * slot; pages that were never written have no slot and read as zeros, and
+ * pages that don't compress are stored raw.
+ * <p>
+ * The file starts with a small header, followed by the slots.  Slots are
+ * measured in units of 1/16 of a page, and freed slots are reused by later
+ * writes.  The table is kept in memory and saved after the last slot by
+ * force() and close(), so pages written since then are lost if the system
+ * crashes.  Until the next save, nothing the saved table points to is
+ * overwritten: rewritten pages move to new slots, new slots go after the
+ * saved table, and the old slots are only freed once the new table is saved.
+ * Requests are serialized, since they share the table and the compression
+ * buffers.  The codec works on arrays, so pages off the heap are staged
+ * through one.
+ */
+class CompressedStore implements DiskStore {
+
+  /** Marks a compressed file; not a valid page id, so not a first page. */
+  public static final int MAGIC = 0xC0DEC0DE;
+
+  /** Offset of the page size in the header. */
+  protected static final int HDR_PAGE_SIZE = 4;
+
+  /** Offset of the number of pages in the header. */
+  protected static final int HDR_NUM_PAGES = 8;
+
+  /** Offset of the end of the slots (in units) in the header. */
+  protected static final int HDR_END = 16;
+
+  /** Size of the header; the first slot starts here. */
+  protected static final int HEADER_SIZE = 64;
+
+  /** Number of slot units in a page. */
+  protected static final int UNITS_PER_PAGE = 16;
+
+  // --------------------------------------------------------------------------
+
+  /** The channel to the OS file. */
+  protected FileChannel channel;
+
+  /** Size of a page, in bytes. */
+  protected int page_size;
+
+  /** Size of a slot unit, in bytes. */
+  protected int unit_size;
+
+  /**
+   * The page-translation table; each entry packs a slot's position (in
+   * units), its capacity (in units), and the length of the stored page (0
+   * if never written, or page_size if stored raw).
+   */
+  protected long[] table;
+
+  /** Number of pages in the table. */
+  protected int num_pages;
+
+  /** End of the last slot or the saved table (in units). */
+  protected long end;
+
+  /** Position of the saved table (in units). */
+  protected long table_pos;
+
+  /** Size of the saved table (in units). */
+  protected int table_units;
+
+  /** Whether the table changed since it was saved. */
+  protected boolean changed;
+
+  /** Pages whose slots were allocated since the table was saved. */
+  protected BitSet fresh;
+
+  /** Entries of the slots freed since the table was saved. */
+  protected ArrayDeque<Long> freed;
+
+  /** Positions of the free slots, by capacity (in units). */
+  protected List<ArrayDeque<Long>> free_slots;
+
+  /** Compressed image of the page being read or written. */
+  protected byte[] buffer;
+
+  /** Uncompressed image of a page off the heap being read or written. */
+  protected byte[] staging;
+
+  /** Scratch space for the compressor. */
+  protected int[] hash_table;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Opens (or creates) the OS file with the given name and page size, and
+   * loads its page-translation table.
+   *
+   * @throws IOException if the file isn't a compressed database with the
+   * given page size
+   */
+  public CompressedStore(String fname, int page_size) throws IOException {
+    this.page_size = page_size;
+    unit_size = page_size / UNITS_PER_PAGE;
+    channel = FileChannel.open(Paths.get(fname), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    table = new long[0];
+    free_slots = new ArrayList<ArrayDeque<Long>>(UNITS_PER_PAGE + 1);
+    for (int i = 0; i <= UNITS_PER_PAGE; i++) {
+      free_slots.add(new ArrayDeque<Long>());
+    }
+    fresh = new BitSet();
+    freed = new ArrayDeque<Long>();
+    buffer = new byte[page_size];
+    staging = new byte[page_size];
+    hash_table = new int[PageCodec.HASH_SIZE];
+    if (channel.size() > 0) {
+      load_table();
+    } else {
+      changed = true;
+    }
+  } // public CompressedStore(String fname, int page_size)
+
+  /**
+   * Reads and decompresses the given page.
+   */
+  public synchronized void read(int pageno, ByteBuffer data)
+      throws IOException {
+
+    // unwritten pages read as zeros
+    long entry = (pageno < num_pages) ? table[pageno] : 0;
+    int length = length(entry);
+    byte[] page = array(data);
+    if (length == 0) {
+      Arrays.fill(page, (byte) 0);
+    } else {
+
+      // raw pages don't need to be decompressed
+      byte[] image = (length == page_size) ? page : buffer;
+      read_fully(ByteBuffer.wrap(image, 0, length),
+          slot_pos(position(entry)));
+      if ((image == buffer)
+          && (PageCodec.decompress(buffer, length, page) != page_size)) {
+        throw new IOException("Corrupt compressed page " + pageno);
+      }
+
+    }
+    if (page == staging) {
+      data.put(0, staging);
+    }
+
+  } // public synchronized void read(int pageno, ByteBuffer data)
+
+  /**
+   * Compresses and writes the given page, moving it to a new slot if its old
+   * one is in the saved table, or no longer fits (or would waste most of) it.
+   */
+  public synchronized void write(int pageno, ByteBuffer data)
+      throws IOException {
+
+    // compress the page, or store it raw if that doesn't help
+    byte[] page = array(data);
+    if (page == staging) {
+      data.get(0, staging);
+    }
+    int length = PageCodec.compress(page, buffer, hash_table);
+    byte[] image = buffer;
+    if (length < 0) {
+      length = page_size;
+      image = page;
+    }
+    int units = (length + unit_size - 1) / unit_size;
+
+    // keep the old slot if it's new since the last save and a good fit
+    if (pageno >= num_pages) {
+      extend(pageno + 1);
+    }
+    long entry = table[pageno];
+    long position = position(entry);
+    int capacity = capacity(entry);
+    if ((length(entry) == 0) || !fresh.get(pageno) || (units > capacity)
+        || ((capacity - units) * 4 > capacity)) {
+      if (fresh.get(pageno)) {
+        free_slots.get(capacity).push(position);
+      } else if (length(entry) != 0) {
+        freed.push(entry);
+      }
+      position = alloc_slot(units);
+      capacity = units;
+      fresh.set(pageno);
+    }
+    changed = true;
+
+    // write the image and update the table
+    ByteBuffer buf = ByteBuffer.wrap(image, 0, length);
+    long pos = slot_pos(position);
+    while (buf.hasRemaining()) {
+      channel.write(buf, pos + buf.position());
+    }
+    table[pageno] = (position << 24) | ((long) capacity << 16) | length;
+
+  } // public synchronized void write(int pageno, ByteBuffer data)
+
+  /**
+   * Reads a run of pages; each page is in its own slot, so they are read
+   * one at a time.
+   */
+  public synchronized void read(int first, ByteBuffer[] data)
+      throws IOException {
+    for (int i = 0; i < data.length; i++) {
+      read(first + i, data[i]);
+    }
+  }
+
+  /**
+   * Writes a run of pages; each page is in its own slot, so they are
+   * written one at a time.
+   */
+  public synchronized void write(int first, ByteBuffer[] data)
+      throws IOException {
+    for (int i = 0; i < data.length; i++) {
+      write(first + i, data[i]);
+    }
+  }
+
+  /**
+   * Extends the table; new pages take no space until they are written.
+   */
+  public synchronized void extend(int num_pages) throws IOException {
+    if (num_pages > this.num_pages) {
+      table = Arrays.copyOf(table, num_pages);
+      this.num_pages = num_pages;
+      changed = true;
+    }
+  }
+
+  /**
+   * Saves the table and forces the file contents and metadata to disk.
+   */
+  public synchronized void force() throws IOException {
+    save_table();
+    channel.force(true);
+  }
+
+  /**
+   * Saves the table and closes the channel.
+   */
+  public synchronized void close() throws IOException {
+    save_table();
+    channel.close();
+  }
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Gets a slot of the given capacity, splitting a larger free slot or
+   * adding a new one at the end if there's no exact fit.
+   */
+  protected long alloc_slot(int units) {
+    for (int cap = units; cap <= UNITS_PER_PAGE; cap++) {
+      Long position = free_slots.get(cap).poll();
+      if (position != null) {
+        if (cap > units) {
+          free_slots.get(cap - units).push(position + units);
+        }
+        return position;
+      }
+    }
+    long position = end;
+    end += units;
+    return position;
+  } // protected long alloc_slot(int units)
+
+  /**
+   * Reads the header and the table, and rebuilds the free slots from the
+   * gaps between the used ones.
+   */
+  protected void load_table() throws IOException {
+
+    // check the header
+    ByteBuffer hdr = ByteBuffer.allocate(HEADER_SIZE);
+    read_fully(hdr, 0);
+    if (hdr.getInt(0) != MAGIC) {
+      throw new IOException("Not a compressed database");
+    }
+    if (hdr.getInt(HDR_PAGE_SIZE) != page_size) {
+      throw new IOException("Compressed database has page size "
+          + hdr.getInt(HDR_PAGE_SIZE));
+    }
+    num_pages = hdr.getInt(HDR_NUM_PAGES);
+    table_pos = hdr.getLong(HDR_END);
+    table_units = table_size(num_pages);
+    end = table_pos + table_units;
+
+    // read the table that follows the slots
+    ByteBuffer buf = ByteBuffer.allocate(num_pages * 8);
+    read_fully(buf, slot_pos(table_pos));
+    table = new long[num_pages];
+    buf.rewind();
+    buf.asLongBuffer().get(table);
+
+    // free any gaps between the used slots, in order of position
+    long[] used = new long[num_pages];
+    int count = 0;
+    for (long entry : table) {
+      if (length(entry) != 0) {
+        used[count++] = entry;
+      }
+    }
+    Arrays.sort(used, 0, count);
+    long next = 0;
+    for (int i = 0; i <= count; i++) {
+      long position = (i < count) ? position(used[i]) : table_pos;
+      free_range(next, position);
+      if (i < count) {
+        next = position + capacity(used[i]);
+      }
+    }
+
+  } // protected void load_table() throws IOException
+
+  /**
+   * Writes the table after the last slot, then the header that points to it;
+   * only then are the old table and the slots freed since the last save
+   * reused.
+   */
+  protected void save_table() throws IOException {
+
+    // nothing to do if the saved table is current
+    if (!changed) {
+      return;
+    }
+
+    // the new table must be on disk before the header points to it
+    ByteBuffer buf = ByteBuffer.allocate(num_pages * 8);
+    buf.asLongBuffer().put(table, 0, num_pages);
+    long pos = slot_pos(end);
+    while (buf.hasRemaining()) {
+      channel.write(buf, pos + buf.position());
+    }
+    channel.truncate(pos + (long) num_pages * 8);
+    channel.force(false);
+
+    ByteBuffer hdr = ByteBuffer.allocate(HEADER_SIZE);
+    hdr.putInt(0, MAGIC);
+    hdr.putInt(HDR_PAGE_SIZE, page_size);
+    hdr.putInt(HDR_NUM_PAGES, num_pages);
+    hdr.putLong(HDR_END, end);
+    while (hdr.hasRemaining()) {
+      channel.write(hdr, hdr.position());
+    }
+
+    // the old slots are no longer needed after a crash
+    free_range(table_pos, table_pos + table_units);
+    for (long entry : freed) {
+      free_slots.get(capacity(entry)).push(position(entry));
+    }
+    freed.clear();
+    fresh.clear();
+    table_pos = end;
+    table_units = table_size(num_pages);
+    end += table_units;
+    changed = false;
+
+  } // protected void save_table() throws IOException
+
+  /**
+   * Frees the units from start up to (not including) stop, as slots of up to
+   * a page each.
+   */
+  protected void free_range(long start, long stop) {
+    for (long next = start; next < stop; next += UNITS_PER_PAGE) {
+      int gap = (int) Math.min(stop - next, UNITS_PER_PAGE);
+      free_slots.get(gap).push(next);
+    }
+  }
+
+  /**
+   * Reads until the buffer is full.
+   *
+   * @throws IOException if the file ends first
+   */
+  protected void read_fully(ByteBuffer buf, long pos) throws IOException {
+    int start = buf.position();
+    while (buf.hasRemaining()) {
+      if (channel.read(buf, pos + buf.position() - start) < 0) {
+        throw new IOException("Compressed database is truncated");
+      }
+    }
+  }
+
+  /**
+   * Gets the page's backing array, or the staging array if it has none.
+   */
+  protected byte[] array(ByteBuffer data) {
+    if (data.hasArray() && (data.arrayOffset() == 0)
+        && (data.array().length == page_size)) {
+      return data.array();
+    }
+    return staging;
+  }
+
+  /**
+   * Gets the size (in units) of a saved table with the given number of
+   * pages.
+   */
+  protected int table_size(int num_pages) {
+    return (int) (((long) num_pages * 8 + unit_size - 1) / unit_size);
+  }
+
+  /**
+   * Gets the file offset of the slot at the given position.
+   */
+  protected long slot_pos(long position) {
+    return HEADER_SIZE + position * unit_size;
+  }
+
+  /**
+   * Gets the slot position (in units) from a table entry.
+   */
+  protected static long position(long entry) {
+    return entry >>> 24;
+  }
+
+  /**
+   * Gets the slot capacity (in units) from a table entry.
+   */
+  protected static int capacity(long entry) {
+    return (int) (entry >>> 16) & 0xFF;
+  }
+
+  /**
+   * Gets the stored length (in bytes) from a table entry.
+   */
+  protected static int length(long entry) {
+    return (int) entry & 0xFFFF;
+  }
+
+} // class CompressedStore implements DiskStore
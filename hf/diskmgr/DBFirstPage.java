@@ -7,8 +7,17 @@ import global.Page;
  */
 class DBFirstPage extends DBHeaderPage {
 
-  /** Offest for the total number of pages. */
-  protected static final int NUM_DB_PAGE = PAGE_SIZE - 4;
+  /** Offest for the total number of pages, from the end of the page. */
+  protected static final int NUM_DB_PAGE = 4;
+
+  /** Offset for the number of space-map pages, from the end of the page. */
+  protected static final int NUM_MAP_PAGE = 8;
+
+  /** Offset for the page size, from the end of the page. */
+  protected static final int PAGE_SIZE_FIELD = 12;
+
+  /** Offset for the number of striped files, from the end of the page. */
+  protected static final int NUM_STRIPES = 16;
 
   // --------------------------------------------------------------------------
 
@@ -20,7 +29,8 @@ class DBFirstPage extends DBHeaderPage {
   }
   
   /**
-   * Constructor that wraps an existing first page.
+   * Constructor that wraps an existing first page, or makes a view if the
+   * page is null.
    */
   public DBFirstPage(Page page) {
     super(page);
@@ -30,14 +40,59 @@ class DBFirstPage extends DBHeaderPage {
    * Sets the number of pages in the DB.
    */
   public void setNumDBPages(int num) {
-    setIntValue(num, NUM_DB_PAGE);
+    setIntValue(num, buffer.capacity() - NUM_DB_PAGE);
   }
 
   /**
    * Gets the number of pages in the DB.
    */
   public int getNumDBPages() {
-    return getIntValue(NUM_DB_PAGE);
+    return getIntValue(buffer.capacity() - NUM_DB_PAGE);
+  }
+
+  /**
+   * Sets the number of space-map pages that follow the first page.
+   */
+  public void setNumMapPages(int num) {
+    setIntValue(num, buffer.capacity() - NUM_MAP_PAGE);
+  }
+
+  /**
+   * Gets the number of space-map pages that follow the first page, or 0 if
+   * the DB predates this field.
+   */
+  public int getNumMapPages() {
+    return getIntValue(buffer.capacity() - NUM_MAP_PAGE);
+  }
+
+  /**
+   * Sets the size of each page in the DB, in bytes.
+   */
+  public void setPageSize(int size) {
+    setIntValue(size, buffer.capacity() - PAGE_SIZE_FIELD);
+  }
+
+  /**
+   * Gets the size of each page in the DB, in bytes, or 0 if the DB predates
+   * this field (and therefore uses 1 KB pages).
+   */
+  public int getPageSize() {
+    return getIntValue(buffer.capacity() - PAGE_SIZE_FIELD);
+  }
+
+  /**
+   * Sets the number of OS files that the DB is striped across.
+   */
+  public void setNumStripes(int num) {
+    setIntValue(num, buffer.capacity() - NUM_STRIPES);
+  }
+
+  /**
+   * Gets the number of OS files that the DB is striped across, or 0 if the
+   * DB predates this field (and therefore uses one file).
+   */
+  public int getNumStripes() {
+    return getIntValue(buffer.capacity() - NUM_STRIPES);
   }
 
 } // class DBFirstPage extends DBHeaderPage
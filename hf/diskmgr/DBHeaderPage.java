@@ -27,7 +27,7 @@ class DBHeaderPage extends Page {
   protected static final int DIR_PAGE_USED_BYTES = 8 + 8;
 
   /** Amount of additional bytes used by the first page. */
-  protected static final int FIRST_PAGE_USED_BYTES = DIR_PAGE_USED_BYTES + 4;
+  protected static final int FIRST_PAGE_USED_BYTES = DIR_PAGE_USED_BYTES + 16;
 
   // --------------------------------------------------------------------------
 
@@ -40,10 +40,11 @@ class DBHeaderPage extends Page {
   }
 
   /**
-   * Constructor that wraps an existing header page.
+   * Constructor that wraps an existing header page, or makes a view if the
+   * page is null.
    */
   public DBHeaderPage(Page page) {
-    super(page.getData());
+    super(page);
   }
 
   /**
@@ -56,11 +57,8 @@ class DBHeaderPage extends Page {
     setNextPage(pageno);
 
     // set the num entries
-    int pageusedbytes = DIR_PAGE_USED_BYTES;
-    if (this instanceof DBFirstPage) {
-      pageusedbytes = FIRST_PAGE_USED_BYTES;
-    }
-    int num_entries = (PAGE_SIZE - pageusedbytes) / SIZE_OF_FILE_ENTRY;
+    int num_entries = num_entries(buffer.capacity(),
+        this instanceof DBFirstPage);
     setNumOfEntries(num_entries);
 
     // initialize the page entries
@@ -71,6 +69,17 @@ class DBHeaderPage extends Page {
 
   } // protected void initDefaults(int pageusedbytes)
 
+  /**
+   * Gets the number of file entries on a header page of the given size.
+   */
+  protected static int num_entries(int page_size, boolean first_page) {
+    int pageusedbytes = DIR_PAGE_USED_BYTES;
+    if (first_page) {
+      pageusedbytes = FIRST_PAGE_USED_BYTES;
+    }
+    return (page_size - pageusedbytes) / SIZE_OF_FILE_ENTRY;
+  }
+
   /**
    * Gets the next page number.
    */
@@ -111,11 +120,15 @@ class DBHeaderPage extends Page {
   }
 
   /**
-   * Sets a file entry name and page id, given the entry number.
+   * Sets a file entry name and page id, given the entry number.  The rest of
+   * the name field is cleared, so a shorter name can reuse the slot.
    */
   public void setFileEntry(String fname, PageId pageNo, int entryNo) {
     int position = START_FILE_ENTRIES + entryNo * SIZE_OF_FILE_ENTRY;
     setIntValue(pageNo.pid, position);
+    for (int i = position + 4; i < position + SIZE_OF_FILE_ENTRY; i++) {
+      buffer.put(i, (byte) 0);
+    }
     setStringValue(fname, position + 4);
   }
 
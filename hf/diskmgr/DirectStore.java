@@ -0,0 +1,208 @@
+package diskmgr;
+
+import com.sun.nio.file.ExtendedOpenOption;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Disk store that bypasses the OS page cache (O_DIRECT), so the buffer pool
+ * is the only cache.  Direct I/O must use aligned buffers, offsets and
+ * lengths, all multiples of the device block size.  When a page is smaller
+ * than a block, each I/O covers the aligned blocks around the pages; writes
+ * first read back any block they only partly cover.  Pages whose buffers are
+ * already aligned direct memory (i.e. buffer pool frames, when pages are
+ * whole blocks) are read and written in place, without a copy.
+ */
+class DirectStore implements DiskStore {
+
+  /** The direct channel to the OS file. */
+  protected FileChannel channel;
+
+  /** A buffered handle to the OS file, used only to change its length. */
+  protected RandomAccessFile fp;
+
+  /** Size of a page, in bytes. */
+  protected int page_size;
+
+  /** Alignment required by the device, in bytes. */
+  protected int block_size;
+
+  /** Aligned direct buffer for each thread, grown as needed. */
+  protected ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>();
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Opens (or creates) the OS file with the given name and page size for
+   * direct I/O.
+   */
+  public DirectStore(String fname, int page_size) throws IOException {
+    this.page_size = page_size;
+    Path path = Paths.get(fname);
+    channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE,
+        ExtendedOpenOption.DIRECT);
+    fp = new RandomAccessFile(fname, "rw");
+    block_size = (int) Math.max(Files.getFileStore(path).getBlockSize(), 512);
+  }
+
+  /**
+   * Reads the given page via its aligned blocks.
+   */
+  public void read(int pageno, ByteBuffer data) throws IOException {
+    if (aligned(data)) {
+      read_fully(data.duplicate().clear(), (long) pageno * page_size);
+    } else {
+      read(pageno, new ByteBuffer[] { data });
+    }
+  }
+
+  /**
+   * Writes the given page via its aligned blocks.
+   */
+  public void write(int pageno, ByteBuffer data) throws IOException {
+    if (aligned(data)) {
+      ByteBuffer buf = data.duplicate().clear();
+      long pos = (long) pageno * page_size;
+      while (buf.hasRemaining()) {
+        channel.write(buf, pos + buf.position());
+      }
+    } else {
+      write(pageno, new ByteBuffer[] { data });
+    }
+  }
+
+  /**
+   * Reads the aligned blocks around a run of pages with one direct read, and
+   * copies the pages out.  Anything past the end of the file reads as zeros.
+   */
+  public void read(int first, ByteBuffer[] data) throws IOException {
+
+    // read the aligned range
+    long pos = (long) first * page_size;
+    long start = pos / block_size * block_size;
+    long end = pos + (long) data.length * page_size;
+    end = (end + block_size - 1) / block_size * block_size;
+    ByteBuffer buf = getBuffer((int) (end - start));
+    read_fully(buf, start);
+
+    // copy out each page
+    int offset = (int) (pos - start);
+    for (ByteBuffer page : data) {
+      page.put(0, buf, offset, page_size);
+      offset += page_size;
+    }
+
+  } // public void read(int first, ByteBuffer[] data)
+
+  /**
+   * Copies a run of pages into the aligned blocks around them and writes
+   * them with one direct write.  Blocks at either end that hold other pages
+   * are read first.
+   */
+  public synchronized void write(int first, ByteBuffer[] data)
+      throws IOException {
+
+    // locate the aligned range
+    long pos = (long) first * page_size;
+    long start = pos / block_size * block_size;
+    long stop = pos + (long) data.length * page_size;
+    long end = (stop + block_size - 1) / block_size * block_size;
+    ByteBuffer buf = getBuffer((int) (end - start));
+
+    // read the partly-covered blocks at either end (once, if they're the
+    // same block)
+    int size = (int) (end - start);
+    if (start < pos) {
+      buf.limit(block_size);
+      read_fully(buf, start);
+    }
+    if ((stop < end) && ((start == pos) || (size > block_size))) {
+      buf.limit(size).position(size - block_size);
+      read_fully(buf, end - block_size);
+    }
+
+    // copy in each page and write the whole range
+    int offset = (int) (pos - start);
+    buf.limit(size);
+    for (ByteBuffer page : data) {
+      buf.put(offset, page, 0, page_size);
+      offset += page_size;
+    }
+    buf.position(0);
+    while (buf.hasRemaining()) {
+      channel.write(buf, start + buf.position());
+    }
+
+  } // public synchronized void write(int first, ByteBuffer[] data)
+
+  /**
+   * Extends the file, leaving it sparse.
+   */
+  public synchronized void extend(int num_pages) throws IOException {
+    long length = (long) num_pages * page_size;
+    if (fp.length() < length) {
+      fp.setLength(length);
+    }
+  }
+
+  /**
+   * Forces the file contents (but not metadata) to the device.
+   */
+  public void force() throws IOException {
+    channel.force(false);
+  }
+
+  /**
+   * Closes both handles to the file.
+   */
+  public void close() throws IOException {
+    channel.close();
+    fp.close();
+  }
+
+  /**
+   * Returns true if the page's buffer can be used for direct I/O as is.
+   */
+  protected boolean aligned(ByteBuffer data) {
+    return data.isDirect() && (page_size % block_size == 0)
+        && (data.alignmentOffset(0, block_size) == 0);
+  }
+
+  /**
+   * Gets this thread's aligned buffer, cleared and limited to the given
+   * size.
+   */
+  protected ByteBuffer getBuffer(int size) {
+    ByteBuffer buf = buffers.get();
+    if ((buf == null) || (buf.capacity() < size)) {
+      buf = ByteBuffer.allocateDirect(size + block_size).alignedSlice(
+          block_size);
+      buffers.set(buf);
+    }
+    buf.clear().limit(size);
+    return buf;
+  }
+
+  /**
+   * Reads from the given (aligned) file position until the buffer's limit.
+   * Direct reads are only short at the end of the file, and the next read
+   * would be unaligned, so the rest of the buffer is zero-filled instead.
+   */
+  protected void read_fully(ByteBuffer buf, long pos) throws IOException {
+    int want = buf.remaining();
+    if (channel.read(buf, pos) < want) {
+      while (buf.hasRemaining()) {
+        buf.put((byte) 0);
+      }
+    }
+  }
+
+} // class DirectStore implements DiskStore
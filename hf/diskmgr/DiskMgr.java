@@ -1,13 +1,27 @@
 package diskmgr;
 
+import bufmgr.BufStats;
 import global.GlobalConst;
+import global.LatencyHistogram;
 import global.Minibase;
 import global.Page;
 import global.PageId;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 /**
  * <h3>Minibase Disk Manager</h3>
@@ -22,11 +36,25 @@ import java.io.RandomAccessFile;
  * </ol>
  * The disk manager manages a library of entries consisting of the name of
  * a file and the page number of the first page in the file.
+ * <p>
+ * The I/O counts and latencies are exported over JMX (see DiskMgrMXBean).
   */
-public class DiskMgr implements GlobalConst {
+public class DiskMgr implements GlobalConst, DiskMgrMXBean {
 
-  /** Number of actual bits per page. */
-  protected static final int BITS_PER_PAGE = PAGE_SIZE * 8;
+  /** Smallest supported page size, in bytes. */
+  public static final int MIN_PAGE_SIZE = 1024;
+
+  /** Largest supported page size; heap pages use 16-bit offsets. */
+  public static final int MAX_PAGE_SIZE = 16384;
+
+  /** Page size of databases that predate the page-size field. */
+  public static final int LEGACY_PAGE_SIZE = 1024;
+
+  /** Number of contiguous pages in each stripe unit of a striped database. */
+  public static final int STRIPE_PAGES = 64;
+
+  /** Default maximum number of asynchronous I/Os in flight. */
+  public static final int DEFAULT_QUEUE_DEPTH = 16;
 
   // --------------------------------------------------------------------------
 
@@ -34,55 +62,264 @@ public class DiskMgr implements GlobalConst {
    * This is the name of that file. */
   protected String name;
 
-  /** Reference to the OS file. */
-  protected RandomAccessFile fp;
+  /** How the pages are stored in the OS file (i.e. STORAGE_CHANNEL). */
+  protected int storage_mode;
+
+  /** Additional OS files that the pages are striped across, if any. */
+  protected String[] stripe_files = new String[0];
+
+  /** Reference to the storage backend for the OS file(s). */
+  protected DiskStore store;
   
   /** Database size, in pages. */
   protected int num_db_pages;
 
+  /** Size of each page, in bytes; fixed when the database is created. */
+  protected int page_size;
+
+  /** Number of actual bits per space-map page. */
+  protected int bits_per_page;
+
+  /** Number of space-map pages that directly follow the first page. */
+  protected int base_map_pages;
+
+  /** Whether the database grows when it runs out of free pages. */
+  protected boolean auto_grow;
+
+  /** In-memory index of the free extents in the space map. */
+  protected SpaceMap space_map;
+
+  /** View of the space-map page being updated; used under the map's lock. */
+  protected final Page map_view = Page.newView();
+
+  /** In-memory index of the file library. */
+  protected FileLibrary library;
+
+  /** Number of allocated pages, i.e. of 1 bits in the space map. */
+  protected final AtomicInteger alloc_cnt = new AtomicInteger();
+
   /** Number of disk page reads since database construction. */
-  protected int read_cnt;
+  protected final AtomicInteger read_cnt = new AtomicInteger();
 
   /** Number of disk page writes since database construction. */
-  protected int write_cnt;
+  protected final AtomicInteger write_cnt = new AtomicInteger();
+
+  /** Latencies of the reads from the store. */
+  protected final LatencyHistogram read_latency = new LatencyHistogram();
+
+  /** Latencies of the writes to the store. */
+  protected final LatencyHistogram write_latency = new LatencyHistogram();
+
+  /** The flush each thread has in progress, if any. */
+  protected final ThreadLocal<FlushBatch> flush_batch =
+      new ThreadLocal<FlushBatch>();
+
+  /**
+   * The latest copy of each page saved by a flush in progress, by page id;
+   * read_page finds it here until it's on disk.
+   */
+  protected final ConcurrentSkipListMap<Integer, byte[]> flush_pages =
+      new ConcurrentSkipListMap<Integer, byte[]>();
+
+  /** Orders the writes of pages saved by flushes. */
+  protected final ReentrantLock flush_lock = new ReentrantLock();
+
+  /** Maximum number of asynchronous I/Os in flight. */
+  protected int queue_depth = DEFAULT_QUEUE_DEPTH;
+
+  /** Threads that perform asynchronous I/O; null until it's first used. */
+  protected ExecutorService io_pool;
+
+  /** One permit for each asynchronous I/O that may be in flight. */
+  protected Semaphore io_slots;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs a disk manager that uses positional FileChannel I/O.
+   */
+  public DiskMgr() {
+    this(STORAGE_CHANNEL);
+  }
+
+  /**
+   * Constructs a disk manager that uses the given storage mode.
+   * 
+   * @throws IllegalArgumentException if storage_mode is invalid
+   */
+  public DiskMgr(int storage_mode) {
+    if ((storage_mode != STORAGE_CHANNEL) && (storage_mode != STORAGE_FILE)
+        && (storage_mode != STORAGE_MAPPED) && (storage_mode != STORAGE_DIRECT)
+        && (storage_mode != STORAGE_COMPRESSED)) {
+      throw new IllegalArgumentException("Invalid storage mode");
+    }
+    this.storage_mode = storage_mode;
+  }
+
+  /**
+   * Sets the additional OS files (i.e. on other devices) that the pages are
+   * striped across, in units of STRIPE_PAGES; the first unit is in the file
+   * named by createDB or openDB.  Must be called before either of them, and
+   * the same files must be given each time the database is opened.
+   */
+  public void setStripeFiles(String[] stripe_files) {
+    this.stripe_files = stripe_files.clone();
+  }
+
+  /**
+   * Opens (or creates) the storage backend for the given OS file, and for
+   * any stripe files.
+   */
+  protected DiskStore openStore(String fname) throws IOException {
+    if (stripe_files.length == 0) {
+      return openFile(fname);
+    }
+    DiskStore[] stores = new DiskStore[1 + stripe_files.length];
+    stores[0] = openFile(fname);
+    for (int i = 0; i < stripe_files.length; i++) {
+      stores[1 + i] = openFile(stripe_files[i]);
+    }
+    return new StripedStore(stores, STRIPE_PAGES);
+  }
+
+  /**
+   * Opens (or creates) the storage backend for a single OS file, according
+   * to the storage mode.
+   */
+  protected DiskStore openFile(String fname) throws IOException {
+    switch (storage_mode) {
+      case STORAGE_FILE:
+        return new FileStore(fname, page_size);
+      case STORAGE_MAPPED:
+        return new MappedStore(fname, page_size);
+      case STORAGE_DIRECT:
+        return new DirectStore(fname, page_size);
+      case STORAGE_COMPRESSED:
+        return new CompressedStore(fname, page_size);
+      default:
+        return new ChannelStore(fname, page_size);
+    }
+  }
+
+  /**
+   * Sets the page size, which must be a supported power of two.
+   * 
+   * @throws IllegalArgumentException if page_size is invalid
+   */
+  protected void setPageSize(int page_size) {
+    if ((page_size < MIN_PAGE_SIZE) || (page_size > MAX_PAGE_SIZE)
+        || (Integer.bitCount(page_size) != 1)) {
+      throw new IllegalArgumentException("Invalid page size");
+    }
+    this.page_size = page_size;
+    bits_per_page = page_size * 8;
+  }
+
+  /**
+   * Gets the size of each page in the database, in bytes.
+   */
+  public int getPageSize() {
+    return page_size;
+  }
+
+  /**
+   * Reads the page size of an existing database file without opening it, so
+   * that pages of the right size can be allocated first.  The number of
+   * file entries near the start of the first page tells which size to try,
+   * and the size recorded at the end of that page must agree with it (or be
+   * 0 on a legacy 1 KB database).  Compressed files record it in their
+   * header.
+   * 
+   * @throws IllegalStateException if the file is not a database, or has no
+   * valid page size
+   */
+  public static int read_page_size(String fname) {
+    int size = 0;
+    boolean valid = false;
+    try (RandomAccessFile fp = new RandomAccessFile(fname, "r")) {
+      if (fp.readInt() == CompressedStore.MAGIC) {
+        fp.seek(CompressedStore.HDR_PAGE_SIZE);
+        size = fp.readInt();
+        valid = true;
+      } else {
+        fp.seek(DBHeaderPage.NUM_OF_ENTRIES);
+        int num_entries = fp.readInt();
+        for (int pgsz = MIN_PAGE_SIZE; pgsz <= MAX_PAGE_SIZE; pgsz *= 2) {
+          if (num_entries == DBHeaderPage.num_entries(pgsz, true)) {
+            fp.seek(pgsz - DBFirstPage.PAGE_SIZE_FIELD);
+            int stored = fp.readInt();
+            size = pgsz;
+            valid = (stored == pgsz)
+                || ((stored == 0) && (pgsz == LEGACY_PAGE_SIZE));
+            break;
+          }
+        }
+      }
+    } catch (EOFException exc) {
+      // too short to have a first page
+    } catch (IOException exc) {
+      Minibase.haltSystem(exc);
+    }
+    if (!valid || (size < MIN_PAGE_SIZE) || (size > MAX_PAGE_SIZE)
+        || (Integer.bitCount(size) != 1)) {
+      throw new IllegalStateException("File " + fname
+          + " has no valid page size on its first page\n");
+    }
+    return size;
+  } // public static int read_page_size(String fname)
 
   // ------Manage the DB--------------------
 
 
   /**
    * Creates and opens a new database with the given OS file name and specified
-   * number of pages.
+   * number of pages, using the page size of the running system (see
+   * Minibase.PageSize).
    */
   public void createDB(String fname, int num_db_pgs) {
 
     // save the parameters locally
     name = fname;
+    setPageSize(Minibase.PageSize);
     num_db_pages = (num_db_pgs > 2) ? num_db_pgs : 2;
 
-    // overwrite an existing file
+    // overwrite any existing files
     File DBfile = new File(name);
     DBfile.delete();
+    new File(hot_file()).delete();
+    for (String stripe : stripe_files) {
+      new File(stripe).delete();
+    }
 
     // create the database file, num_pages pages long
     try {
-      fp = new RandomAccessFile(fname, "rw");
-      fp.seek((long) (num_db_pages * PAGE_SIZE - 1));
-      fp.writeByte(0);
+      store = openStore(fname);
+      store.extend(num_db_pages);
     } catch (IOException exc) {
       Minibase.haltSystem(exc);
     }
 
     // create and initialize the first DB page
+    base_map_pages = num_map_pages();
     PageId pageId = new PageId(FIRST_PAGEID);
     DBFirstPage firstpg = new DBFirstPage();
-    Minibase.BufferManager.pinPage(pageId, firstpg, PIN_MEMCPY);
+    Minibase.BufferManager.pinPage(pageId, firstpg, PIN_MEMCPY, header_stats());
     firstpg.setNumDBPages(num_db_pages);
+    firstpg.setNumMapPages(base_map_pages);
+    firstpg.setPageSize(page_size);
+    firstpg.setNumStripes(1 + stripe_files.length);
+    library = new FileLibrary();
+    library.load(FIRST_PAGEID, firstpg);
     Minibase.BufferManager.unpinPage(pageId, UNPIN_DIRTY);
 
-    // calculate how many pages are needed for the space map; reserve
-    // page 0 plus room for the space map
-    int num_map_pages = (num_db_pages + BITS_PER_PAGE - 1) / BITS_PER_PAGE;
-    set_bits(pageId, 1 + num_map_pages, 1);
+    // the new space map starts out empty
+    space_map = new SpaceMap();
+    space_map.release(0, num_db_pages);
+    alloc_cnt.set(0);
+
+    // reserve page 0 plus room for the space map
+    set_bits(pageId, 1 + base_map_pages, 1);
+    Minibase.BufferManager.warmStart(hot_file());
 
   } // public void createDB(String fname, int num_pgs)
 
@@ -96,21 +333,63 @@ public class DiskMgr implements GlobalConst {
     File DBfile = new File(name);
     if (!DBfile.exists())
     	throw new IllegalStateException("File "+name+" does not exist\n");
+    for (String stripe : stripe_files) {
+      if (!new File(stripe).exists()) {
+        throw new IllegalStateException("File " + stripe + " does not exist\n");
+      }
+    }
+    setPageSize(Minibase.PageSize);
     try {
-      fp = new RandomAccessFile(fname, "rw");
+      store = openStore(fname);
     } catch (IOException exc) {
       Minibase.haltSystem(exc);
     }
 
-    // read the first page
+    // read the first page; only it is valid until the size is known
+    num_db_pages = FIRST_PAGEID + 1;
     PageId pageId = new PageId(FIRST_PAGEID);
-    Page apage = new Page();
-    Minibase.BufferManager.pinPage(pageId, apage, PIN_DISKIO);
+    DBFirstPage firstpg = Minibase.BufferManager.pinView(pageId,
+        new DBFirstPage(null), header_stats());
 
     // get the total number of pages
-    DBFirstPage firstpg = new DBFirstPage(apage);
-    num_db_pages = firstpg.getNumDBPages();
+    int num_pgs = firstpg.getNumDBPages();
+    int num_map_pgs = firstpg.getNumMapPages();
+    int stored_size = firstpg.getPageSize();
+    int num_stripes = Math.max(firstpg.getNumStripes(), 1);
     Minibase.BufferManager.unpinPage(pageId, UNPIN_CLEAN);
+    if (num_pgs < 2) {
+      throw new IllegalStateException("File " + name
+          + " has an invalid page count\n");
+    }
+    if (stored_size == 0) {
+      stored_size = LEGACY_PAGE_SIZE;
+    }
+    if (stored_size != page_size) {
+      throw new IllegalStateException("File " + name + " has page size "
+          + stored_size + ", not " + page_size + "\n");
+    }
+    if (num_stripes != 1 + stripe_files.length) {
+      throw new IllegalStateException("File " + name + " is striped across "
+          + num_stripes + " files, not " + (1 + stripe_files.length) + "\n");
+    }
+    num_db_pages = num_pgs;
+
+    // older databases never grew, so their whole space map follows page 0
+    base_map_pages = (num_map_pgs > 0) ? num_map_pgs : num_map_pages();
+
+    // make sure the OS file covers every page
+    try {
+      store.extend(num_db_pages);
+    } catch (IOException exc) {
+      Minibase.haltSystem(exc);
+    }
+
+    // index the free space and the file library
+    load_space_map();
+    load_file_library();
+
+    // reload the pages that were in use when it was closed
+    Minibase.BufferManager.warmStart(hot_file());
 
   } // public void openDB(String fname)
 
@@ -119,9 +398,13 @@ public class DiskMgr implements GlobalConst {
    * written to disk and close the OS file.
    */
   public void closeDB() {
+    Minibase.BufferManager.warmStop();
+    stop_io();
+    Minibase.BufferManager.stopCleaner();
     try {
       Minibase.BufferManager.flushAllFrames();
-      fp.close();
+      store.force();
+      store.close();
     } catch (IOException exc) {
       Minibase.haltSystem(exc);
     }
@@ -134,7 +417,76 @@ public class DiskMgr implements GlobalConst {
     closeDB();
     File DBfile = new File(name);
     DBfile.delete();
+    new File(hot_file()).delete();
+    for (String stripe : stripe_files) {
+      new File(stripe).delete();
+    }
+  }
+
+  /**
+   * Gets the name of the file that lists the database's hot pages, for a
+   * warm restart of the buffer pool (see BufMgr.warmStart).
+   */
+  protected String hot_file() {
+    return name + ".hot";
+  }
+
+  /**
+   * Sets whether the database grows on demand.  When enabled, an allocation
+   * that doesn't fit extends the OS file by a large chunk (at least a
+   * quarter of its size) instead of failing.
+   */
+  public void setAutoGrow(boolean auto_grow) {
+    this.auto_grow = auto_grow;
   }
+
+  /**
+   * Grows the database so that a run of the given size fits at the end, if
+   * possible.  The new pages are added to the space map; each new region
+   * of bits_per_page pages stores its own space-map page in its first page,
+   * since the pages after the original space map are already in use.
+   */
+  protected void grow_db(int run_size) {
+
+    // grow geometrically, but always by enough for the run
+    long grow = Math.max(run_size + 1L,
+        Math.max(num_db_pages / 4, bits_per_page));
+    int old_pages = num_db_pages;
+    int new_pages = (int) Math.min(old_pages + grow, Integer.MAX_VALUE);
+    if (new_pages == old_pages) {
+      return;
+    }
+
+    // extend the OS file
+    try {
+      store.extend(new_pages);
+    } catch (IOException exc) {
+      Minibase.haltSystem(exc);
+    }
+
+    // record the new size on the first page
+    PageId pageId = new PageId(FIRST_PAGEID);
+    Minibase.BufferManager.pinView(pageId, new DBFirstPage(null),
+        header_stats()).setNumDBPages(new_pages);
+    Minibase.BufferManager.unpinPage(pageId, UNPIN_DIRTY);
+
+    // the new pages start out free
+    num_db_pages = new_pages;
+    space_map.release(old_pages, new_pages - old_pages);
+
+    // initialize a space-map page for each new region and allocate it
+    int num_map_pages = num_map_pages();
+    int first_new = (int) (((long) old_pages + bits_per_page - 1)
+        / bits_per_page);
+    for (int i = first_new; i < num_map_pages; i++) {
+      PageId mapid = new PageId(map_page(i));
+      Minibase.BufferManager.pinPage(mapid, new Page(), PIN_MEMCPY,
+          map_stats());
+      Minibase.BufferManager.unpinPage(mapid, UNPIN_DIRTY);
+      set_bits(mapid, 1, 1);
+    }
+
+  } // protected void grow_db(int run_size)
   
 //-----Manage Logical File Layer -------------------
   /**
@@ -152,11 +504,17 @@ public class DiskMgr implements GlobalConst {
       throw new IllegalArgumentException("Invalid page number; read aborted");
     }
 
-    // seek to the correct page on disk and read it
+    // a page saved by a flush in progress may not be on disk yet
+    if (read_flushed(pageno.pid, mempage)) {
+      return;
+    }
+
+    // read the page from the store
     try {
-      fp.seek((long) (pageno.pid * PAGE_SIZE));
-      fp.read(mempage.getData());
-      read_cnt++;
+      long start = System.nanoTime();
+      store.read(pageno.pid, mempage.getBuffer());
+      read_latency.recordSince(start);
+      read_cnt.incrementAndGet();
     } catch (IOException exc) {
       Minibase.haltSystem(exc);
     }
@@ -177,28 +535,399 @@ public class DiskMgr implements GlobalConst {
       throw new IllegalArgumentException("Invalid page number; write aborted");
     }
 
-    // seek to the correct page on disk and write it
+    // during a flush, just save a copy to be written with its neighbors
+    if (defer_write(pageno.pid, mempage)) {
+      return;
+    }
+
+    // this write replaces any older copy saved by another thread's flush
+    boolean replaces = flush_pages.containsKey(pageno.pid);
+    byte[] saved = null;
+    if (replaces) {
+      flush_lock.lock();
+      saved = flush_pages.get(pageno.pid);
+    }
     try {
-      fp.seek((long) (pageno.pid * PAGE_SIZE));
-      fp.write(mempage.getData());
-      write_cnt++;
+      long start = System.nanoTime();
+      store.write(pageno.pid, mempage.getBuffer());
+      write_latency.recordSince(start);
+      write_cnt.incrementAndGet();
     } catch (IOException exc) {
       Minibase.haltSystem(exc);
+    } finally {
+      if (replaces) {
+        if (saved != null) {
+          flush_pages.remove(pageno.pid, saved);
+        }
+        flush_lock.unlock();
+      }
     }
 
   } // public void write_page(PageId pageno, Page mempage)
+
+  /**
+   * Reads a run of contiguous pages from disk with a single scattering I/O.
+   * 
+   * @param first identifies the first page to read
+   * @param count number of pages in the run
+   * @param out output parameter to hold the contents of the pages; out[i]
+   * receives page first + i
+   * @throws IllegalArgumentException if the run is invalid
+   */
+  public void read_pages(PageId first, int count, Page[] out) {
+
+    // validate the run
+    if ((first.pid < 0) || (count < 1) || (count > out.length)
+        || (count > num_db_pages - first.pid)) {
+      throw new IllegalArgumentException("Invalid page run; read aborted");
+    }
+
+    // pages saved by a flush in progress may not be on disk yet
+    if (in_flush(first.pid, count)) {
+      for (int i = 0; i < count; i++) {
+        read_page(new PageId(first.pid + i), out[i]);
+      }
+      return;
+    }
+
+    // read the run from the store
+    try {
+      long start = System.nanoTime();
+      store.read(first.pid, getBuffers(out, count));
+      read_latency.recordSince(start);
+      read_cnt.addAndGet(count);
+    } catch (IOException exc) {
+      Minibase.haltSystem(exc);
+    }
+
+  } // public void read_pages(PageId first, int count, Page[] out)
+
+  /**
+   * Writes a run of contiguous pages to disk with a single gathering I/O.
+   * 
+   * @param first identifies the first page to write
+   * @param count number of pages in the run
+   * @param pages holds the contents of the pages; pages[i] is written to
+   * page first + i
+   * @throws IllegalArgumentException if the run is invalid
+   */
+  public void write_pages(PageId first, int count, Page[] pages) {
+
+    // validate the run
+    if ((first.pid < 0) || (count < 1) || (count > pages.length)
+        || (count > num_db_pages - first.pid)) {
+      throw new IllegalArgumentException("Invalid page run; write aborted");
+    }
+
+    // during a flush, or if one saved any of the pages, write them one at a
+    // time, so they're saved with it or replace its copies
+    if (in_flush(first.pid, count) || (flush_batch.get() != null)) {
+      for (int i = 0; i < count; i++) {
+        write_page(new PageId(first.pid + i), pages[i]);
+      }
+      return;
+    }
+
+    // write the run to the store
+    try {
+      long start = System.nanoTime();
+      store.write(first.pid, getBuffers(pages, count));
+      write_latency.recordSince(start);
+      write_cnt.addAndGet(count);
+    } catch (IOException exc) {
+      Minibase.haltSystem(exc);
+    }
+
+  } // public void write_pages(PageId first, int count, Page[] pages)
+
+  /**
+   * Sets the maximum number of asynchronous I/Os in flight, after waiting
+   * for any current ones to finish.
+   * 
+   * @throws IllegalArgumentException if queue_depth is not positive
+   */
+  public void setQueueDepth(int queue_depth) {
+    if (queue_depth < 1) {
+      throw new IllegalArgumentException("Invalid queue depth");
+    }
+    stop_io();
+    this.queue_depth = queue_depth;
+  }
+
+  /**
+   * Reads the specified page from disk without waiting for it.  Up to the
+   * queue depth of requests run at once, on background threads; beyond
+   * that, this blocks until one of them finishes.
+   * 
+   * @param pageno identifies the page to read
+   * @return a future for a new page holding the contents; it completes
+   * exceptionally with IllegalArgumentException if pageno is invalid
+   */
+  public CompletableFuture<Page> readPageAsync(PageId pageno) {
+    PageId pid = new PageId(pageno.pid);
+    return submit_io(() -> {
+      Page mempage = new Page();
+      read_page(pid, mempage);
+      return mempage;
+    }, true);
+  } // public CompletableFuture<Page> readPageAsync(PageId pageno)
+
+  /**
+   * Writes the given page to disk without waiting for it; see readPageAsync.
+   * The caller must not change the page until the write completes.
+   * 
+   * @param pageno identifies the page to write
+   * @param mempage holds the contents of the page
+   * @return a future that completes when the page is written; it completes
+   * exceptionally with IllegalArgumentException if pageno is invalid
+   */
+  public CompletableFuture<Void> writePageAsync(PageId pageno, Page mempage) {
+    PageId pid = new PageId(pageno.pid);
+    return submit_io(() -> {
+      write_page(pid, mempage);
+      return null;
+    }, true);
+  } // public CompletableFuture<Void> writePageAsync(PageId pageno, ...)
+
+  /**
+   * Runs a request that does its own disk I/O (i.e. loading pages into the
+   * buffer pool) on the I/O threads, unless they are all busy.
+   * 
+   * @return a future that completes when the request is done, or null if
+   * it was dropped
+   */
+  public CompletableFuture<Void> tryRunAsync(Runnable request) {
+    return submit_io(() -> {
+      request.run();
+      return null;
+    }, false);
+  }
+
+  /**
+   * Runs an I/O request on the I/O threads once there's room for it,
+   * starting them if necessary.
+   * 
+   * @param wait whether to wait for room, or give up if there's none
+   * @return the request's future, or null if it gave up
+   */
+  protected <T> CompletableFuture<T> submit_io(Supplier<T> request,
+      boolean wait) {
+
+    // start the threads the first time
+    ExecutorService pool;
+    Semaphore slots;
+    synchronized (this) {
+      if (io_pool == null) {
+        io_pool = Executors.newFixedThreadPool(queue_depth, task -> {
+          Thread thread = new Thread(task, "DiskMgr I/O");
+          thread.setDaemon(true);
+          return thread;
+        });
+        io_slots = new Semaphore(queue_depth);
+      }
+      pool = io_pool;
+      slots = io_slots;
+    }
+
+    // wait for a free slot outside the lock, which the requests need
+    if (wait) {
+      slots.acquireUninterruptibly();
+    } else if (!slots.tryAcquire()) {
+      return null;
+    }
+    try {
+      return CompletableFuture.supplyAsync(request, pool).whenComplete(
+          (result, exc) -> slots.release());
+    } catch (RuntimeException exc) {
+      slots.release();
+      throw exc;
+    }
+
+  } // protected <T> CompletableFuture<T> submit_io(Supplier<T> request)
+
+  /**
+   * Waits for the asynchronous I/O in flight, and stops the I/O threads.
+   */
+  protected void stop_io() {
+    ExecutorService pool;
+    synchronized (this) {
+      pool = io_pool;
+      io_pool = null;
+    }
+    if (pool != null) {
+      pool.shutdown();
+      try {
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      } catch (InterruptedException exc) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  } // protected void stop_io()
+
+  /**
+   * Gets the buffers of the first count pages.
+   */
+  protected static ByteBuffer[] getBuffers(Page[] pages, int count) {
+    ByteBuffer[] data = new ByteBuffer[count];
+    for (int i = 0; i < count; i++) {
+      data[i] = pages[i].getBuffer();
+    }
+    return data;
+  }
   
+  /**
+   * Begins a flush for the current thread.  Until the matching end_flush,
+   * its calls to write_page only save a copy of each page (which read_page
+   * finds meanwhile); end_flush then sorts the pages by id and writes each
+   * run of adjacent pages with a single gathering write.  Flushes may be
+   * nested, in which case the outermost end_flush does the writing.  Callers
+   * should end the flush in a finally block.
+   *
+   * @return the thread's batch of pages, to pass to end_flush
+   */
+  public FlushBatch begin_flush() {
+    FlushBatch batch = flush_batch.get();
+    if (batch == null) {
+      batch = new FlushBatch();
+      flush_batch.set(batch);
+    }
+    batch.depth++;
+    return batch;
+  }
+
+  /**
+   * Ends a flush, writing the saved pages in sorted, coalesced runs.  A page
+   * that another thread saved a newer copy of is written with that copy, so
+   * the pages are on disk when the outermost end_flush returns.
+   * 
+   * @throws IllegalStateException if the batch isn't the current thread's
+   * flush in progress
+   */
+  public void end_flush(FlushBatch batch) {
+
+    // only the outermost flush writes
+    if ((batch == null) || (flush_batch.get() != batch)) {
+      throw new IllegalStateException("No such flush in progress");
+    }
+    if (--batch.depth > 0) {
+      return;
+    }
+    flush_batch.remove();
+
+    // collect runs of adjacent page ids and write each one at once
+    ArrayList<ByteBuffer> run = new ArrayList<ByteBuffer>();
+    ArrayList<byte[]> saved = new ArrayList<byte[]>();
+    int run_start = INVALID_PAGEID;
+    flush_lock.lock();
+    try {
+      for (int pid : batch.pages.keySet()) {
+        byte[] data = flush_pages.get(pid);
+        if (data == null) {
+          continue; // already written, with this copy or a newer one
+        }
+        if (!run.isEmpty() && (pid != run_start + run.size())) {
+          write_run(run_start, run, saved);
+        }
+        if (run.isEmpty()) {
+          run_start = pid;
+        }
+        run.add(ByteBuffer.wrap(data));
+        saved.add(data);
+      }
+      if (!run.isEmpty()) {
+        write_run(run_start, run, saved);
+      }
+    } catch (IOException exc) {
+      Minibase.haltSystem(exc);
+    } finally {
+      flush_lock.unlock();
+    }
+
+  } // public void end_flush(FlushBatch batch)
+
+  /**
+   * Writes a run of pages saved during a flush, then clears the run and
+   * lets reads of the pages go to disk (unless they were saved again).
+   */
+  protected void write_run(int first, ArrayList<ByteBuffer> run,
+      ArrayList<byte[]> saved) throws IOException {
+    long start = System.nanoTime();
+    store.write(first, run.toArray(new ByteBuffer[run.size()]));
+    write_latency.recordSince(start);
+    write_cnt.addAndGet(run.size());
+    for (int i = 0; i < saved.size(); i++) {
+      flush_pages.remove(first + i, saved.get(i));
+    }
+    run.clear();
+    saved.clear();
+  }
+
+  /**
+   * If the current thread has a flush in progress, saves a copy of the page
+   * to write later.
+   * 
+   * @return true if the write was deferred
+   */
+  protected boolean defer_write(int pid, Page mempage) {
+    FlushBatch batch = flush_batch.get();
+    if (batch == null) {
+      return false;
+    }
+    byte[] data = new byte[page_size];
+    mempage.getBuffer().get(0, data);
+    batch.pages.put(pid, data);
+    flush_pages.put(pid, data);
+    return true;
+  }
+
+  /**
+   * If the page was saved by a flush in progress, copies the saved contents
+   * into mempage.
+   * 
+   * @return true if the page was found
+   */
+  protected boolean read_flushed(int pid, Page mempage) {
+    byte[] data = flush_pages.get(pid);
+    if (data == null) {
+      return false;
+    }
+    mempage.getBuffer().put(0, data);
+    return true;
+  }
+
+  /**
+   * Checks whether any of a run of pages was saved by a flush in progress,
+   * and so may not be on disk yet.
+   */
+  protected boolean in_flush(int first, int count) {
+    return !flush_pages.subMap(first, first + count).isEmpty();
+  }
+
   /**
    * Gets the number of disk reads since database construction.
    */
   public int getReadCount() {
-    return read_cnt;
+    return read_cnt.get();
   }
   /**
    * Gets the number of disk writes since database construction.
    */
   public int getWriteCount() {
-    return write_cnt;
+    return write_cnt.get();
+  }
+
+  /**
+   * Gets the latencies of the reads, one per I/O (i.e. per run of pages).
+   */
+  public LatencyHistogram getReadLatency() {
+    return read_latency;
+  }
+
+  /**
+   * Gets the latencies of the writes, one per I/O (i.e. per run of pages).
+   */
+  public LatencyHistogram getWriteLatency() {
+    return write_latency;
   }
 
 //-----Manage allocation and deallocation of pages -------------------
@@ -206,6 +935,9 @@ public class DiskMgr implements GlobalConst {
   /**
    * Allocates a run of disk pages.
    * run = contiguous sequence of pages
+   * Single pages are taken in order from the free extent at the next-free
+   * cursor; longer runs are taken from the smallest free extent that is
+   * large enough.
    * 
    * @return The id of the first page in the run
    * @throws IllegalArgumentException if run_size is invalid
@@ -215,77 +947,29 @@ public class DiskMgr implements GlobalConst {
   public PageId allocate_page(int run_size) {
 
     // validate the run size
-    if ((run_size < 1) || (run_size > num_db_pages)) {
+    if ((run_size < 1) || (!auto_grow && (run_size > num_db_pages))) {
       throw new IllegalArgumentException("Invalid run size; allocate aborted");
     }
 
-    // calculate the size of the space map
-    int num_map_pages = (num_db_pages + BITS_PER_PAGE - 1) / BITS_PER_PAGE;
-    int current_run_start = 0;
-    int current_run_length = 0;
-
-    // this loop goes over each page in the space map
-    PageId pgid = new PageId();
-    Page apage = new Page();
-    for (int i = 0; i < num_map_pages; ++i) {
-
-      // pin the current space-map page
-      pgid.pid = i + 1;
-      Minibase.BufferManager.pinPage(pgid, apage, PIN_DISKIO);
-
-      // get the number of bits on current page
-      int num_bits_this_page = num_db_pages - i * BITS_PER_PAGE;
-      if (num_bits_this_page > BITS_PER_PAGE)
-        num_bits_this_page = BITS_PER_PAGE;
-
-      // Walk the page looking for a sequence of 0 bits of the appropriate
-      // length. The outer loop steps through the page's bytes, the inner
-      // one steps through each byte's bits.
-      byte[] pagebuf = apage.getData();
-      for (int byteptr = 0; num_bits_this_page > 0
-          && current_run_length < run_size; byteptr++) {
-
-        // initialize bit mask
-        Byte mask = new Byte(new Integer(1).byteValue());
-        byte tmpmask = mask.byteValue();
-
-        // search the page.  If you see a 0, increment the current
-        // run.  If you see a 1, restart the current run.
-        while (mask.intValue() != 0 && (num_bits_this_page > 0)
-            && (current_run_length < run_size)) {
-
-          // if a 1 is found
-          if ((pagebuf[byteptr] & tmpmask) != 0) {
-            current_run_start += current_run_length + 1;
-            current_run_length = 0;
-          } else {
-            current_run_length++;
-          }
-
-          // advance to the next bit
-          tmpmask <<= 1;
-          mask = new Byte(tmpmask);
-          num_bits_this_page--;
-
-        } // while
-
-      } // inner loop
-
-      // unpin the current space-map page
-      Minibase.BufferManager.unpinPage(pgid, UNPIN_CLEAN);
-
-    } // outer loop
+    // find a free extent that fits the run, growing the database if allowed;
+    // the space map is locked, as pages may be allocated on several threads
+    synchronized (space_map) {
+      int run_start = space_map.find(run_size);
+      if ((run_start < 0) && auto_grow) {
+        grow_db(run_size);
+        run_start = space_map.find(run_size);
+      }
+      if (run_start < 0) {
+        throw new IllegalStateException(
+            "Not enough space left; allocate aborted");
+      }
 
-    // check for disk full exception
-    if (current_run_length < run_size) {
-      throw new IllegalStateException("Not enough space left; allocate aborted");
+      // update the space map and return the resulting page id
+      PageId firstpg = new PageId(run_start);
+      set_bits(firstpg, run_size, 1);
+      return firstpg;
     }
 
-    // update the space map and return the resulting page id
-    PageId firstpg = new PageId(current_run_start);
-    set_bits(firstpg, run_size, 1);
-    return firstpg;
-
   } // public PageId allocate_page(int run_size)
 
   /**
@@ -317,12 +1001,14 @@ public class DiskMgr implements GlobalConst {
     }
 
     // validate the run size
-    if (run_size < 1) {
+    if ((run_size < 1) || (run_size > num_db_pages - firstid.pid)) {
       throw new IllegalArgumentException("Invalid run size; deallocate aborted");
     }
 
     // update the space map
-    set_bits(firstid, run_size, 0);
+    synchronized (space_map) {
+      set_bits(firstid, run_size, 0);
+    }
 
   } // public void deallocate_page(PageId firstid, int run_size)
 
@@ -336,49 +1022,11 @@ public class DiskMgr implements GlobalConst {
     deallocate_page(pageno, 1);
   }
   /**
-   * Gets the number of allocated disk pages.
+   * Gets the number of allocated disk pages.  The count is maintained as the
+   * space map changes, so this doesn't touch the buffer pool.
    */
-  public int getAllocCount() { 
-
-    // initialize reused variables
-    int count = 0;
-    int bit_number = 0;
-    PageId pgid = new PageId();
-    Page apage = new Page();
-
-    // iterate each page in the space map
-    int num_map_pages = (num_db_pages + BITS_PER_PAGE - 1) / BITS_PER_PAGE;
-    for (int i = 0; i < num_map_pages; i++) {
-
-      // pin the space-map page
-      pgid.pid = 1 + i;
-      Minibase.BufferManager.pinPage(pgid, apage, PIN_DISKIO);
-
-      // how many bits should we examine on this page?
-      int num_bits_this_page = num_db_pages - i * BITS_PER_PAGE;
-      if (num_bits_this_page > BITS_PER_PAGE) {
-        num_bits_this_page = BITS_PER_PAGE;
-      }
-
-      // walk the page looking for 1 bits
-      byte[] pagebuf = apage.getData();
-      for (int pgptr = 0; num_bits_this_page > 0; pgptr++) { // start forloop02
-        for (int mask = 1; mask < 256 && num_bits_this_page > 0; mask = (mask << 1), --num_bits_this_page, ++bit_number) {
-          int bit = pagebuf[pgptr] & mask;
-          if (bit != 0) {
-            count++;
-          }
-        }
-      }
-
-      // unpin the space-map page
-      Minibase.BufferManager.unpinPage(pgid, UNPIN_CLEAN);
-
-    } // end of forloop01
-
-    // return the resulting count
-    return count;
-
+  public int getAllocCount() {
+    return alloc_cnt.get();
   } // public int getAllocCount()
 
   /**
@@ -387,25 +1035,23 @@ public class DiskMgr implements GlobalConst {
    */
   public void print_space_map() {
 
-    int num_map_pages = (num_db_pages + BITS_PER_PAGE - 1) / BITS_PER_PAGE;
+    int num_map_pages = num_map_pages();
     int bit_number = 0;
 
     // this loop goes over each page in the space map
     PageId pgid = new PageId();
+    Page apage = Page.newView();
     System.out.println("num_map_pages = " + num_map_pages);
     System.out.print("num_pages = " + num_db_pages);
     for (int i = 0; i < num_map_pages; i++) { // start forloop01
 
       // pin the space-map page
-      pgid.pid = 1 + i; // space map starts at page1
-      Page apage = new Page();
-      Minibase.BufferManager.pinPage(pgid, apage, PIN_DISKIO);
+      pgid.pid = map_page(i);
+      Minibase.BufferManager.pinView(pgid, apage, map_stats());
 
       // how many bits should we examine on this page?
-      int num_bits_this_page = num_db_pages - i * BITS_PER_PAGE;
-      if (num_bits_this_page > BITS_PER_PAGE) {
-        num_bits_this_page = BITS_PER_PAGE;
-      }
+      int num_bits_this_page = (int) Math.min(bits_per_page,
+          (long) num_db_pages - map_start(i));
       System.out.println("\n\nnum_bits_this_page = " + num_bits_this_page
           + "\n");
       if (i > 0)
@@ -415,14 +1061,14 @@ public class DiskMgr implements GlobalConst {
       // length. The outer loop steps through the page's bytes, the inner
       // one steps through each byte's bits.
       int pgptr = 0;
-      byte[] pagebuf = apage.getData();
+      ByteBuffer pagebuf = apage.getBuffer();
       int mask;
       for (; num_bits_this_page > 0; pgptr++) { // start forloop02
 
         for (mask = 1; mask < 256 && num_bits_this_page > 0; mask = (mask << 1), --num_bits_this_page, ++bit_number) {
           // start forloop03
 
-          int bit = pagebuf[pgptr] & mask;
+          int bit = pagebuf.get(pgptr) & mask;
           if ((bit_number % 10) == 0) {
             if ((bit_number % 50) == 0) {
               if (bit_number > 0) {
@@ -458,28 +1104,34 @@ public class DiskMgr implements GlobalConst {
    */
   protected void set_bits(PageId start_page, int run_size, int value) {
 
+    // update the in-memory index
+    if (value == 1) {
+      space_map.reserve(start_page.pid, run_size);
+    } else {
+      space_map.release(start_page.pid, run_size);
+    }
+
     // locate the run within the space map
-    int first_map_page = start_page.pid / BITS_PER_PAGE + 1;
-    int last_map_page = (start_page.pid + run_size - 1) / BITS_PER_PAGE + 1;
-    int first_bit_no = start_page.pid % BITS_PER_PAGE;
+    int first_map_no = start_page.pid / bits_per_page;
+    int last_map_no = (int) (((long) start_page.pid + run_size - 1)
+        / bits_per_page);
+    int first_bit_no = start_page.pid % bits_per_page;
 
     // the outer loop goes over all space-map pages we need to touch
-    for (PageId pgid = new PageId(first_map_page); pgid.pid <= last_map_page; pgid.pid = pgid.pid + 1, first_bit_no = 0) {
+    PageId pgid = new PageId();
+    for (int map_no = first_map_no; map_no <= last_map_no; map_no++, first_bit_no = 0) {
       // Start forloop01
+      pgid.pid = map_page(map_no);
 
       // pin the space-map page
-      Page pg = new Page();
-      Minibase.BufferManager.pinPage(pgid, pg, PIN_DISKIO);
-      byte[] pgbuf = pg.getData();
+      ByteBuffer pgbuf = Minibase.BufferManager.pinView(pgid, map_view,
+          map_stats()).getBuffer();
 
       // locate the piece of the run that fits on this page
       int first_byte_no = first_bit_no / 8;
       int first_bit_offset = first_bit_no % 8;
-      int last_bit_no = first_bit_no + run_size - 1;
-
-      if (last_bit_no >= BITS_PER_PAGE) {
-        last_bit_no = BITS_PER_PAGE - 1;
-      }
+      int last_bit_no = (int) Math.min((long) first_bit_no + run_size - 1,
+          bits_per_page - 1);
 
       int last_byte_no = last_bit_no / 8;
 
@@ -492,21 +1144,14 @@ public class DiskMgr implements GlobalConst {
         int num_bits_this_byte = (run_size > max_bits_this_byte ? max_bits_this_byte
             : run_size);
 
-        int imask = 1;
-        int temp;
-        imask = ((imask << num_bits_this_byte) - 1) << first_bit_offset;
-        Integer intmask = new Integer(imask);
-        Byte mask = new Byte(intmask.byteValue());
-        byte bytemask = mask.byteValue();
-
+        int mask = ((1 << num_bits_this_byte) - 1) << first_bit_offset;
+        byte bits = pgbuf.get(cur_posi);
         if (value == 1) {
-          temp = (pgbuf[cur_posi] | bytemask);
-          intmask = new Integer(temp);
-          pgbuf[cur_posi] = intmask.byteValue();
+          alloc_cnt.addAndGet(Integer.bitCount(mask & ~bits));
+          pgbuf.put(cur_posi, (byte) (bits | mask));
         } else {
-          temp = pgbuf[cur_posi] & (255 ^ bytemask);
-          intmask = new Integer(temp);
-          pgbuf[cur_posi] = intmask.byteValue();
+          alloc_cnt.addAndGet(-Integer.bitCount(mask & bits));
+          pgbuf.put(cur_posi, (byte) (bits & ~mask));
         }
         run_size -= num_bits_this_byte;
 
@@ -519,7 +1164,110 @@ public class DiskMgr implements GlobalConst {
 
   } // protected void set_bits(PageId start_page, int run_size, int bit)
 
+  /**
+   * Gets the buffer pool's counters for the header pages.
+   */
+  protected static BufStats header_stats() {
+    return Minibase.BufferManager.getStats(PAGE_HEADER, null);
+  }
+
+  /**
+   * Gets the buffer pool's counters for the space-map pages.
+   */
+  protected static BufStats map_stats() {
+    return Minibase.BufferManager.getStats(PAGE_SPACE_MAP, null);
+  }
+
+  /**
+   * Gets the number of pages in the space map.  The sum is done in 64 bits
+   * so databases near the maximum page id don't overflow.
+   */
+  protected int num_map_pages() {
+    return (int) (((long) num_db_pages + bits_per_page - 1) / bits_per_page);
+  }
+
+  /**
+   * Gets the page id of the given space-map page.  The original space map
+   * directly follows the first page; pages added when the database grew
+   * are the first page of the region they describe.
+   */
+  protected int map_page(int map_no) {
+    if (map_no < base_map_pages) {
+      return 1 + map_no;
+    }
+    return map_start(map_no);
+  }
+
+  /**
+   * Gets the id of the first page that the given space-map page describes.
+   * The product is done in 64 bits, so a bad map page number can't wrap
+   * around to a valid page id.
+   * 
+   * @throws IllegalArgumentException if map_no is out of range
+   */
+  protected int map_start(int map_no) {
+    long start = (long) map_no * bits_per_page;
+    if ((map_no < 0) || (start >= num_db_pages)) {
+      throw new IllegalArgumentException("Invalid space-map page number "
+          + map_no);
+    }
+    return (int) start;
+  }
+
+  /**
+   * Builds the in-memory index of free extents from the space map, and
+   * counts the allocated pages.
+   */
+  protected void load_space_map() {
+
+    space_map = new SpaceMap();
+    int count = 0;
+    int num_map_pages = num_map_pages();
+    PageId pgid = new PageId();
+    for (int i = 0; i < num_map_pages; i++) {
+
+      // pin the space-map page
+      pgid.pid = map_page(i);
+      Page apage = Minibase.BufferManager.pinView(pgid, map_view, map_stats());
+
+      // how many bits should we examine on this page?
+      int num_bits_this_page = (int) Math.min(bits_per_page,
+          (long) num_db_pages - map_start(i));
+
+      // index the page's free runs and unpin it
+      count += space_map.load(apage.getBuffer(), map_start(i),
+          num_bits_this_page);
+      Minibase.BufferManager.unpinPage(pgid, UNPIN_CLEAN);
+
+    }
+    alloc_cnt.set(count);
+
+  } // protected void load_space_map()
+
   //-----Manage File Library-------------------
+
+  /**
+   * Builds the in-memory index of the file library from the chain of header
+   * pages.
+   */
+  protected void load_file_library() {
+
+    library = new FileLibrary();
+    DBHeaderPage hpage = new DBHeaderPage();
+    PageId hpid = new PageId();
+    PageId nexthpid = new PageId(FIRST_PAGEID);
+    do {
+
+      // pin the next header page, index it, and get its next
+      hpid.pid = nexthpid.pid;
+      Minibase.BufferManager.pinPage(hpid, hpage, PIN_DISKIO, header_stats());
+      library.load(hpid.pid, hpage);
+      nexthpid = hpage.getNextPage();
+      Minibase.BufferManager.unpinPage(hpid, UNPIN_CLEAN);
+
+    } while (nexthpid.pid != INVALID_PAGEID);
+
+  } // protected void load_file_library()
   
   /**
    * Adds an entry to the file library.  Each entry contains the name of
@@ -541,69 +1289,46 @@ public class DiskMgr implements GlobalConst {
     }
 
     // does the file already exist?
-    if (get_file_entry(fname) != null) {
+    if (library.get(fname) != null) {
       throw new IllegalArgumentException(
           "File entry already exists; add entry aborted");
     }
 
-    // search the header pages for the entry slot
-    boolean found = false;
-    int free_slot = 0;
+    // take an empty entry slot, and pin its header page
     DBHeaderPage hpage = new DBHeaderPage();
     PageId hpid = new PageId();
-    PageId tmppid = new PageId();
-    PageId nexthpid = new PageId(FIRST_PAGEID);
-    do {
+    FileLibrary.Entry slot = library.takeFreeSlot();
+    if (slot != null) {
 
-      // pin the next header page and get its next
-      hpid.pid = nexthpid.pid;
-      Minibase.BufferManager.pinPage(hpid, hpage, PIN_DISKIO);
-      nexthpid = hpage.getNextPage();
+      hpid.pid = slot.header_pid;
+      Minibase.BufferManager.pinPage(hpid, hpage, PIN_DISKIO, header_stats());
 
-      // search the header page for an empty entry
-      int entry = 0;
-      while (entry < hpage.getNumOfEntries()) {
-        hpage.getFileEntry(tmppid, entry);
-        if (tmppid.pid == INVALID_PAGEID) {
-          break;
-        }
-        entry++;
-      }
+    } else {
 
-      // verify an empty slot was found
-      if (entry < hpage.getNumOfEntries()) {
-        free_slot = entry;
-        found = true;
-      } else if (nexthpid.pid != INVALID_PAGEID) {
-        // unpin before continuing loop
-        Minibase.BufferManager.unpinPage(hpid, UNPIN_CLEAN);
-      }
-
-    } while ((nexthpid.pid != INVALID_PAGEID) && (!found));
-
-    // if necessary (and possible), add a new header page to the library
-    if (!found) {
+      // every slot is used, so add a new header page to the library
+      PageId nexthpid = allocate_page();
 
-      // allocate the new header page
-      nexthpid = allocate_page();
-
-      // set the next-page pointer on the previous library page
+      // set the next-page pointer on the last library page
+      hpid.pid = library.getLastHeaderPage();
+      Minibase.BufferManager.pinPage(hpid, hpage, PIN_DISKIO, header_stats());
       hpage.setNextPage(nexthpid);
       Minibase.BufferManager.unpinPage(hpid, UNPIN_DIRTY);
 
-      // pin the newly-allocated directory page
+      // pin the newly-allocated directory page and index its empty slots
       hpid.pid = nexthpid.pid;
-      Minibase.BufferManager.pinPage(hpid, hpage, PIN_MEMCPY);
+      Minibase.BufferManager.pinPage(hpid, hpage, PIN_MEMCPY, header_stats());
       hpage.initDefaults();
-      free_slot = 0;
+      library.load(hpid.pid, hpage);
+      slot = library.takeFreeSlot();
 
     } // if new library page
 
     // At this point, "hpid" has the page id of the library page with the free
-    // slot; "hpage" has the directory_page pointer; "free_slot" is the entry
+    // slot; "hpage" has the directory_page pointer; "slot" has the entry
     // number in the directory where we're going to put the new file entry.
-    hpage.setFileEntry(fname, start_pageno, free_slot);
+    hpage.setFileEntry(fname, start_pageno, slot.slot);
     Minibase.BufferManager.unpinPage(hpid, UNPIN_DIRTY);
+    library.add(fname, slot, start_pageno.pid);
 
   } // public void add_file_entry(String fname, PageId start_pageno)
 
@@ -615,51 +1340,18 @@ public class DiskMgr implements GlobalConst {
   public void delete_file_entry(String fname) {
 
     // Is the file really in the library?
-    if (get_file_entry(fname) == null) {
+    FileLibrary.Entry slot = library.remove(fname);
+    if (slot == null) {
       throw new IllegalArgumentException(
           "File entry not found in library; delete entry aborted");
     }
 
-    // search the library pages for the entry slot
-    boolean found = false;
-    int slot = 0;
+    // have to delete record at hpnum:slot
     DBHeaderPage hpage = new DBHeaderPage();
-    PageId hpid = new PageId();
+    PageId hpid = new PageId(slot.header_pid);
     PageId tmppid = new PageId();
-    PageId nexthpid = new PageId(0);
-    do {
-
-      // pin the next library page and get its next
-      hpid.pid = nexthpid.pid;
-      Minibase.BufferManager.pinPage(hpid, hpage, PIN_DISKIO);
-      nexthpid = hpage.getNextPage();
-
-      // search the library page for the entry
-      int entry = 0;
-      String tmpname = null;
-      while (entry < hpage.getNumOfEntries()) {
-        tmpname = hpage.getFileEntry(tmppid, entry);
-        if ((tmppid.pid != INVALID_PAGEID)
-            && (tmpname.compareToIgnoreCase(fname) == 0)) {
-          break;
-        }
-        entry++;
-      }
-
-      // verify the entry slot was found
-      if (entry < hpage.getNumOfEntries()) {
-        slot = entry;
-        found = true;
-      } else {
-        // unpin before continuing loop
-        Minibase.BufferManager.unpinPage(hpid, UNPIN_CLEAN);
-      }
-
-    } while ((nexthpid.pid != INVALID_PAGEID) && (!found));
-
-    // have to delete record at hpnum:slot
-    tmppid.pid = INVALID_PAGEID;
-    hpage.setFileEntry("\0", tmppid, slot);
+    Minibase.BufferManager.pinPage(hpid, hpage, PIN_DISKIO, header_stats());
+    hpage.setFileEntry("\0", tmppid, slot.slot);
     Minibase.BufferManager.unpinPage(hpid, UNPIN_DIRTY);
 
   } // public void delete_file_entry(String fname)
@@ -672,52 +1364,11 @@ public class DiskMgr implements GlobalConst {
    */
   public PageId get_file_entry(String fname) {
 
-    // search the library pages for the entry's slot
-    boolean found = false;
-    int slot = 0;
-    DBHeaderPage hpage = new DBHeaderPage();
-    PageId hpid = new PageId();
-    PageId tmppid = new PageId();
-    PageId nexthpid = new PageId(0);
-    do {
-
-      // pin the next library page and get its next
-      hpid.pid = nexthpid.pid;
-      Minibase.BufferManager.pinPage(hpid, hpage, PIN_DISKIO);
-      nexthpid = hpage.getNextPage();
-
-      // search the library page for the entry
-      int entry = 0;
-      String tmpname;
-      while (entry < hpage.getNumOfEntries()) {
-        tmpname = hpage.getFileEntry(tmppid, entry);
-        if ((tmppid.pid != INVALID_PAGEID)
-            && (tmpname.compareToIgnoreCase(fname) == 0)) {
-          break;
-        }
-        entry++;
-      }
-
-      // verify the entry slot was found
-      if (entry < hpage.getNumOfEntries()) {
-        slot = entry;
-        found = true;
-      }
-
-      // unpin the page before continuing or exiting loop
-      Minibase.BufferManager.unpinPage(hpid, UNPIN_CLEAN);
-
-    } while ((nexthpid.pid != INVALID_PAGEID) && (!found));
-
-    // return null if not found
-    if (!found) {
+    FileLibrary.Entry entry = library.get(fname);
+    if (entry == null) {
       return null;
     }
-
-    // otherwise, return the first page id
-    PageId startpid = new PageId();
-    hpage.getFileEntry(startpid, slot);
-    return startpid;
+    return new PageId(entry.start_pid);
 
   } // public PageId get_file_entry(String fname)
 
@@ -0,0 +1,36 @@
+package diskmgr;
+
+import global.LatencyHistogram;
+
+/**
+ * Management interface of the disk manager, through which its metrics are
+ * exported over JMX (see Minibase).
+ */
+public interface DiskMgrMXBean {
+
+  /**
+   * Gets the number of disk reads since database construction.
+   */
+  public int getReadCount();
+
+  /**
+   * Gets the number of disk writes since database construction.
+   */
+  public int getWriteCount();
+
+  /**
+   * Gets the number of allocated pages.
+   */
+  public int getAllocCount();
+
+  /**
+   * Gets the latencies of the reads, one per I/O (i.e. per run of pages).
+   */
+  public LatencyHistogram getReadLatency();
+
+  /**
+   * Gets the latencies of the writes, one per I/O (i.e. per run of pages).
+   */
+  public LatencyHistogram getWriteLatency();
+
+} // public interface DiskMgrMXBean
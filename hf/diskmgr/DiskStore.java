@@ -0,0 +1,55 @@
+package diskmgr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A disk store holds the pages of a database in the underlying OS file(s).
+ * The disk manager validates page numbers and keeps the statistics; the store
+ * only moves whole pages between memory and the operating system.  Different
+ * implementations trade off portability, concurrency, and caching behavior.
+ * A page's bytes run from 0 to its buffer's capacity, which may be on or off
+ * the heap; stores leave the buffers' positions and limits unchanged.
+ */
+public interface DiskStore {
+
+  /**
+   * Reads the page with the given number into the buffer, which is exactly
+   * one page long.
+   */
+  public void read(int pageno, ByteBuffer data) throws IOException;
+
+  /**
+   * Writes the buffer, which is exactly one page long, to the page with the
+   * given number.
+   */
+  public void write(int pageno, ByteBuffer data) throws IOException;
+
+  /**
+   * Reads a run of contiguous pages, starting with the given page number,
+   * into the buffers (one page each), preferably with a single I/O.
+   */
+  public void read(int first, ByteBuffer[] data) throws IOException;
+
+  /**
+   * Writes the buffers (one page each) to a run of contiguous pages,
+   * starting with the given page number, preferably with a single I/O.
+   */
+  public void write(int first, ByteBuffer[] data) throws IOException;
+
+  /**
+   * Ensures the store is at least the given number of pages long.
+   */
+  public void extend(int num_pages) throws IOException;
+
+  /**
+   * Forces any written pages out to the storage device.
+   */
+  public void force() throws IOException;
+
+  /**
+   * Closes the store, releasing its OS resources.
+   */
+  public void close() throws IOException;
+
+} // public interface DiskStore
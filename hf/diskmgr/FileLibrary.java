@@ -0,0 +1,136 @@
+package diskmgr;
+
+import global.GlobalConst;
+import global.PageId;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * In-memory index of the file library stored on the header pages.  Names are
+ * hashed case-insensitively to the location of their entries, and the empty
+ * entry slots are kept in a list, so neither a lookup nor an insert has to
+ * walk the chain of header pages.  The header pages remain the persistent
+ * copy; this index is rebuilt when the database is opened.
+ */
+class FileLibrary implements GlobalConst {
+
+  /**
+   * Location and contents of one entry slot in the library.
+   */
+  static class Entry {
+
+    /** Id of the file's first page, or INVALID_PAGEID if the slot is empty. */
+    public int start_pid;
+
+    /** Id of the header page holding the entry. */
+    public int header_pid;
+
+    /** Entry number on the header page. */
+    public int slot;
+
+    /** Constructs an entry for the given slot. */
+    public Entry(int start_pid, int header_pid, int slot) {
+      this.start_pid = start_pid;
+      this.header_pid = header_pid;
+      this.slot = slot;
+    }
+
+  } // static class Entry
+
+  // --------------------------------------------------------------------------
+
+  /** Entries in use, keyed by lower-case file name. */
+  protected HashMap<String, Entry> entries;
+
+  /** Empty entry slots, most recently freed first. */
+  protected ArrayDeque<Entry> free_slots;
+
+  /** Id of the last header page in the chain. */
+  protected int last_header_pid;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs an empty index.
+   */
+  public FileLibrary() {
+    entries = new HashMap<String, Entry>();
+    free_slots = new ArrayDeque<Entry>();
+    last_header_pid = INVALID_PAGEID;
+  }
+
+  /**
+   * Adds the entries on the given header page to the index.  Pages must be
+   * loaded in chain order.
+   */
+  public void load(int header_pid, DBHeaderPage hpage) {
+
+    PageId tmppid = new PageId();
+    int num_entries = hpage.getNumOfEntries();
+    for (int slot = 0; slot < num_entries; slot++) {
+      String fname = hpage.getFileEntry(tmppid, slot);
+      Entry entry = new Entry(tmppid.pid, header_pid, slot);
+      if (tmppid.pid == INVALID_PAGEID) {
+        free_slots.addLast(entry);
+      } else {
+        entries.put(key(fname), entry);
+      }
+    }
+    last_header_pid = header_pid;
+
+  } // public void load(int header_pid, DBHeaderPage hpage)
+
+  /**
+   * Gets the entry for the given file name, or null if there is none.
+   */
+  public Entry get(String fname) {
+    return entries.get(key(fname));
+  }
+
+  /**
+   * Removes and returns an empty entry slot, or null if every slot is used.
+   */
+  public Entry takeFreeSlot() {
+    return free_slots.pollFirst();
+  }
+
+  /**
+   * Records that the given (previously empty) slot now holds the file.
+   */
+  public void add(String fname, Entry slot, int start_pid) {
+    slot.start_pid = start_pid;
+    entries.put(key(fname), slot);
+  }
+
+  /**
+   * Removes the entry for the given file name and returns its (now empty)
+   * slot to the free list.
+   * 
+   * @return the removed entry, or null if there is none
+   */
+  public Entry remove(String fname) {
+    Entry entry = entries.remove(key(fname));
+    if (entry != null) {
+      entry.start_pid = INVALID_PAGEID;
+      free_slots.addFirst(entry);
+    }
+    return entry;
+  }
+
+  /**
+   * Gets the id of the last header page in the chain.
+   */
+  public int getLastHeaderPage() {
+    return last_header_pid;
+  }
+
+  /**
+   * Gets the case-insensitive hash key for the given file name.
+   */
+  protected static String key(String fname) {
+    return fname.toLowerCase(Locale.ROOT);
+  }
+
+} // class FileLibrary implements GlobalConst
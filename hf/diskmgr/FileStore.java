@@ -0,0 +1,121 @@
+package diskmgr;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * Disk store that seeks and reads on a RandomAccessFile; this is the
+ * original Minibase behavior.  All I/O shares one file pointer, so requests
+ * are serialized.  Pages off the heap are copied through a temporary array.
+ */
+class FileStore implements DiskStore {
+
+  /** Reference to the OS file. */
+  protected RandomAccessFile fp;
+
+  /** Size of a page, in bytes. */
+  protected int page_size;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Opens (or creates) the OS file with the given name and page size.
+   */
+  public FileStore(String fname, int page_size) throws IOException {
+    this.page_size = page_size;
+    fp = new RandomAccessFile(fname, "rw");
+  }
+
+  /**
+   * Seeks to the given page and reads it.
+   */
+  public synchronized void read(int pageno, ByteBuffer data)
+      throws IOException {
+    fp.seek((long) pageno * page_size);
+    read(data);
+  }
+
+  /**
+   * Seeks to the given page and writes it.
+   */
+  public synchronized void write(int pageno, ByteBuffer data)
+      throws IOException {
+    fp.seek((long) pageno * page_size);
+    write(data);
+  }
+
+  /**
+   * Seeks to the first page and reads the run sequentially.
+   */
+  public synchronized void read(int first, ByteBuffer[] data)
+      throws IOException {
+    fp.seek((long) first * page_size);
+    for (ByteBuffer page : data) {
+      read(page);
+    }
+  }
+
+  /**
+   * Seeks to the first page and writes the run sequentially.
+   */
+  public synchronized void write(int first, ByteBuffer[] data)
+      throws IOException {
+    fp.seek((long) first * page_size);
+    for (ByteBuffer page : data) {
+      write(page);
+    }
+  }
+
+  /**
+   * Extends the file by writing its last byte, leaving it sparse.
+   */
+  public synchronized void extend(int num_pages) throws IOException {
+    long length = (long) num_pages * page_size;
+    if (fp.length() < length) {
+      fp.seek(length - 1);
+      fp.writeByte(0);
+    }
+  }
+
+  /**
+   * Forces the file contents to disk.
+   */
+  public void force() throws IOException {
+    fp.getFD().sync();
+  }
+
+  /**
+   * Closes the file.
+   */
+  public void close() throws IOException {
+    fp.close();
+  }
+
+  /**
+   * Reads one page at the current file pointer.
+   */
+  protected void read(ByteBuffer data) throws IOException {
+    if (data.hasArray()) {
+      fp.read(data.array(), data.arrayOffset(), page_size);
+    } else {
+      byte[] image = new byte[page_size];
+      fp.read(image);
+      data.put(0, image);
+    }
+  }
+
+  /**
+   * Writes one page at the current file pointer.
+   */
+  protected void write(ByteBuffer data) throws IOException {
+    if (data.hasArray()) {
+      fp.write(data.array(), data.arrayOffset(), page_size);
+    } else {
+      byte[] image = new byte[page_size];
+      data.get(0, image);
+      fp.write(image);
+    }
+  }
+
+} // class FileStore implements DiskStore
@@ -0,0 +1,25 @@
+package diskmgr;
+
+import java.util.TreeMap;
+
+/**
+ * The pages written by one thread between begin_flush and end_flush, which
+ * end_flush writes in sorted, coalesced runs.  Each batch belongs to the
+ * thread that began it; writes by other threads aren't added to it.
+ */
+public class FlushBatch {
+
+  /** Copies of the pages written so far, by page id. */
+  protected final TreeMap<Integer, byte[]> pages =
+      new TreeMap<Integer, byte[]>();
+
+  /** Nesting depth of begin_flush calls. */
+  protected int depth;
+
+  /**
+   * Constructs an empty batch; see DiskMgr.begin_flush.
+   */
+  protected FlushBatch() {
+  }
+
+} // public class FlushBatch
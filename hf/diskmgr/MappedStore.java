@@ -0,0 +1,176 @@
+package diskmgr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Disk store that maps the OS file into memory.  Reads and writes are plain
+ * copies out of and into the mapping, so pages already in the OS page cache
+ * cost no system call.  A single MappedByteBuffer is limited to 2 GB, so the
+ * file is mapped as a series of fixed-size chunks.  Growing the file
+ * publishes a new Mapping, so reads and writes on other threads see either
+ * the old chunks or all of the new ones.
+ */
+class MappedStore implements DiskStore {
+
+  /** Size of each mapped chunk (in bytes); a multiple of any page size. */
+  protected static final int CHUNK_SIZE = 1 << 30;
+
+  /**
+   * The chunks mapped at once, and their total length; never changed once
+   * published.
+   */
+  protected static class Mapping {
+
+    /** The mapped chunks, in file order; the last one may be partial. */
+    public final MappedByteBuffer[] chunks;
+
+    /** Number of bytes mapped. */
+    public final long length;
+
+    /**
+     * Constructs a mapping of the given chunks.
+     */
+    public Mapping(MappedByteBuffer[] chunks, long length) {
+      this.chunks = chunks;
+      this.length = length;
+    }
+
+  } // protected static class Mapping
+
+  // --------------------------------------------------------------------------
+
+  /** The channel to the OS file; only used to (re)map it. */
+  protected FileChannel channel;
+
+  /** The current mapping; replaced as a whole when the file grows. */
+  protected volatile Mapping mapping;
+
+  /** Size of a page, in bytes. */
+  protected int page_size;
+
+  /** Number of pages in each mapped chunk. */
+  protected int pages_per_chunk;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Opens (or creates) the OS file with the given name and page size, and
+   * maps its current contents.
+   */
+  public MappedStore(String fname, int page_size) throws IOException {
+    this.page_size = page_size;
+    pages_per_chunk = CHUNK_SIZE / page_size;
+    channel = FileChannel.open(Paths.get(fname), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    mapping = new Mapping(new MappedByteBuffer[0], 0);
+    remap(channel.size());
+  }
+
+  /**
+   * Copies the given page out of the mapping; pages past the end of the
+   * mapping read as zeros.
+   */
+  public void read(int pageno, ByteBuffer data) throws IOException {
+    Mapping map = mapping;
+    long pos = (long) pageno * page_size;
+    if (pos + page_size > map.length) {
+      data.put(0, new byte[page_size]);
+      return;
+    }
+    data.put(0, map.chunks[pageno / pages_per_chunk],
+        (pageno % pages_per_chunk) * page_size, page_size);
+  } // public void read(int pageno, ByteBuffer data)
+
+  /**
+   * Copies the given page into the mapping.
+   */
+  public void write(int pageno, ByteBuffer data) throws IOException {
+    Mapping map = mapping;
+    long pos = (long) pageno * page_size;
+    if (pos + page_size > map.length) {
+      throw new IOException("Page " + pageno + " is beyond the mapped file");
+    }
+    map.chunks[pageno / pages_per_chunk].put(
+        (pageno % pages_per_chunk) * page_size, data, 0, page_size);
+  } // public void write(int pageno, ByteBuffer data)
+
+  /**
+   * Copies a run of pages out of the mapping.
+   */
+  public void read(int first, ByteBuffer[] data) throws IOException {
+    for (int i = 0; i < data.length; i++) {
+      read(first + i, data[i]);
+    }
+  }
+
+  /**
+   * Copies a run of pages into the mapping.
+   */
+  public void write(int first, ByteBuffer[] data) throws IOException {
+    for (int i = 0; i < data.length; i++) {
+      write(first + i, data[i]);
+    }
+  }
+
+  /**
+   * Grows the file to the given number of pages and maps the new region.
+   */
+  public synchronized void extend(int num_pages) throws IOException {
+    long length = (long) num_pages * page_size;
+    if (length > mapping.length) {
+      remap(length);
+    }
+  }
+
+  /**
+   * Forces the mapped contents to disk.
+   */
+  public void force() throws IOException {
+    for (MappedByteBuffer chunk : mapping.chunks) {
+      chunk.force();
+    }
+  }
+
+  /**
+   * Closes the channel; the mapping itself is released when it becomes
+   * garbage.
+   */
+  public synchronized void close() throws IOException {
+    mapping = new Mapping(new MappedByteBuffer[0], 0);
+    channel.close();
+  }
+
+  /**
+   * Maps the file up to the given length, extending the file if necessary.
+   * Full chunks that are already mapped are kept; a partial last chunk is
+   * remapped at its new size.  Callers must be synchronized (or the
+   * constructor).
+   */
+  protected void remap(long length) throws IOException {
+
+    // the file length must be a whole number of pages
+    length = (length + page_size - 1) / page_size * page_size;
+    int num_chunks = (int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    Mapping old = mapping;
+    int first = (int) (old.length / CHUNK_SIZE);
+
+    // map each chunk that is new or has grown
+    MappedByteBuffer[] newchunks = Arrays.copyOf(old.chunks, num_chunks);
+    for (int i = first; i < num_chunks; i++) {
+      long start = (long) i * CHUNK_SIZE;
+      long size = Math.min(CHUNK_SIZE, length - start);
+      newchunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+    }
+
+    // publish the new mapping
+    mapping = new Mapping(newchunks, length);
+
+  } // protected void remap(long length)
+
+} // class MappedStore implements DiskStore
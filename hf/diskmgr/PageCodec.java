@@ -0,0 +1,221 @@
+package diskmgr;
+
+import java.util.Arrays;
+
+/**
+ * Fast compression for pages, using the LZ4 block format: a series of
+ * sequences, each a token byte (literal length and match length nibbles),
+ * any extra length bytes, the literals, and a 2-byte little-endian offset
+ * back to the match.  The last sequence has literals only.  Matches are
+ * found with a single-probe hash table, which favors speed over ratio.
+ */
+class PageCodec {
+
+  /** Shortest match that is worth encoding. */
+  protected static final int MIN_MATCH = 4;
+
+  /** The last bytes of the input are always literals. */
+  protected static final int LAST_LITERALS = 5;
+
+  /** No match may start within this many bytes of the end of the input. */
+  protected static final int MF_LIMIT = 12;
+
+  /** Largest distance back to a match. */
+  protected static final int MAX_OFFSET = 65535;
+
+  /** Number of bits in a hash table index. */
+  protected static final int HASH_LOG = 12;
+
+  /** Number of entries in the hash table. */
+  public static final int HASH_SIZE = 1 << HASH_LOG;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Compresses the source into the destination array, using the given hash
+   * table (of HASH_SIZE entries) as scratch space.
+   *
+   * @return the compressed length, or -1 if it wouldn't fit in dst or
+   * wouldn't be shorter than the source
+   */
+  public static int compress(byte[] src, byte[] dst, int[] table) {
+
+    // table entries are positions plus one, so 0 means empty
+    Arrays.fill(table, 0);
+    int len = src.length;
+    int anchor = 0;
+    int ip = 0;
+    int op = 0;
+    while (ip < len - MF_LIMIT) {
+
+      // look for an earlier occurrence of the next four bytes
+      int seq = readInt(src, ip);
+      int h = (seq * -1640531535) >>> (32 - HASH_LOG);
+      int ref = table[h] - 1;
+      table[h] = ip + 1;
+      if ((ref < 0) || (ip - ref > MAX_OFFSET) || (readInt(src, ref) != seq)) {
+        ip++;
+        continue;
+      }
+
+      // extend the match backwards over the pending literals, then forwards
+      while ((ip > anchor) && (ref > 0) && (src[ip - 1] == src[ref - 1])) {
+        ip--;
+        ref--;
+      }
+      int mlen = MIN_MATCH;
+      while ((ip + mlen < len - LAST_LITERALS)
+          && (src[ip + mlen] == src[ref + mlen])) {
+        mlen++;
+      }
+
+      // emit the literals and the match
+      op = emit(src, anchor, ip - anchor, dst, op, ip - ref, mlen);
+      if (op < 0) {
+        return -1;
+      }
+      ip += mlen;
+      anchor = ip;
+
+    } // while
+
+    // the rest of the input is literals; the result must be shorter than
+    // the input, so that its length alone tells it apart from a raw copy
+    op = emit(src, anchor, len - anchor, dst, op, 0, 0);
+    return (op < len) ? op : -1;
+
+  } // public static int compress(byte[] src, byte[] dst, int[] table)
+
+  /**
+   * Decompresses the first srclen bytes of the source into the destination
+   * array.
+   *
+   * @return the decompressed length, or -1 if the source is malformed
+   */
+  public static int decompress(byte[] src, int srclen, byte[] dst) {
+
+    int ip = 0;
+    int op = 0;
+    while (ip < srclen) {
+
+      // copy the literals
+      int token = src[ip++] & 0xFF;
+      int lit = token >>> 4;
+      if (lit == 15) {
+        int b;
+        do {
+          if (ip >= srclen) {
+            return -1;
+          }
+          b = src[ip++] & 0xFF;
+          lit += b;
+        } while (b == 255);
+      }
+      if ((ip + lit > srclen) || (op + lit > dst.length)) {
+        return -1;
+      }
+      System.arraycopy(src, ip, dst, op, lit);
+      ip += lit;
+      op += lit;
+
+      // the last sequence has no match
+      if (ip == srclen) {
+        break;
+      }
+      if (ip + 2 > srclen) {
+        return -1;
+      }
+      int offset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+      ip += 2;
+      if ((offset == 0) || (offset > op)) {
+        return -1;
+      }
+
+      // copy the match, which may overlap its own output
+      int mlen = token & 15;
+      if (mlen == 15) {
+        int b;
+        do {
+          if (ip >= srclen) {
+            return -1;
+          }
+          b = src[ip++] & 0xFF;
+          mlen += b;
+        } while (b == 255);
+      }
+      mlen += MIN_MATCH;
+      if (op + mlen > dst.length) {
+        return -1;
+      }
+      if (offset >= mlen) {
+        System.arraycopy(dst, op - offset, dst, op, mlen);
+        op += mlen;
+      } else {
+        for (int end = op + mlen; op < end; op++) {
+          dst[op] = dst[op - offset];
+        }
+      }
+
+    } // while
+    return op;
+
+  } // public static int decompress(byte[] src, int srclen, byte[] dst)
+
+  /**
+   * Writes one sequence; a match length of 0 means a final, literal-only
+   * sequence.
+   *
+   * @return the new output position, or -1 if it wouldn't fit in dst
+   */
+  protected static int emit(byte[] src, int lit_pos, int lit, byte[] dst,
+      int op, int offset, int mlen) {
+
+    // make sure the whole sequence fits
+    int size = 1 + lit + lit / 255 + 1 + ((mlen > 0) ? 2 + mlen / 255 + 1 : 0);
+    if (op + size > dst.length) {
+      return -1;
+    }
+
+    // token and literals
+    int token_pos = op++;
+    int token = Math.min(lit, 15) << 4;
+    op = writeLength(dst, op, lit);
+    System.arraycopy(src, lit_pos, dst, op, lit);
+    op += lit;
+
+    // offset and match length
+    if (mlen > 0) {
+      dst[op++] = (byte) offset;
+      dst[op++] = (byte) (offset >>> 8);
+      token |= Math.min(mlen - MIN_MATCH, 15);
+      op = writeLength(dst, op, mlen - MIN_MATCH);
+    }
+    dst[token_pos] = (byte) token;
+    return op;
+
+  } // protected static int emit(...)
+
+  /**
+   * Writes the extra bytes of a length that doesn't fit in its nibble.
+   */
+  protected static int writeLength(byte[] dst, int op, int length) {
+    if (length >= 15) {
+      length -= 15;
+      while (length >= 255) {
+        dst[op++] = (byte) 255;
+        length -= 255;
+      }
+      dst[op++] = (byte) length;
+    }
+    return op;
+  }
+
+  /**
+   * Reads four bytes at the given position as an int.
+   */
+  protected static int readInt(byte[] data, int pos) {
+    return (data[pos] & 0xFF) | ((data[pos + 1] & 0xFF) << 8)
+        | ((data[pos + 2] & 0xFF) << 16) | (data[pos + 3] << 24);
+  }
+
+} // class PageCodec
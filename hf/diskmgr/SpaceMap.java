@@ -0,0 +1,304 @@
+package diskmgr;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * In-memory index of the free extents (runs of unallocated pages) recorded by
+ * the space map.  Extents are kept in primitive arrays sorted by their end,
+ * to merge and split them, and by size, to find the best fit for a run.
+ * Single pages come from the extent at the next-free cursor, which is left
+ * out of the size index, so allocating one page takes O(1) time.  Nothing is
+ * boxed, and the arrays are only reallocated when they fill up.  The on-disk
+ * bitmap remains the persistent copy; this index is rebuilt when the database
+ * is opened.
+ */
+class SpaceMap {
+
+  /** Number of extents the arrays initially have room for. */
+  protected static final int INIT_CAPACITY = 16;
+
+  /**
+   * End (last page + 1) of each free extent, in ascending order; taking
+   * pages from the front of an extent doesn't change its place.
+   */
+  protected int[] ends;
+
+  /** Number of pages in each free extent, in the order of ends. */
+  protected int[] sizes;
+
+  /** Number of free extents. */
+  protected int count;
+
+  /**
+   * Free extents packed as (size << 32 | first page), smallest first; the
+   * extent at the cursor isn't included.
+   */
+  protected long[] bysize;
+
+  /** Number of entries in bysize. */
+  protected int num_bysize;
+
+  /** Index of the extent that single pages come from, or -1 if none. */
+  protected int cursor;
+
+  /** Page to look for the next cursor extent from, when there is none. */
+  protected int next_free;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs an empty index, i.e. with every page allocated.
+   */
+  public SpaceMap() {
+    ends = new int[INIT_CAPACITY];
+    sizes = new int[INIT_CAPACITY];
+    bysize = new long[INIT_CAPACITY];
+    cursor = -1;
+  }
+
+  /**
+   * Adds the free pages recorded on one space-map page to the index.
+   * The bitmap is scanned a 64-bit word at a time.
+   * 
+   * @param pagebuf contents of the space-map page
+   * @param first_bit page number described by the page's first bit
+   * @param num_bits number of valid bits on the page
+   * @return the number of allocated pages recorded on the page
+   */
+  public int load(ByteBuffer pagebuf, int first_bit, int num_bits) {
+
+    // bit i of the map is bit (i % 8) of byte (i / 8), so little-endian words
+    // keep the same bit order
+    ByteBuffer words = pagebuf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int run_start = -1;
+    int used = 0;
+    for (int w = 0; w * 64 < num_bits; w++) {
+
+      // get the free bits in this word, ignoring those past the end
+      int bits = Math.min(64, num_bits - w * 64);
+      long free = ~words.getLong(w * 8);
+      if (bits < 64) {
+        free &= (1L << bits) - 1;
+      }
+      used += bits - Long.bitCount(free);
+
+      // alternately skip to the next free bit and the next used bit
+      int pos = 0;
+      while (pos < bits) {
+        if (run_start < 0) {
+          pos += Long.numberOfTrailingZeros(free >>> pos);
+          if (pos < bits) {
+            run_start = first_bit + w * 64 + pos;
+          }
+        } else {
+          pos += Long.numberOfTrailingZeros(~free >>> pos);
+          if (pos < bits) {
+            release(run_start, first_bit + w * 64 + pos - run_start);
+            run_start = -1;
+          }
+        }
+      } // while
+
+    } // for
+
+    // the last run continues to the end of the page
+    if (run_start >= 0) {
+      release(run_start, first_bit + num_bits - run_start);
+    }
+    return used;
+
+  } // public int load(ByteBuffer pagebuf, int first_bit, int num_bits)
+
+  /**
+   * Finds a free run of the given size, without reserving it.  Single pages
+   * come from the extent at the cursor, so files grow sequentially; once it
+   * is used up, the cursor moves on to the next extent.  Longer runs come
+   * from the smallest extent that fits.
+   * 
+   * @return the first page of the run, or -1 if no extent is large enough
+   */
+  public int find(int run_size) {
+
+    // take single pages from the cursor, choosing a new one if needed
+    if (cursor < 0) {
+      move_cursor();
+    }
+    if (run_size == 1) {
+      return (cursor < 0) ? -1 : first(cursor);
+    }
+
+    // otherwise use the best fit, which may be the cursor's extent
+    long fit = Long.MAX_VALUE;
+    int pos = ceiling(bysize, num_bysize, (long) run_size << 32);
+    if (pos < num_bysize) {
+      fit = bysize[pos];
+    }
+    if ((cursor >= 0) && (sizes[cursor] >= run_size)) {
+      fit = Math.min(fit, key(first(cursor), sizes[cursor]));
+    }
+    return (fit == Long.MAX_VALUE) ? -1 : (int) fit;
+
+  } // public int find(int run_size)
+
+  /**
+   * Marks the given run of pages as allocated.
+   */
+  public void reserve(int start, int run_size) {
+
+    // runs taken from the front of the cursor's extent just shrink it
+    if ((cursor >= 0) && (start == first(cursor))
+        && (run_size < sizes[cursor])) {
+      sizes[cursor] -= run_size;
+      return;
+    }
+
+    // otherwise split every free extent that overlaps the run
+    long end = (long) start + run_size;
+    int i = ceiling(ends, count, start + 1L);
+    while ((i < count) && (first(i) < end)) {
+      int ext_start = first(i);
+      int ext_end = ends[i];
+      delete(i);
+      if (ext_start < start) {
+        insert(i++, ext_start, start - ext_start);
+      }
+      if (ext_end > end) {
+        insert(i++, (int) end, (int) (ext_end - end));
+      }
+    }
+
+  } // public void reserve(int start, int run_size)
+
+  /**
+   * Marks the given run of pages as free, merging it with any free extents
+   * it overlaps or touches.  The pages need not have been allocated.
+   */
+  public void release(int start, int run_size) {
+
+    // absorb the free extents that end at or after the run's start, and
+    // start at or before its end
+    long lo = start;
+    long hi = (long) start + run_size;
+    int i = ceiling(ends, count, start);
+    while ((i < count) && (first(i) <= hi)) {
+      lo = Math.min(lo, first(i));
+      hi = Math.max(hi, ends[i]);
+      delete(i);
+    }
+    insert(i, (int) lo, (int) (hi - lo));
+
+  } // public void release(int start, int run_size)
+
+  /**
+   * Makes the first extent at or after next_free the cursor, wrapping around
+   * to the lowest extent, and takes it out of the size index.
+   */
+  protected void move_cursor() {
+    if (count == 0) {
+      return;
+    }
+    int i = ceiling(ends, count, next_free + 1L);
+    cursor = (i < count) ? i : 0;
+    remove_size(first(cursor), sizes[cursor]);
+  }
+
+  /**
+   * Inserts a free extent at the given position, and adds it to the size
+   * index.
+   */
+  protected void insert(int i, int start, int run_size) {
+    if (count == ends.length) {
+      ends = Arrays.copyOf(ends, count * 2);
+      sizes = Arrays.copyOf(sizes, count * 2);
+    }
+    System.arraycopy(ends, i, ends, i + 1, count - i);
+    System.arraycopy(sizes, i, sizes, i + 1, count - i);
+    ends[i] = start + run_size;
+    sizes[i] = run_size;
+    count++;
+    if (cursor >= i) {
+      cursor++;
+    }
+    add_size(start, run_size);
+  }
+
+  /**
+   * Deletes the free extent at the given position.  If it's the cursor, the
+   * next cursor is looked for from its first page.
+   */
+  protected void delete(int i) {
+    if (i == cursor) {
+      next_free = first(i);
+      cursor = -1;
+    } else {
+      remove_size(first(i), sizes[i]);
+    }
+    System.arraycopy(ends, i + 1, ends, i, count - i - 1);
+    System.arraycopy(sizes, i + 1, sizes, i, count - i - 1);
+    count--;
+    if (cursor > i) {
+      cursor--;
+    }
+  }
+
+  /**
+   * Adds a free extent to the size index.
+   */
+  protected void add_size(int start, int run_size) {
+    if (num_bysize == bysize.length) {
+      bysize = Arrays.copyOf(bysize, num_bysize * 2);
+    }
+    long entry = key(start, run_size);
+    int pos = ceiling(bysize, num_bysize, entry);
+    System.arraycopy(bysize, pos, bysize, pos + 1, num_bysize - pos);
+    bysize[pos] = entry;
+    num_bysize++;
+  }
+
+  /**
+   * Removes a free extent from the size index.
+   */
+  protected void remove_size(int start, int run_size) {
+    int pos = ceiling(bysize, num_bysize, key(start, run_size));
+    System.arraycopy(bysize, pos + 1, bysize, pos, num_bysize - pos - 1);
+    num_bysize--;
+  }
+
+  /**
+   * Gets the first page of the free extent at the given position.
+   */
+  protected int first(int i) {
+    return ends[i] - sizes[i];
+  }
+
+  /**
+   * Packs a free extent into a size index entry.
+   */
+  protected static long key(int start, int run_size) {
+    return ((long) run_size << 32) | start;
+  }
+
+  /**
+   * Gets the position of the first of the sorted values that is at least
+   * the given value, or num if there is none.
+   */
+  protected static int ceiling(int[] values, int num, long value) {
+    if (value > Integer.MAX_VALUE) {
+      return num;
+    }
+    int pos = Arrays.binarySearch(values, 0, num, (int) value);
+    return (pos < 0) ? -pos - 1 : pos;
+  }
+
+  /**
+   * Gets the position of the first of the sorted values that is at least
+   * the given value, or num if there is none.
+   */
+  protected static int ceiling(long[] values, int num, long value) {
+    int pos = Arrays.binarySearch(values, 0, num, value);
+    return (pos < 0) ? -pos - 1 : pos;
+  }
+
+} // class SpaceMap
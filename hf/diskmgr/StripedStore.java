@@ -0,0 +1,203 @@
+package diskmgr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Disk store that stripes the pages across several other stores, usually
+ * files on different devices.  Pages are dealt out in stripe units of a
+ * fixed number of pages: unit 0 goes to the first store, unit 1 to the
+ * second, and so on, wrapping around.  The part of a run that falls on each
+ * store is contiguous in that store, so a run becomes one vectored I/O per
+ * store, and these proceed in parallel.
+ */
+class StripedStore implements DiskStore {
+
+  /** The underlying stores, one per stripe. */
+  protected DiskStore[] stores;
+
+  /** Number of contiguous pages in each stripe unit. */
+  protected int stripe_pages;
+
+  /** Threads that issue the I/O to each store in parallel. */
+  protected ExecutorService pool;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Stripes pages across the given stores, in units of the given number of
+   * pages.
+   */
+  public StripedStore(DiskStore[] stores, int stripe_pages) {
+    this.stores = stores;
+    this.stripe_pages = stripe_pages;
+    pool = Executors.newFixedThreadPool(stores.length, task -> {
+      Thread thread = new Thread(task, "StripedStore");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Reads the given page from its store.
+   */
+  public void read(int pageno, ByteBuffer data) throws IOException {
+    stores[store(pageno)].read(local(pageno), data);
+  }
+
+  /**
+   * Writes the given page to its store.
+   */
+  public void write(int pageno, ByteBuffer data) throws IOException {
+    stores[store(pageno)].write(local(pageno), data);
+  }
+
+  /**
+   * Reads a run of pages, with the part on each store read in parallel.
+   */
+  public void read(int first, ByteBuffer[] data) throws IOException {
+    transfer(first, data, false);
+  }
+
+  /**
+   * Writes a run of pages, with the part on each store written in parallel.
+   */
+  public void write(int first, ByteBuffer[] data) throws IOException {
+    transfer(first, data, true);
+  }
+
+  /**
+   * Extends each store to hold its share of the given number of pages.
+   */
+  public void extend(int num_pages) throws IOException {
+    int num_units = num_pages / stripe_pages;
+    int last_unit = num_units % stores.length;
+    for (int i = 0; i < stores.length; i++) {
+      int units = num_units / stores.length + ((i < last_unit) ? 1 : 0);
+      int pages = units * stripe_pages;
+      if (i == last_unit) {
+        pages += num_pages % stripe_pages;
+      }
+      stores[i].extend(pages);
+    }
+  } // public void extend(int num_pages)
+
+  /**
+   * Forces all of the stores to disk, in parallel.
+   */
+  public void force() throws IOException {
+    ArrayList<Future<Void>> tasks = new ArrayList<Future<Void>>();
+    for (DiskStore store : stores) {
+      tasks.add(pool.submit(() -> {
+        store.force();
+        return null;
+      }));
+    }
+    await(tasks);
+  }
+
+  /**
+   * Closes all of the stores and stops the I/O threads.
+   */
+  public void close() throws IOException {
+    pool.shutdown();
+    for (DiskStore store : stores) {
+      store.close();
+    }
+  }
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Reads or writes a run of pages as one vectored I/O per store.
+   */
+  protected void transfer(int first, ByteBuffer[] data, boolean write)
+      throws IOException {
+
+    // small runs that stay within one unit need no threads
+    int count = data.length;
+    int first_unit = first / stripe_pages;
+    int last_unit = (first + count - 1) / stripe_pages;
+    if (first_unit == last_unit) {
+      if (write) {
+        stores[store(first)].write(local(first), data);
+      } else {
+        stores[store(first)].read(local(first), data);
+      }
+      return;
+    }
+
+    // gather the pages for each store, which are contiguous there
+    ArrayList<Future<Void>> tasks = new ArrayList<Future<Void>>();
+    int end_unit = Math.min(last_unit, first_unit + stores.length - 1);
+    for (int start_unit = first_unit; start_unit <= end_unit; start_unit++) {
+      ArrayList<ByteBuffer> pages = new ArrayList<ByteBuffer>();
+      for (int unit = start_unit; unit <= last_unit; unit += stores.length) {
+        long lo = Math.max((long) unit * stripe_pages, first);
+        long hi = Math.min((long) (unit + 1) * stripe_pages, first + count);
+        for (long pageno = lo; pageno < hi; pageno++) {
+          pages.add(data[(int) (pageno - first)]);
+        }
+      }
+      int start = (int) Math.max((long) start_unit * stripe_pages, first);
+      DiskStore store = stores[store(start)];
+      int local_first = local(start);
+      ByteBuffer[] local_data = pages.toArray(new ByteBuffer[pages.size()]);
+      tasks.add(pool.submit(() -> {
+        if (write) {
+          store.write(local_first, local_data);
+        } else {
+          store.read(local_first, local_data);
+        }
+        return null;
+      }));
+    } // for
+    await(tasks);
+
+  } // protected void transfer(int first, ByteBuffer[] data, boolean write)
+
+  /**
+   * Waits for all of the given tasks, and rethrows the first I/O error.
+   */
+  protected static void await(ArrayList<Future<Void>> tasks)
+      throws IOException {
+    IOException error = null;
+    for (Future<Void> task : tasks) {
+      try {
+        task.get();
+      } catch (ExecutionException exc) {
+        if (error == null) {
+          error = (exc.getCause() instanceof IOException)
+              ? (IOException) exc.getCause() : new IOException(exc.getCause());
+        }
+      } catch (InterruptedException exc) {
+        Thread.currentThread().interrupt();
+        error = new IOException(exc);
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+  } // protected static void await(ArrayList<Future<Void>> tasks)
+
+  /**
+   * Gets the index of the store that holds the given page.
+   */
+  protected int store(int pageno) {
+    return (pageno / stripe_pages) % stores.length;
+  }
+
+  /**
+   * Gets the page number of the given page within its store.
+   */
+  protected int local(int pageno) {
+    int unit = pageno / stripe_pages;
+    return (unit / stores.length) * stripe_pages + pageno % stripe_pages;
+  }
+
+} // class StripedStore implements DiskStore
@@ -1,7 +1,12 @@
 package global;
 
+import java.nio.ByteBuffer;
+
 /**
- * Provides conversion routines for getting and setting data in byte arrays.
+ * Provides conversion routines for getting and setting data in byte arrays,
+ * and in byte buffers (i.e. off-heap pages).  Buffers are accessed by absolute
+ * position in big-endian order, the same layout as the arrays, and their own
+ * position and limit are ignored.
  */
 public class Convert {
 
@@ -119,4 +124,93 @@ public class Convert {
 
   } // public static void setStringValue(String value, int pos, byte[] data)
 
+  // --------------------------------------------------------------------------
+
+  /**
+   * Reads from the given byte buffer at the specified position, and converts
+   * it into a unicode character.
+   */
+  public static char getCharValue(int pos, ByteBuffer data) {
+    return (char) data.get(pos);
+  }
+
+  /**
+   * Writes a unicode character into the given byte buffer at the specified
+   * position.
+   */
+  public static void setCharValue(char value, int pos, ByteBuffer data) {
+    data.put(pos, (byte) value);
+  }
+
+  /**
+   * Reads from the given byte buffer at the specified position, and converts
+   * it into a short.
+   */
+  public static short getShortValue(int pos, ByteBuffer data) {
+    return data.getShort(pos);
+  }
+
+  /**
+   * Writes a short into the given byte buffer at the specified position.
+   */
+  public static void setShortValue(short value, int pos, ByteBuffer data) {
+    data.putShort(pos, value);
+  }
+
+  /**
+   * Reads from the given byte buffer at the specified position, and converts
+   * it into an integer.
+   */
+  public static int getIntValue(int pos, ByteBuffer data) {
+    return data.getInt(pos);
+  }
+
+  /**
+   * Writes an integer into the given byte buffer at the specified position.
+   */
+  public static void setIntValue(int value, int pos, ByteBuffer data) {
+    data.putInt(pos, value);
+  }
+
+  /**
+   * Reads from the given byte buffer at the specified position, and converts
+   * it to a float.
+   */
+  public static float getFloatValue(int pos, ByteBuffer data) {
+    return data.getFloat(pos);
+  }
+
+  /**
+   * Writes a float into the given byte buffer at the specified position.
+   */
+  public static void setFloatValue(float value, int pos, ByteBuffer data) {
+    data.putFloat(pos, value);
+  }
+
+  /**
+   * Reads from the given byte buffer at the specified position, and converts
+   * it to a string of given length.
+   */
+  public static String getStringValue(int pos, ByteBuffer data, int length) {
+
+    // validate the maximum length
+    int buflen = data.capacity() - pos;
+    if (buflen < length) {
+      length = buflen;
+    }
+
+    // copy the bytes out, as for arrays
+    byte[] ba = new byte[length];
+    data.get(pos, ba);
+    return new String(ba).trim();
+
+  } // public static String getStringValue(int pos, ByteBuffer data, ...)
+
+  /**
+   * Writes a string into the given byte buffer at the specified position.
+   */
+  public static void setStringValue(String value, int pos, ByteBuffer data) {
+    data.put(pos, value.getBytes());
+  }
+
 } // public class Convert
@@ -9,8 +9,9 @@ public interface GlobalConst {
   // Disk Manager Constants
   //
 
-  /** Size of a page, in bytes. 1024 is artificially small 
-   * so we can get lots of I/Os with small data files */
+  /** Default size of a page, in bytes. 1024 is artificially small 
+   * so we can get lots of I/Os with small data files; each database may
+   * choose its own size (see Minibase.PageSize) */
   public static final int PAGE_SIZE = 1024;
 
   /** Page number of an invalid page (i.e. null pointer). */
@@ -22,6 +23,21 @@ public interface GlobalConst {
   /** Maximum size of a name (i.e. of files or attributes). */
   public static final int NAME_MAXLEN = 50;
 
+  /** Store pages with positional I/O on a FileChannel. */
+  public static final int STORAGE_CHANNEL = 20;
+
+  /** Store pages with seek and read/write on a RandomAccessFile. */
+  public static final int STORAGE_FILE = 21;
+
+  /** Store pages by copying them in and out of a memory-mapped file. */
+  public static final int STORAGE_MAPPED = 22;
+
+  /** Store pages with direct I/O that bypasses the OS page cache. */
+  public static final int STORAGE_DIRECT = 23;
+
+  /** Store pages compressed, in variable-size slots. */
+  public static final int STORAGE_COMPRESSED = 24;
+
   //
   // Buffer Manager Constants
   //
@@ -35,12 +51,64 @@ public interface GlobalConst {
   /** Don't copy anything into the frame. */
   public static final int PIN_NOOP = 12;
   
-  /** Forces the page to be written to disk when unpinned. */
+  /** Marks the page as modified; it's written to disk in the background
+   * (see PageCleaner), or at the latest when its frame is reused. */
   public static final boolean UNPIN_DIRTY = true;
 
   /** Optimization to avoid writing to disk when unpinned. */
   public static final boolean UNPIN_CLEAN = false;
 
+  /** Replace pages with the clock algorithm (i.e. second chance). */
+  public static final int REPLACE_CLOCK = 30;
+
+  /** Replace the least recently used page. */
+  public static final int REPLACE_LRU = 31;
+
+  /** Replace the page whose second-to-last reference is the oldest. */
+  public static final int REPLACE_LRUK = 32;
+
+  /** Replace pages with the 2Q algorithm (i.e. scan resistant). */
+  public static final int REPLACE_2Q = 33;
+
+  /** Replace pages with the adaptive replacement cache algorithm. */
+  public static final int REPLACE_ARC = 34;
+
+  /** Most memory a scan's ring of frames may use (in bytes). */
+  public static final int SCAN_RING_BYTES = 256 * 1024;
+
+  /** Percentage of the frames the page cleaner lets stay dirty. */
+  public static final int CLEAN_DIRTY_PERCENT = 10;
+
+  /** Longest time a page stays dirty before the page cleaner writes it
+   * (in milliseconds). */
+  public static final int CLEAN_MAX_AGE = 1000;
+
+  /** Time between the page cleaner's rounds (in milliseconds). */
+  public static final int CLEAN_INTERVAL = 100;
+
+  /** Longest time that shrinking the buffer pool waits for pages in the
+   * frames being removed to be unpinned (in milliseconds). */
+  public static final int RESIZE_TIMEOUT = 5000;
+
+  /** Time between saves of the list of hot pages, for a warm restart (in
+   * milliseconds). */
+  public static final int WARM_SAVE_INTERVAL = 60000;
+
+  /** Page type for the buffer pool's metrics: anything not listed below. */
+  public static final int PAGE_OTHER = 40;
+
+  /** Page type for the buffer pool's metrics: file library header pages. */
+  public static final int PAGE_HEADER = 41;
+
+  /** Page type for the buffer pool's metrics: space map pages. */
+  public static final int PAGE_SPACE_MAP = 42;
+
+  /** Page type for the buffer pool's metrics: heap file directory pages. */
+  public static final int PAGE_DIRECTORY = 43;
+
+  /** Page type for the buffer pool's metrics: heap file data pages. */
+  public static final int PAGE_DATA = 44;
+
   //
   // Heap File Constants
   //
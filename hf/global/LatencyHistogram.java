@@ -0,0 +1,122 @@
+package global;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies, with a bucket for each power of two nanoseconds
+ * (bucket i counts latencies under 2^i ns, but not under 2^(i-1) ns).  It
+ * takes no locks, so any number of threads may record at once; percentiles
+ * are the upper bound of the bucket they fall in.
+ */
+public class LatencyHistogram {
+
+  /** Number of buckets; the last one also counts anything longer. */
+  protected static final int NUM_BUCKETS = 40;
+
+  // --------------------------------------------------------------------------
+
+  /** Number of latencies in each bucket. */
+  protected AtomicLongArray buckets;
+
+  /** Total of all latencies (at index 0) and the longest one (at 1). */
+  protected AtomicLongArray totals;
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Constructs an empty histogram.
+   */
+  public LatencyHistogram() {
+    buckets = new AtomicLongArray(NUM_BUCKETS);
+    totals = new AtomicLongArray(2);
+  }
+
+  /**
+   * Records a latency, in nanoseconds.
+   */
+  public void record(long nanos) {
+    int bucket = 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0));
+    buckets.incrementAndGet(Math.min(bucket, NUM_BUCKETS - 1));
+    totals.addAndGet(0, nanos);
+    totals.accumulateAndGet(1, nanos, Math::max);
+  }
+
+  /**
+   * Records the time since the given System.nanoTime.
+   */
+  public void recordSince(long start) {
+    record(System.nanoTime() - start);
+  }
+
+  /**
+   * Gets the number of latencies recorded.
+   */
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      count += buckets.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * Gets the mean latency, in nanoseconds.
+   */
+  public long getMeanNanos() {
+    long count = getCount();
+    return (count == 0) ? 0 : totals.get(0) / count;
+  }
+
+  /**
+   * Gets the longest latency, in nanoseconds.
+   */
+  public long getMaxNanos() {
+    return totals.get(1);
+  }
+
+  /**
+   * Gets the median latency, in nanoseconds.
+   */
+  public long getMedianNanos() {
+    return getPercentile(50);
+  }
+
+  /**
+   * Gets the 99th percentile latency, in nanoseconds.
+   */
+  public long getP99Nanos() {
+    return getPercentile(99);
+  }
+
+  /**
+   * Gets the number of latencies in each bucket.
+   */
+  public long[] getBuckets() {
+    long[] counts = new long[NUM_BUCKETS];
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+    }
+    return counts;
+  }
+
+  /**
+   * Gets the given percentile of the latencies, in nanoseconds.
+   */
+  public long getPercentile(double percent) {
+    long[] counts = getBuckets();
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    long rank = (long) Math.ceil(total * percent / 100);
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += counts[i];
+      if ((seen > 0) && (seen >= rank)) {
+        return Math.min(1L << i, getMaxNanos());
+      }
+    }
+    return 0;
+  } // public long getPercentile(double percent)
+
+} // public class LatencyHistogram
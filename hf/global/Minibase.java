@@ -3,6 +3,11 @@ package global;
 import bufmgr.BufMgr;
 import diskmgr.DiskMgr;
 
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 /**
  * Definitions for the running Minibase system, including references to static
  * layers and database-level attributes.
@@ -12,6 +17,9 @@ public class Minibase {
   /** Name of the OS file. */
   public static String DatabaseName;
 
+  /** Size of each page in the database, in bytes. */
+  public static int PageSize = GlobalConst.PAGE_SIZE;
+
   /** The Minibase Disk Space Manager. */
   public static DiskMgr DiskManager;
   
@@ -32,7 +40,94 @@ public class Minibase {
       boolean exists) {
 
     // simply initialize the database
-    init(dbname, num_pgs, bufpoolsize, exists);
+    init(dbname, num_pgs, bufpoolsize, exists, GlobalConst.STORAGE_CHANNEL,
+        GlobalConst.PAGE_SIZE, new String[0], GlobalConst.REPLACE_CLOCK);
+
+  } // constructor
+
+  /**
+   * Constructs and starts an instance of Minibase, given the configuration
+   * and the disk manager's storage mode.
+   * 
+   * @param dbname Name of the data file
+   * @param num_pgs Number of pages to allocate
+   * @param bufpoolsize Buffer pool size (in pages)
+   * @param exists If the database already exists on disk
+   * @param storage_mode How pages are stored (i.e. STORAGE_CHANNEL)
+   */
+  public Minibase(String dbname, int num_pgs, int bufpoolsize,
+      boolean exists, int storage_mode) {
+
+    // simply initialize the database
+    init(dbname, num_pgs, bufpoolsize, exists, storage_mode,
+        GlobalConst.PAGE_SIZE, new String[0], GlobalConst.REPLACE_CLOCK);
+
+  } // constructor
+
+  /**
+   * Constructs and starts an instance of Minibase, given the configuration,
+   * the disk manager's storage mode, and the page size of a new database.
+   * 
+   * @param dbname Name of the data file
+   * @param num_pgs Number of pages to allocate
+   * @param bufpoolsize Buffer pool size (in pages)
+   * @param exists If the database already exists on disk
+   * @param storage_mode How pages are stored (i.e. STORAGE_CHANNEL)
+   * @param page_size Page size (in bytes); ignored if the database exists
+   */
+  public Minibase(String dbname, int num_pgs, int bufpoolsize,
+      boolean exists, int storage_mode, int page_size) {
+
+    // simply initialize the database
+    init(dbname, num_pgs, bufpoolsize, exists, storage_mode, page_size,
+        new String[0], GlobalConst.REPLACE_CLOCK);
+
+  } // constructor
+
+  /**
+   * Constructs and starts an instance of Minibase, given the configuration,
+   * the disk manager's storage mode, the page size of a new database, and
+   * the additional files (i.e. on other devices) to stripe its pages across.
+   * 
+   * @param dbname Name of the data file
+   * @param num_pgs Number of pages to allocate
+   * @param bufpoolsize Buffer pool size (in pages)
+   * @param exists If the database already exists on disk
+   * @param storage_mode How pages are stored (i.e. STORAGE_CHANNEL)
+   * @param page_size Page size (in bytes); ignored if the database exists
+   * @param stripe_files Names of the other data files; may be empty
+   */
+  public Minibase(String dbname, int num_pgs, int bufpoolsize,
+      boolean exists, int storage_mode, int page_size, String[] stripe_files) {
+
+    // simply initialize the database
+    init(dbname, num_pgs, bufpoolsize, exists, storage_mode, page_size,
+        stripe_files, GlobalConst.REPLACE_CLOCK);
+
+  } // constructor
+
+  /**
+   * Constructs and starts an instance of Minibase, given the configuration,
+   * the disk manager's storage mode, the page size of a new database, the
+   * additional files to stripe its pages across, and the buffer manager's
+   * replacement policy.
+   * 
+   * @param dbname Name of the data file
+   * @param num_pgs Number of pages to allocate
+   * @param bufpoolsize Buffer pool size (in pages)
+   * @param exists If the database already exists on disk
+   * @param storage_mode How pages are stored (i.e. STORAGE_CHANNEL)
+   * @param page_size Page size (in bytes); ignored if the database exists
+   * @param stripe_files Names of the other data files; may be empty
+   * @param replacement_policy Which frames to reuse (i.e. REPLACE_CLOCK)
+   */
+  public Minibase(String dbname, int num_pgs, int bufpoolsize,
+      boolean exists, int storage_mode, int page_size, String[] stripe_files,
+      int replacement_policy) {
+
+    // simply initialize the database
+    init(dbname, num_pgs, bufpoolsize, exists, storage_mode, page_size,
+        stripe_files, replacement_policy);
 
   } // constructor
 
@@ -43,17 +138,26 @@ public class Minibase {
  * @param num_pgs Number of pages to allocate
  * @param bufpoolsize Buffer pool size (in pages)
  * @param exists If the database already exists on disk
+   * @param storage_mode How pages are stored (i.e. STORAGE_CHANNEL)
+   * @param page_size Page size (in bytes); ignored if the database exists
+   * @param stripe_files Names of the other data files; may be empty
+   * @param replacement_policy Which frames to reuse (i.e. REPLACE_CLOCK)
    */
   public void init(String dbname, int num_pgs, int bufpoolsize,
-      boolean exists) {
+      boolean exists, int storage_mode, int page_size, String[] stripe_files,
+      int replacement_policy) {
 
     // save the file name
     DatabaseName = dbname;
 
-    // load the static layers
+    // load the static layers; frames are sized to the database's pages
     try {
-      DiskManager = new DiskMgr();
-      BufferManager = new BufMgr(bufpoolsize);
+      PageSize = exists ? DiskMgr.read_page_size(dbname) : page_size;
+      DiskManager = new DiskMgr(storage_mode);
+      DiskManager.setStripeFiles(stripe_files);
+      BufferManager = new BufMgr(bufpoolsize, replacement_policy);
+      registerMBean(DiskManager, "DiskMgr");
+      registerMBean(BufferManager, "BufMgr");
     } catch (Exception exc) {
       haltSystem(exc);
     }
@@ -72,6 +176,20 @@ public class Minibase {
 
   } // init
 
+  /**
+   * Exports a layer's metrics over JMX, as "minibase:type=" the given type;
+   * this replaces the layer of any previous database.
+   */
+  protected static void registerMBean(Object layer, String type)
+      throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("minibase:type=" + type);
+    if (server.isRegistered(name)) {
+      server.unregisterMBean(name);
+    }
+    server.registerMBean(layer, name);
+  }
+
   /**
    * Displays an unrecoverable error and halts the system.
    */
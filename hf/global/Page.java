@@ -1,20 +1,27 @@
 package global;
 
+import java.nio.ByteBuffer;
+
 /**
- * Image of a disk page in memory.
+ * Image of a disk page in memory.  The bytes are held in a byte buffer: pages
+ * created on their own wrap an array on the heap, while buffer pool frames
+ * are slices of one large off-heap region (see BufMgr).  A page pinned in the
+ * pool shares its frame's buffer.  A view has no bytes of its own until it's
+ * pinned, so one view can be reused for any number of pins (see
+ * BufMgr.pinView) without allocating a page each time.
  */
 public class Page implements GlobalConst {
 
-  /** The actual byte array for the page. */
-  protected byte[] data;
+  /** The actual bytes of the page; only accessed by absolute position. */
+  protected ByteBuffer buffer;
 
   // --------------------------------------------------------------------------
 
   /**
-   * Default constructor; creates a blank page.
+   * Default constructor; creates a blank page of the database's page size.
    */
   public Page() {
-    data = new byte[PAGE_SIZE];
+    buffer = ByteBuffer.wrap(new byte[Minibase.PageSize]);
   }
 
   /**
@@ -24,10 +31,56 @@ public class Page implements GlobalConst {
     setData(data);
   }
 
+  /**
+   * Constructor that shares the given byte buffer (i.e. a frame of the
+   * buffer pool), which must be exactly one page long.
+   */
+  public Page(ByteBuffer buffer) {
+    if (buffer.capacity() != Minibase.PageSize) {
+      Minibase.haltSystem(new IllegalArgumentException(
+          "Invalid page buffer size"));
+    }
+    this.buffer = buffer;
+  }
+
+  /**
+   * Constructor that shares the given page's buffer, or makes a view (with
+   * no bytes until it's pinned) if the page is null.
+   */
+  protected Page(Page page) {
+    buffer = (page == null) ? null : page.buffer;
+  }
+
+  /**
+   * Makes a view with no bytes until it's pinned; see BufMgr.pinView.
+   */
+  public static Page newView() {
+    return new Page((Page) null);
+  }
+
   /**
    * Get accessor for the data byte array.
+   * 
+   * @throws IllegalStateException if the page is off the heap (i.e. pinned
+   * in the buffer pool)
+   * @deprecated pages in the buffer pool have no byte array; use getBuffer,
+   * or getBytes for a copy
    */
+  @Deprecated
   public byte[] getData() {
+    if (!buffer.hasArray()) {
+      throw new IllegalStateException("Page is not on the heap");
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Copies the page's bytes into a new array, whether it's on or off the
+   * heap.
+   */
+  public byte[] getBytes() {
+    byte[] data = new byte[buffer.capacity()];
+    buffer.get(0, data);
     return data;
   }
 
@@ -37,25 +90,34 @@ public class Page implements GlobalConst {
    * @throws IllegalArgumentException if the data array size is invalid
    */
   public void setData(byte[] data) {
-    if (data.length != PAGE_SIZE) {
+    if (data.length != Minibase.PageSize) {
       Minibase.haltSystem(new IllegalArgumentException(
           "Invalid page buffer size"));
     }
-    this.data = data;
+    this.buffer = ByteBuffer.wrap(data);
+  }
+
+  /**
+   * Get accessor for the byte buffer, which may be on or off the heap.  The
+   * page's bytes run from 0 to its capacity; callers that use its position
+   * (i.e. for channel I/O) should do so on a duplicate.
+   */
+  public ByteBuffer getBuffer() {
+    return buffer;
   }
 
   /**
-   * Sets this page's data array to share the given page's data array.
+   * Sets this page's buffer to share the given page's buffer.
    */
   public void setPage(Page page) {
-    this.data = page.data;
+    this.buffer = page.buffer;
   }
 
   /**
    * Copies the contents of the given page's buffer into this page's buffer.
    */
   public void copyPage(Page page) {
-    System.arraycopy(page.data, 0, this.data, 0, PAGE_SIZE);
+    buffer.put(0, page.buffer, 0, buffer.capacity());
   }
 
   // --------------------------------------------------------------------------
@@ -64,70 +126,70 @@ public class Page implements GlobalConst {
    * Gets a char at the given page offset.
    */
   public char getCharValue(int offset) {
-    return Convert.getCharValue(offset, data);
+    return Convert.getCharValue(offset, buffer);
   }
 
   /**
    * Sets a char at the given page offset.
    */
   public void setCharValue(char value, int offset) {
-    Convert.setCharValue(value, offset, data);
+    Convert.setCharValue(value, offset, buffer);
   }
 
   /**
    * Gets a short at the given page offset.
    */
   public short getShortValue(int offset) {
-    return Convert.getShortValue(offset, data);
+    return Convert.getShortValue(offset, buffer);
   }
 
   /**
    * Sets a short at the given page offset.
    */
   public void setShortValue(short value, int offset) {
-    Convert.setShortValue(value, offset, data);
+    Convert.setShortValue(value, offset, buffer);
   }
 
   /**
    * Gets an int at the given page offset.
    */
   public int getIntValue(int offset) {
-    return Convert.getIntValue(offset, data);
+    return Convert.getIntValue(offset, buffer);
   }
 
   /**
    * Sets an int at the given page offset.
    */
   public void setIntValue(int value, int offset) {
-    Convert.setIntValue(value, offset, data);
+    Convert.setIntValue(value, offset, buffer);
   }
 
   /**
    * Gets a float at the given page offset.
    */
   public float getFloatValue(int offset) {
-    return Convert.getFloatValue(offset, data);
+    return Convert.getFloatValue(offset, buffer);
   }
 
   /**
    * Sets a float at the given page offset.
    */
   public void setFloatValue(float value, int offset) {
-    Convert.setFloatValue(value, offset, data);
+    Convert.setFloatValue(value, offset, buffer);
   }
 
   /**
    * Gets a string at the given page offset, given the maximum length.
    */
   public String getStringValue(int offset, int length) {
-    return Convert.getStringValue(offset, data, length);
+    return Convert.getStringValue(offset, buffer, length);
   }
 
   /**
    * Sets a string at the given page offset.
    */
   public void setStringValue(String value, int offset) {
-    Convert.setStringValue(value, offset, data);
+    Convert.setStringValue(value, offset, buffer);
   }
 
 } // public class Page implements GlobalConst
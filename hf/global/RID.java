@@ -73,8 +73,10 @@ public class RID {
    * Returns a hash code value for the RID.
    */
   public int hashCode() {
-    // won't work if DB supports more than 65535 pages
-    return ((pageno.pid & 0xFFFF) << 16) | (slotno & 0xFFFF);
+    // mix all 64 bits so RIDs far apart in large DBs don't collide
+    long key = ((long) pageno.pid << 32) | (slotno & 0xFFFFFFFFL);
+    key *= 0x9E3779B97F4A7C15L;
+    return (int) (key ^ (key >>> 32));
   }
 
   /**
@@ -1,5 +1,7 @@
 package heap;
 
+import global.Page;
+
 /**
  * A heap file page containing actual data records.
  */
@@ -12,5 +14,13 @@ class DataPage extends HFPage {
     super();
     setType(HeapFile.DATA_PAGE);
   }
+
+  /**
+   * Constructor that wraps an existing data page, or makes a view if the
+   * page is null.
+   */
+  public DataPage(Page page) {
+    super(page);
+  }
   
 } // class DataPage extends HFPage
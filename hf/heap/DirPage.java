@@ -1,5 +1,6 @@
 package heap;
 
+import global.Page;
 import global.PageId;
 
 /**
@@ -24,12 +25,8 @@ class DirPage extends HFPage {
   /** The size of the footer data (in bytes). */
   protected static final int FOOTER_SIZE = 2;
 
-  /** Page offset for the total number of entries. */
-  protected static final int ENTRY_COUNT = PAGE_SIZE - 2;
-
-  /** Maximum number of entries in a directory page. */
-  protected static final int MAX_ENTRIES = (PAGE_SIZE - HEADER_SIZE - FOOTER_SIZE)
-      / ENTRY_SIZE;
+  /** Offset for the total number of entries, from the end of the page. */
+  protected static final int ENTRY_COUNT = 2;
 
   // --------------------------------------------------------------------------
 
@@ -42,18 +39,33 @@ class DirPage extends HFPage {
     setEntryCnt((short) 0);
   }
 
+  /**
+   * Constructor that wraps an existing directory page, or makes a view if
+   * the page is null.
+   */
+  public DirPage(Page page) {
+    super(page);
+  }
+
   /**
    * Gets the number of directory entries on the page.
    */
   public short getEntryCnt() {
-    return getShortValue(ENTRY_COUNT);
+    return getShortValue(buffer.capacity() - ENTRY_COUNT);
   }
 
   /**
    * Sets the number of directory entries on the page.
    */
   public void setEntryCnt(short entryCnt) {
-    setShortValue(entryCnt, ENTRY_COUNT);
+    setShortValue(entryCnt, buffer.capacity() - ENTRY_COUNT);
+  }
+
+  /**
+   * Gets the maximum number of entries in a directory page.
+   */
+  public int getMaxEntries() {
+    return (buffer.capacity() - HEADER_SIZE - FOOTER_SIZE) / ENTRY_SIZE;
   }
 
   /**
@@ -107,8 +119,8 @@ class DirPage extends HFPage {
 
     // shift all bytes to the left
     int entryPos = HEADER_SIZE + slotno * ENTRY_SIZE;
-    int succLen = PAGE_SIZE - FOOTER_SIZE - entryPos - ENTRY_SIZE;
-    System.arraycopy(data, entryPos + ENTRY_SIZE, data, entryPos, succLen);
+    int succLen = buffer.capacity() - FOOTER_SIZE - entryPos - ENTRY_SIZE;
+    buffer.put(entryPos, buffer, entryPos + ENTRY_SIZE, succLen);
 
   } // public void compact(int slotno)
 
@@ -53,10 +53,11 @@ class HFPage extends Page {
   }
 
   /**
-   * Constructor that wraps an existing heap file page.
+   * Constructor that wraps an existing heap file page, or makes a view if
+   * the page is null.
    */
   public HFPage(Page page) {
-    super(page.getData());
+    super(page);
   }
 
   /**
@@ -68,10 +69,10 @@ class HFPage extends Page {
     setShortValue((short) 0, SLOT_CNT);
 
     // used offset grows backwards
-    setShortValue((short) PAGE_SIZE, USED_PTR);
+    setShortValue((short) buffer.capacity(), USED_PTR);
 
     // free space doesn't count headers
-    setShortValue((short) (PAGE_SIZE - HEADER_SIZE), FREE_SPACE);
+    setShortValue((short) (buffer.capacity() - HEADER_SIZE), FREE_SPACE);
 
     // optional type field may be used by sub classes
     setShortValue((short) 0, PAGE_TYPE);
@@ -218,7 +219,7 @@ class HFPage extends Page {
     int slotpos = HEADER_SIZE + i * SLOT_SIZE;
     setShortValue(recLength, slotpos);
     setShortValue(usedPtr, slotpos + 2);
-    System.arraycopy(record, 0, data, usedPtr, recLength);
+    buffer.put(usedPtr, record, 0, recLength);
     return new RID(new PageId(getIntValue(CUR_PAGE)), i);
 
   } // public RID insertRecord(byte[] record)
@@ -236,7 +237,7 @@ class HFPage extends Page {
 
     // finally, get and return the record
     byte[] record = new byte[length];
-    System.arraycopy(data, offset, record, 0, length);
+    buffer.get(offset, record, 0, length);
     return record;
 
   } // public byte[] selectRecord(RID rid)
@@ -256,7 +257,7 @@ class HFPage extends Page {
 
     // finally, update the record in place
     short offset = getSlotOffset(rid.slotno);
-    System.arraycopy(record, 0, data, offset, length);
+    buffer.put(offset, record, 0, length);
 
   } // public void updateRecord(RID rid, byte[] record)
 
@@ -278,7 +279,7 @@ class HFPage extends Page {
     short size = (short) (offset - usedPtr);
 
     // shift all bytes to the right
-    System.arraycopy(data, usedPtr, data, newSpot, size);
+    buffer.put(newSpot, buffer, usedPtr, size);
 
     // adjust offsets of all valid slots that refer
     // to the left of the record being removed
@@ -2,6 +2,7 @@ package heap;
 
 import java.util.LinkedList;
 
+import bufmgr.BufStats;
 import global.GlobalConst;
 import global.Minibase;
 import global.PageId;
@@ -43,6 +44,12 @@ public class HeapFile implements GlobalConst {
   
   /** Linked list to maintain the list of directory pages*/
   LinkedList<DirPage> dirPages;
+
+  /** Buffer pool counters for this file's directory pages. */
+  protected BufStats dirStats;
+
+  /** Buffer pool counters for this file's data pages. */
+  protected BufStats dataStats;
   
   // --------------------------------------------------------------------------
 
@@ -55,6 +62,8 @@ public class HeapFile implements GlobalConst {
   public HeapFile(String name) {
 	  dirPages = new LinkedList<>();
 	  this.fileName = name;
+	  dirStats = Minibase.BufferManager.getStats(PAGE_DIRECTORY, name);
+	  dataStats = Minibase.BufferManager.getStats(PAGE_DATA, name);
 	  
 	  if(name == null)
 		  this.isTemp = true;
@@ -1,5 +1,7 @@
 package heap;
 
+import bufmgr.AccessStrategy;
+import bufmgr.BufStats;
 import global.GlobalConst;
 import global.Minibase;
 import global.PageId;
@@ -8,7 +10,10 @@ import global.RID;
 /**
  * A HeapScan object is created only through the function openScan() in the
  * HeapFile class. It supports the getNext interface which will simply retrieve
- * the next record in the file.
+ * the next record in the file.  Data pages are pinned through a scan strategy,
+ * so a large scan only cycles through a small ring of buffer frames instead of
+ * evicting the rest of the pool.  The next few data pages are prefetched
+ * into the ring, so their I/O overlaps with reading the records before them.
  */
 public class HeapScan implements GlobalConst {
 
@@ -27,6 +32,21 @@ public class HeapScan implements GlobalConst {
   /** RID of the current record on the data page. */
   protected RID curRid;
 
+  /** Ring of buffer frames that the data pages are loaded into. */
+  protected AccessStrategy strategy;
+
+  /** Number of data pages to prefetch ahead of the current one. */
+  protected int window;
+
+  /** Slot number of the last entry prefetched on the directory page. */
+  protected int prefetched;
+
+  /** Buffer pool counters for the file's directory pages. */
+  protected BufStats dirStats;
+
+  /** Buffer pool counters for the file's data pages. */
+  protected BufStats dataStats;
+
   // --------------------------------------------------------------------------
 
   /**
@@ -36,12 +56,18 @@ public class HeapScan implements GlobalConst {
   protected HeapScan(HeapFile hf) {
 
     // pin the head page and get the count
-    dirPage = new DirPage();
-    Minibase.BufferManager.pinPage(hf.headId, dirPage, PIN_DISKIO);
+    dirStats = hf.dirStats;
+    dataStats = hf.dataStats;
+    dirPage = Minibase.BufferManager.pinView(hf.headId, new DirPage(null),
+        dirStats);
     count = dirPage.getEntryCnt();
 
     // initialize other data fields
+    strategy = Minibase.BufferManager.newScanStrategy();
+    int ring_size = strategy.getRingSize();
+    window = Math.min(ring_size / 2, ring_size - 2);
     index = -1;
+    prefetched = -1;
     dataPage = null;
     curRid = null;
 
@@ -116,15 +142,16 @@ public class HeapScan implements GlobalConst {
 
       // minor optimization
       if (dataPage == null) {//we just started the scan
-        dataPage = new DataPage();
+        dataPage = new DataPage(null);
       } else {//we are moving on to a new data page, so unpin the old one
         Minibase.BufferManager.unpinPage(dataPage.getCurPage(), UNPIN_CLEAN);
       }
       
-      // pin the next data page
+      // pin the next data page, after starting to load the ones after it
       index++;
-      Minibase.BufferManager.pinPage(dirPage.getPageId(index), dataPage,
-          PIN_DISKIO);
+      prefetchAhead();
+      Minibase.BufferManager.pinView(dirPage.getPageId(index), dataPage,
+          strategy, dataStats);
 
       // reset the current record rid, get the first record and return it.
       //The scan is iterating within a data page.
@@ -151,11 +178,12 @@ public class HeapScan implements GlobalConst {
 
       // unpin the current dir page, pin the next dir page
       Minibase.BufferManager.unpinPage(dirPage.getCurPage(), UNPIN_CLEAN);
-      Minibase.BufferManager.pinPage(nextId, dirPage, PIN_DISKIO);
+      Minibase.BufferManager.pinView(nextId, dirPage, dirStats);
 
       // reset the counters and try again
       count = dirPage.getEntryCnt();
       index = -1;
+      prefetched = -1;
       curRid = null;
       return getNext(rid);
 
@@ -166,4 +194,22 @@ public class HeapScan implements GlobalConst {
 
   } // public byte[] getNext(RID rid)
 
+  /**
+   * Prefetches the data pages up to the window after the current entry on
+   * the directory page.  The window is less than the ring size, so pages
+   * prefetched into the ring aren't evicted before the scan reaches them.
+   */
+  protected void prefetchAhead() {
+    int first = Math.max(prefetched, index) + 1;
+    int last = Math.min(index + window, count - 1);
+    if (first <= last) {
+      PageId[] ids = new PageId[last - first + 1];
+      for (int i = first; i <= last; i++) {
+        ids[i - first] = dirPage.getPageId(i);
+      }
+      Minibase.BufferManager.prefetch(ids, strategy, dataStats);
+      prefetched = last;
+    }
+  } // protected void prefetchAhead()
+
 } // public class HeapScan implements GlobalConst
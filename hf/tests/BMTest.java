@@ -0,0 +1,1005 @@
+package tests;
+
+import bufmgr.AccessStrategy;
+import bufmgr.BufStats;
+import diskmgr.DiskMgr;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Test suite for the buffer manager layer.
+ */
+class BMTest extends TestDriver {
+
+  /** The display name of the test suite. */
+  private static final String TEST_NAME = "buffer manager tests";
+
+  /** Replacement policies to test. */
+  private static final int[] POLICIES = { REPLACE_CLOCK, REPLACE_LRU,
+      REPLACE_LRUK, REPLACE_2Q, REPLACE_ARC };
+
+  /** Display names of the replacement policies. */
+  private static final String[] POLICY_NAMES = { "Clock", "LRU", "LRU-K",
+      "2Q", "ARC" };
+
+  /**
+   * Test application entry point; runs all tests.
+   */
+  public static void main(String argv[]) {
+
+    // each test creates its own database
+    BMTest bmt = new BMTest();
+    bmt.BUF_SIZE = 50;
+
+    // run all the test cases
+    System.out.println("\n" + "Running " + TEST_NAME + "...");
+    boolean status = PASS;
+    status &= bmt.test1();
+    status &= bmt.test2();
+    status &= bmt.test3();
+    status &= bmt.test4();
+    status &= bmt.test5();
+    status &= bmt.test6();
+    status &= bmt.test7();
+    status &= bmt.test8();
+    status &= bmt.test9();
+    status &= bmt.test10();
+    status &= bmt.test11();
+    status &= bmt.test12();
+    status &= bmt.test13();
+
+    // display the final results
+    System.out.println();
+    if (status != PASS) {
+      System.out.println("Error(s) encountered during " + TEST_NAME + ".");
+    } else {
+      System.out.println("All " + TEST_NAME + " completed successfully!");
+    }
+
+  } // public static void main (String argv[])
+
+  /**
+   * Pins, unpins, and frees pages with each replacement policy.
+   */
+  protected boolean test1() {
+
+    System.out.println("\n  Test 1: Buffer manager API with each policy\n");
+    boolean status = PASS;
+    for (int i = 0; i < POLICIES.length; i++) {
+      System.out.println("  - " + POLICY_NAMES[i] + "\n");
+      new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, false, STORAGE_CHANNEL,
+          PAGE_SIZE, new String[0], POLICIES[i]);
+      status &= testPolicy();
+      Minibase.DiskManager.destroyDB();
+    }
+
+    if (status == PASS)
+      System.out.println("  Test 1 completed successfully.\n");
+    return status;
+
+  } // protected boolean test1()
+
+  /**
+   * Runs the API checks on the current buffer manager.
+   */
+  protected boolean testPolicy() {
+
+    boolean status = PASS;
+
+    // allocate and write more pages than fit in the pool
+    int num_pages = BUF_SIZE * 3;
+    Page page = new Page();
+    PageId first = Minibase.BufferManager.newPage(page, num_pages);
+    Minibase.BufferManager.unpinPage(first, UNPIN_DIRTY);
+    PageId pageno = new PageId();
+    for (int i = 0; i < num_pages; i++) {
+      pageno.pid = first.pid + i;
+      Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+      page.setIntValue(pageno.pid, 0);
+      Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+    }
+
+    // evicted pages should have been written
+    for (int i = num_pages - 1; i >= 0; i--) {
+      pageno.pid = first.pid + i;
+      Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+      if (page.getIntValue(0) != pageno.pid) {
+        System.err.println("*** Page " + pageno.pid + " was lost\n");
+        status = FAIL;
+      }
+      Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+    }
+    if (!allUnpinned()) {
+      System.err.println("*** Pages still pinned\n");
+      status = FAIL;
+    }
+
+    // pin a page twice, then fill the rest of the pool
+    pageno.pid = first.pid;
+    Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+    Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+    for (int i = 1; i < BUF_SIZE; i++) {
+      Minibase.BufferManager.pinPage(new PageId(first.pid + i), page,
+          PIN_DISKIO);
+    }
+    if (Minibase.BufferManager.getNumUnpinned() != 0) {
+      System.err.println("*** Pool should be fully pinned\n");
+      status = FAIL;
+    }
+
+    // check the error cases
+    try {
+      Minibase.BufferManager.pinPage(new PageId(first.pid + BUF_SIZE), page,
+          PIN_DISKIO);
+      System.err.println("*** Pinned a page in a full pool\n");
+      status = FAIL;
+    } catch (IllegalStateException exc) {
+    }
+    try {
+      Minibase.BufferManager.pinPage(pageno, new Page(), PIN_MEMCPY);
+      System.err.println("*** Copied over a pinned page\n");
+      status = FAIL;
+    } catch (IllegalArgumentException exc) {
+    }
+    try {
+      Minibase.BufferManager.freePage(pageno);
+      System.err.println("*** Freed a pinned page\n");
+      status = FAIL;
+    } catch (IllegalArgumentException exc) {
+    }
+    try {
+      Minibase.BufferManager.flushPage(new PageId(first.pid + BUF_SIZE));
+      System.err.println("*** Flushed a page not in the pool\n");
+      status = FAIL;
+    } catch (IllegalArgumentException exc) {
+    }
+
+    // unpin everything; the first page was pinned twice
+    for (int i = 0; i < BUF_SIZE; i++) {
+      Minibase.BufferManager.unpinPage(new PageId(first.pid + i), UNPIN_CLEAN);
+    }
+    Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+    try {
+      Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+      System.err.println("*** Unpinned an unpinned page\n");
+      status = FAIL;
+    } catch (IllegalArgumentException exc) {
+    }
+    try {
+      Minibase.BufferManager.pinPage(new PageId(first.pid + BUF_SIZE), page,
+          -1);
+      System.err.println("*** Pinned with bad contents\n");
+      status = FAIL;
+    } catch (IllegalArgumentException exc) {
+    }
+
+    // freed frames should be reused, and the whole pool still be usable
+    for (int i = 0; i < BUF_SIZE / 2; i++) {
+      Minibase.BufferManager.freePage(new PageId(first.pid + i));
+    }
+    for (int i = 0; i < BUF_SIZE; i++) {
+      pageno.pid = first.pid + BUF_SIZE + i;
+      Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+      if (page.getIntValue(0) != pageno.pid) {
+        System.err.println("*** Page " + pageno.pid + " was lost\n");
+        status = FAIL;
+      }
+    }
+    for (int i = 0; i < BUF_SIZE; i++) {
+      Minibase.BufferManager.unpinPage(new PageId(first.pid + BUF_SIZE + i),
+          UNPIN_CLEAN);
+    }
+    return status;
+
+  } // protected boolean testPolicy()
+
+  /**
+   * Compares the policies on a hot set of pages mixed with a large scan.
+   */
+  protected boolean test2() {
+
+    System.out.println("\n  Test 2: Hot pages mixed with a scan\n");
+    boolean status = PASS;
+
+    // run the same workload with each policy
+    int[] reads = new int[POLICIES.length];
+    for (int i = 0; i < POLICIES.length; i++) {
+      new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, false, STORAGE_CHANNEL,
+          PAGE_SIZE, new String[0], POLICIES[i]);
+      Minibase.BufferManager.setReadAhead(false);
+      reads[i] = runWorkload();
+      System.out.println("  - " + POLICY_NAMES[i] + ": " + reads[i]
+          + " reads\n");
+      Minibase.DiskManager.destroyDB();
+    }
+
+    // the scan resistant policies should beat plain LRU
+    for (int i = 2; i < POLICIES.length; i++) {
+      if (reads[i] >= reads[1]) {
+        System.err.println("*** " + POLICY_NAMES[i]
+            + " should read less than LRU\n");
+        status = FAIL;
+      }
+    }
+
+    if (status == PASS)
+      System.out.println("  Test 2 completed successfully.\n");
+    return status;
+
+  } // protected boolean test2()
+
+  /**
+   * Updates pages from several threads at once with each policy.
+   */
+  protected boolean test3() {
+
+    System.out.println("\n  Test 3: Concurrent pins and updates\n");
+    boolean status = PASS;
+    for (int i = 0; i < POLICIES.length; i++) {
+      System.out.println("  - " + POLICY_NAMES[i] + "\n");
+      new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, false, STORAGE_CHANNEL,
+          PAGE_SIZE, new String[0], POLICIES[i]);
+      status &= runThreads();
+      Minibase.DiskManager.destroyDB();
+    }
+
+    if (status == PASS)
+      System.out.println("  Test 3 completed successfully.\n");
+    return status;
+
+  } // protected boolean test3()
+
+  /**
+   * Has several threads increment counters on random pages (more than fit in
+   * the pool), and checks that no increment was lost.
+   */
+  protected boolean runThreads() {
+
+    boolean status = PASS;
+    int num_threads = 4;
+    int num_pages = BUF_SIZE * 2;
+    int num_updates = 5000;
+    PageId first = Minibase.DiskManager.allocate_page(num_pages);
+    AtomicIntegerArray expected = new AtomicIntegerArray(num_pages);
+
+    // each thread latches the page it updates, sharing it with the others
+    ArrayList<Thread> threads = new ArrayList<Thread>();
+    ArrayList<Throwable> errors = new ArrayList<Throwable>();
+    for (int t = 0; t < num_threads; t++) {
+      long seed = t;
+      Thread thread = new Thread(() -> {
+        Random rand = new Random(seed);
+        Page page = new Page();
+        for (int i = 0; i < num_updates; i++) {
+          int index = rand.nextInt(num_pages);
+          PageId pageno = new PageId(first.pid + index);
+          Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+          Minibase.BufferManager.latchPage(pageno, true);
+          page.setIntValue(page.getIntValue(0) + 1, 0);
+          Minibase.BufferManager.unlatchPage(pageno, true);
+          Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+          expected.incrementAndGet(index);
+        }
+      });
+      thread.setUncaughtExceptionHandler((thr, exc) -> {
+        synchronized (errors) {
+          errors.add(exc);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (InterruptedException exc) {
+        status = FAIL;
+      }
+    }
+    for (Throwable exc : errors) {
+      System.err.println("*** Thread failed: " + exc + "\n");
+      status = FAIL;
+    }
+
+    // every page should have all of its updates, and nothing stay pinned
+    if (!allUnpinned()) {
+      System.err.println("*** Pages still pinned\n");
+      status = FAIL;
+    }
+    Minibase.BufferManager.flushAllFrames();
+    Page page = new Page();
+    for (int i = 0; i < num_pages; i++) {
+      Minibase.DiskManager.read_page(new PageId(first.pid + i), page);
+      if (page.getIntValue(0) != expected.get(i)) {
+        System.err.println("*** Page " + (first.pid + i) + " has "
+            + page.getIntValue(0) + " updates, not " + expected.get(i) + "\n");
+        status = FAIL;
+        break;
+      }
+    }
+    return status;
+
+  } // protected boolean runThreads()
+
+  /**
+   * Checks that a scan through a ring of frames leaves the rest of the pool
+   * alone.
+   */
+  protected boolean test4() {
+
+    System.out.println("\n  Test 4: Scan with a ring of frames\n");
+    boolean status = PASS;
+    new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, false, STORAGE_CHANNEL,
+        PAGE_SIZE, new String[0], REPLACE_LRU);
+    Minibase.BufferManager.setReadAhead(false);
+    int hot_size = BUF_SIZE * 3 / 4;
+    int scan_size = BUF_SIZE * 10;
+    PageId first = Minibase.DiskManager.allocate_page(hot_size + scan_size);
+    AccessStrategy strategy = Minibase.BufferManager.newScanStrategy();
+
+    // scan without and with the ring, counting how many hot pages it evicts
+    int[] reads = new int[2];
+    for (int i = 0; i < 2; i++) {
+      pinRun(first.pid, hot_size, null);
+      pinRun(first.pid + hot_size, scan_size, (i == 0) ? null : strategy);
+      int start = Minibase.DiskManager.getReadCount();
+      pinRun(first.pid, hot_size, null);
+      reads[i] = Minibase.DiskManager.getReadCount() - start;
+    }
+    System.out.println("  - Hot pages reread: " + reads[0] + " without, "
+        + reads[1] + " with a ring of " + strategy.getRingSize() + "\n");
+    if ((reads[0] != hot_size) || (reads[1] > strategy.getRingSize())) {
+      System.err.println("*** The scan evicted the wrong pages\n");
+      status = FAIL;
+    }
+
+    // the scan should still have read every page
+    Page page = new Page();
+    for (int i = 0; i < scan_size; i++) {
+      PageId pageno = new PageId(first.pid + hot_size + i);
+      Minibase.BufferManager.pinPage(pageno, page, PIN_MEMCPY, strategy);
+      page.setIntValue(pageno.pid, 0);
+      Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+    }
+    for (int i = 0; i < scan_size; i++) {
+      PageId pageno = new PageId(first.pid + hot_size + i);
+      Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO, strategy);
+      if (page.getIntValue(0) != pageno.pid) {
+        System.err.println("*** Page " + pageno.pid + " was lost\n");
+        status = FAIL;
+        break;
+      }
+      Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS)
+      System.out.println("  Test 4 completed successfully.\n");
+    return status;
+
+  } // protected boolean test4()
+
+  /**
+   * Checks that frames are off the heap, and that their contents survive
+   * eviction with each kind of storage.
+   */
+  protected boolean test5() {
+
+    System.out.println("\n  Test 5: Off-heap frames with each storage\n");
+    boolean status = PASS;
+    int[] modes = { STORAGE_CHANNEL, STORAGE_FILE, STORAGE_MAPPED,
+        STORAGE_DIRECT, STORAGE_COMPRESSED };
+    int page_size = 4096;
+    int num_pages = BUF_SIZE * 3;
+    for (int mode : modes) {
+      System.out.println("  - Storage mode " + mode + "\n");
+      new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, false, mode, page_size,
+          new String[0], REPLACE_CLOCK);
+      initRandom();
+      PageId first = Minibase.DiskManager.allocate_page(num_pages);
+
+      // write random pages through the pool, evicting most of them
+      byte[][] images = new byte[num_pages][page_size];
+      Page page = new Page();
+      for (int i = 0; i < num_pages; i++) {
+        PageId pageno = new PageId(first.pid + i);
+        random.nextBytes(images[i]);
+        Minibase.BufferManager.pinPage(pageno, new Page(images[i].clone()),
+            PIN_MEMCPY);
+        Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+      }
+
+      // read them back, and check that pinned pages are in direct memory
+      for (int i = 0; i < num_pages; i++) {
+        PageId pageno = new PageId(first.pid + i);
+        Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+        boolean ok = page.getBuffer().isDirect()
+            && page.getBuffer().equals(ByteBuffer.wrap(images[i]))
+            && Arrays.equals(page.getBytes(), images[i]);
+        Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+        if (!ok) {
+          System.err.println("*** Page " + pageno.pid + " was changed\n");
+          status = FAIL;
+          break;
+        }
+      }
+      Minibase.DiskManager.destroyDB();
+    }
+
+    if (status == PASS)
+      System.out.println("  Test 5 completed successfully.\n");
+    return status;
+
+  } // protected boolean test5()
+
+  /**
+   * Checks that the page cleaner writes dirty pages in the background, down
+   * to its target at once and the rest once they're old enough.
+   */
+  protected boolean test6() {
+
+    System.out.println("\n  Test 6: Background page cleaner\n");
+    boolean status = PASS;
+    new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, false, STORAGE_CHANNEL,
+        PAGE_SIZE, new String[0], REPLACE_CLOCK);
+    PageId first = Minibase.DiskManager.allocate_page(BUF_SIZE);
+    Minibase.BufferManager.flushAllFrames();
+
+    // dirty every frame, which should take no writes in the foreground
+    int start = Minibase.DiskManager.getWriteCount();
+    Page page = new Page();
+    for (int i = 0; i < BUF_SIZE; i++) {
+      PageId pageno = new PageId(first.pid + i);
+      Minibase.BufferManager.pinPage(pageno, page, PIN_MEMCPY);
+      page.setIntValue(pageno.pid, 0);
+      Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+    }
+    int target = BUF_SIZE * CLEAN_DIRTY_PERCENT / 100;
+
+    // most pages should be written soon, and the rest after the age limit
+    sleep(CLEAN_INTERVAL * 5);
+    int early = Minibase.DiskManager.getWriteCount() - start;
+    sleep(CLEAN_MAX_AGE + CLEAN_INTERVAL * 5);
+    int late = Minibase.DiskManager.getWriteCount() - start;
+    Minibase.BufferManager.flushAllFrames();
+    int flushed = Minibase.DiskManager.getWriteCount() - start - late;
+    System.out.println("  - " + early + " pages written at once, " + late
+        + " later, " + flushed + " by the flush\n");
+    if ((early < BUF_SIZE - target) || (late != BUF_SIZE) || (flushed != 0)) {
+      System.err.println("*** The cleaner wrote the wrong pages\n");
+      status = FAIL;
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS)
+      System.out.println("  Test 6 completed successfully.\n");
+    return status;
+
+  } // protected boolean test6()
+
+  /**
+   * Checks the metrics for one file's pages, directly and over JMX.
+   */
+  protected boolean test7() {
+
+    System.out.println("\n  Test 7: Buffer pool metrics\n");
+    boolean status = PASS;
+    new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, false, STORAGE_CHANNEL,
+        PAGE_SIZE, new String[0], REPLACE_LRU);
+    Minibase.BufferManager.setReadAhead(false);
+    int num_pages = BUF_SIZE / 2;
+    PageId first = Minibase.DiskManager.allocate_page(num_pages);
+    PageId other = Minibase.DiskManager.allocate_page(BUF_SIZE);
+    BufStats stats = Minibase.BufferManager.getStats(PAGE_DATA, "test7");
+
+    // load and modify the pages, pin them again, then evict them all
+    Page page = new Page();
+    for (int i = 0; i < num_pages * 2; i++) {
+      PageId pageno = new PageId(first.pid + i % num_pages);
+      Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO, stats);
+      Minibase.BufferManager.unpinPage(pageno, (i < num_pages));
+    }
+    pinRun(other.pid, BUF_SIZE, null);
+    System.out.println("  - " + stats.getHits() + " hits, "
+        + stats.getMisses() + " misses, " + stats.getEvictions()
+        + " evictions, " + stats.getWriteBacks() + " write-backs\n");
+    if ((stats.getHits() != num_pages) || (stats.getMisses() != num_pages)
+        || (stats.getEvictions() != num_pages)
+        || (stats.getWriteBacks() != num_pages)) {
+      System.err.println("*** Wrong counts for the file's pages\n");
+      status = FAIL;
+    }
+
+    // the same counts should be exported, along with the I/O latencies
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      long hits = -1;
+      CompositeData[] files = (CompositeData[]) server.getAttribute(
+          new ObjectName("minibase:type=BufMgr"), "StatsByFile");
+      for (CompositeData each : files) {
+        if ("test7".equals(each.get("file"))) {
+          hits = (Long) each.get("hits");
+        }
+      }
+      CompositeData reads = (CompositeData) server.getAttribute(
+          new ObjectName("minibase:type=DiskMgr"), "ReadLatency");
+      if ((hits != num_pages) || ((Long) reads.get("count") == 0)) {
+        System.err.println("*** Wrong metrics exported over JMX\n");
+        status = FAIL;
+      }
+    } catch (JMException exc) {
+      System.err.println("*** " + exc + "\n");
+      status = FAIL;
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS)
+      System.out.println("  Test 7 completed successfully.\n");
+    return status;
+
+  } // protected boolean test7()
+
+  /**
+   * Checks that prefetched pages are loaded without being pinned, and that
+   * pinning them later takes no more reads.
+   */
+  protected boolean test8() {
+
+    System.out.println("\n  Test 8: Prefetching pages\n");
+    boolean status = PASS;
+    new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, false, STORAGE_CHANNEL,
+        PAGE_SIZE, new String[0], REPLACE_LRU);
+    Minibase.BufferManager.setReadAhead(false);
+    int num_pages = BUF_SIZE / 5;
+    PageId first = Minibase.DiskManager.allocate_page(num_pages * 3);
+    BufStats stats = Minibase.BufferManager.getStats(PAGE_DATA, "test8");
+
+    // prefetch a run, and every other page after it out of order
+    int start = Minibase.DiskManager.getReadCount();
+    Minibase.BufferManager.prefetchRun(first, num_pages);
+    PageId[] ids = new PageId[num_pages];
+    for (int i = 0; i < num_pages; i++) {
+      ids[i] = new PageId(first.pid + num_pages + (num_pages - i - 1) * 2);
+    }
+    Minibase.BufferManager.prefetch(ids, null, stats);
+
+    // wait for the loads, then pin every page that was prefetched
+    Minibase.DiskManager.setQueueDepth(DiskMgr.DEFAULT_QUEUE_DEPTH);
+    int loaded = Minibase.DiskManager.getReadCount() - start;
+    int unpinned = Minibase.BufferManager.getNumUnpinned();
+    pinRun(first.pid, num_pages, null);
+    Page page = new Page();
+    for (PageId pageno : ids) {
+      Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO, stats);
+      Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+    }
+    int reads = Minibase.DiskManager.getReadCount() - start;
+    System.out.println("  - " + loaded + " pages prefetched, " + reads
+        + " read in all, " + stats.getHits() + " hits\n");
+    if ((loaded != num_pages * 2) || (reads != loaded)
+        || (unpinned != BUF_SIZE) || (stats.getHits() != num_pages)) {
+      System.err.println("*** The pages weren't prefetched\n");
+      status = FAIL;
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS)
+      System.out.println("  Test 8 completed successfully.\n");
+    return status;
+
+  } // protected boolean test8()
+
+  /**
+   * Checks that one view can be pinned on page after page, seeing and
+   * changing each frame in place.
+   */
+  protected boolean test9() {
+
+    System.out.println("\n  Test 9: Pinning views\n");
+    boolean status = PASS;
+    new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, false, STORAGE_CHANNEL,
+        PAGE_SIZE, new String[0], REPLACE_CLOCK);
+    int num_pages = BUF_SIZE * 2;
+    PageId first = Minibase.DiskManager.allocate_page(num_pages);
+
+    // write each page through the view, then check them after eviction
+    Page view = Page.newView();
+    for (int pass = 0; pass < 2; pass++) {
+      for (int i = 0; i < num_pages; i++) {
+        PageId pageno = new PageId(first.pid + i);
+        if (Minibase.BufferManager.pinView(pageno, view, null) != view) {
+          status = FAIL;
+        }
+        if (pass == 0) {
+          view.setIntValue(pageno.pid, 0);
+        } else if (view.getIntValue(0) != pageno.pid) {
+          status = FAIL;
+        }
+        Minibase.BufferManager.unpinPage(pageno, (pass == 0));
+      }
+    }
+    if (status != PASS) {
+      System.err.println("*** The view didn't share the pinned frames\n");
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS)
+      System.out.println("  Test 9 completed successfully.\n");
+    return status;
+
+  } // protected boolean test9()
+
+  /**
+   * Grows the pool with every page pinned, then shrinks it while some pages
+   * stay pinned and others are pinned meanwhile, with each policy.
+   */
+  protected boolean test10() {
+
+    System.out.println("\n  Test 10: Resizing the pool\n");
+    boolean status = PASS;
+    for (int p = 0; p < POLICIES.length; p++) {
+      new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, false, STORAGE_CHANNEL,
+          PAGE_SIZE, new String[0], POLICIES[p]);
+      int num_pages = BUF_SIZE * 2;
+      int num_held = 5;
+      PageId first = Minibase.DiskManager.allocate_page(num_pages);
+      PageId other = Minibase.DiskManager.allocate_page(BUF_SIZE);
+
+      // grow to fit every page, pinned and modified at once
+      Minibase.BufferManager.resize(num_pages);
+      Page page = new Page();
+      for (int i = 0; i < num_pages; i++) {
+        PageId pageno = new PageId(first.pid + i);
+        Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+        page.setIntValue(pageno.pid, 0);
+      }
+      int held = num_pages - num_held;
+      for (int i = 0; i < held; i++) {
+        Minibase.BufferManager.unpinPage(new PageId(first.pid + i),
+            UNPIN_DIRTY);
+      }
+
+      // shrink while the last few pages (in the new frames) stay pinned,
+      // using the rest of the pool meanwhile
+      Thread shrink = new Thread(() -> Minibase.BufferManager.resize(
+          BUF_SIZE / 2));
+      shrink.start();
+      pinRun(other.pid, BUF_SIZE, null);
+      boolean waited = shrink.isAlive();
+      for (int i = held; i < num_pages; i++) {
+        Minibase.BufferManager.unpinPage(new PageId(first.pid + i),
+            UNPIN_DIRTY);
+      }
+      boolean interrupted = false;
+      while (shrink.isAlive()) {
+        try {
+          shrink.join();
+        } catch (InterruptedException exc) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+
+      // every page should have been written as it was evicted
+      int frames = Minibase.BufferManager.getNumFrames();
+      boolean unpinned = allUnpinned();
+      boolean intact = true;
+      for (int i = 0; i < num_pages; i++) {
+        PageId pageno = new PageId(first.pid + i);
+        Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+        intact &= (page.getIntValue(0) == pageno.pid);
+        Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+      }
+      System.out.println("  - " + POLICY_NAMES[p] + ": " + frames
+          + " frames left");
+      if ((frames != BUF_SIZE / 2) || !unpinned || !intact
+          || !waited) {
+        System.err.println("*** The pool wasn't resized correctly\n");
+        status = FAIL;
+      }
+      Minibase.DiskManager.destroyDB();
+    }
+
+    if (status == PASS)
+      System.out.println("\n  Test 10 completed successfully.\n");
+    return status;
+
+  } // protected boolean test10()
+
+  /**
+   * Checks that the most used pages are reloaded when the database is
+   * reopened with a smaller pool, in batches rather than one read each.
+   */
+  protected boolean test11() {
+
+    System.out.println("\n  Test 11: Warm restart\n");
+    boolean status = PASS;
+    new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, false, STORAGE_CHANNEL,
+        PAGE_SIZE, new String[0], REPLACE_LRU);
+    Minibase.BufferManager.setReadAhead(false);
+    int num_pages = BUF_SIZE * 2 / 5;
+    PageId first = Minibase.DiskManager.allocate_page(num_pages * 2);
+
+    // use the first half of the pages a few times, and the rest once
+    for (int i = 0; i < 3; i++) {
+      pinRun(first.pid, num_pages, null);
+    }
+    pinRun(first.pid + num_pages, num_pages, null);
+    Minibase.DiskManager.closeDB();
+
+    // reopen with room for the hot pages, and wait for them to be reloaded
+    new Minibase(DB_PATH, DB_SIZE, BUF_SIZE / 2, true, STORAGE_CHANNEL,
+        PAGE_SIZE, new String[0], REPLACE_LRU);
+    BufStats loads = Minibase.BufferManager.getStats(PAGE_OTHER, null);
+    long loaded = -1;
+    for (int i = 0; (i < 50) && (loads.getMisses() != loaded); i++) {
+      loaded = loads.getMisses();
+      sleep(CLEAN_INTERVAL);
+    }
+    long ios = Minibase.DiskManager.getReadLatency().getCount();
+
+    // the hot pages should all be hits now
+    BufStats stats = Minibase.BufferManager.getStats(PAGE_DATA, "test11");
+    Page page = new Page();
+    for (int i = 0; i < num_pages; i++) {
+      PageId pageno = new PageId(first.pid + i);
+      Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO, stats);
+      Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+    }
+    System.out.println("  - " + loaded + " pages reloaded with " + ios
+        + " reads in all, " + stats.getHits() + " hot pages found\n");
+    if ((stats.getHits() != num_pages) || (ios >= loaded)) {
+      System.err.println("*** The hot pages weren't reloaded\n");
+      status = FAIL;
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS)
+      System.out.println("  Test 11 completed successfully.\n");
+    return status;
+
+  } // protected boolean test11()
+
+  /**
+   * Sleeps for the given number of milliseconds.
+   */
+  protected static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException exc) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Checks that no page in the pool is pinned, once any pages that are
+   * still being read ahead have been loaded.
+   */
+  protected boolean allUnpinned() {
+    int frames = Minibase.BufferManager.getNumFrames();
+    for (int i = 0; (i < 100)
+        && (Minibase.BufferManager.getNumUnpinned() != frames); i++) {
+      sleep(10);
+    }
+    return (Minibase.BufferManager.getNumUnpinned() == frames);
+  }
+
+  /**
+   * Pins and unpins a run of pages in order, with the given strategy.
+   */
+  protected void pinRun(int first, int count, AccessStrategy strategy) {
+    Page page = new Page();
+    for (int i = 0; i < count; i++) {
+      PageId pageno = new PageId(first + i);
+      Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO, strategy);
+      Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+    }
+  }
+
+  /**
+   * Randomly pins pages of a hot set, interleaved with a sequential scan of
+   * many more pages.
+   *
+   * @return the number of pages read
+   */
+  protected int runWorkload() {
+
+    initRandom();
+    int hot_size = BUF_SIZE * 4 / 5;
+    int scan_size = BUF_SIZE * 40;
+    PageId first = Minibase.DiskManager.allocate_page(hot_size + scan_size);
+    int start = Minibase.DiskManager.getReadCount();
+    Page page = new Page();
+    PageId pageno = new PageId();
+    int scan_pos = 0;
+    for (int i = 0; i < scan_size * 3; i++) {
+      if (random.nextInt(10) < 7) {
+        pageno.pid = first.pid + random.nextInt(hot_size);
+      } else {
+        pageno.pid = first.pid + hot_size + scan_pos++ % scan_size;
+      }
+      Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+      Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+    }
+    return Minibase.DiskManager.getReadCount() - start;
+
+  } // protected int runWorkload()
+
+  /**
+   * Scans pages sequentially and with strides while changing pages just
+   * ahead of the scan; read-ahead should turn some pins into hits, without
+   * ever pinning stale contents.
+   */
+  protected boolean test12() {
+
+    System.out.println("\n  Test 12: Read-ahead\n");
+    boolean status = PASS;
+    initRandom();
+    new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, false, STORAGE_CHANNEL,
+        PAGE_SIZE, new String[0], REPLACE_LRU);
+    int num_pages = BUF_SIZE * 10;
+    PageId first = Minibase.DiskManager.allocate_page(num_pages);
+    int[] values = new int[num_pages];
+    Page page = new Page();
+    for (int i = 0; i < num_pages; i++) {
+      PageId pageno = new PageId(first.pid + i);
+      Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+      page.setIntValue(values[i] = random.nextInt(), 0);
+      Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+    }
+    Minibase.BufferManager.flushAllFrames();
+
+    // scan with each stride, changing some pages before they are pinned
+    for (int stride = 1; stride <= 3; stride++) {
+      BufStats stats = Minibase.BufferManager.getStats(PAGE_DATA,
+          "test12 stride " + stride);
+      for (int i = 0; i < num_pages; i += stride) {
+        if (random.nextInt(10) == 0) {
+          int ahead = Math.min(i + random.nextInt(20), num_pages - 1);
+          PageId pageno = new PageId(first.pid + ahead);
+          Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+          page.setIntValue(values[ahead] = random.nextInt(), 0);
+          Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+        }
+        PageId pageno = new PageId(first.pid + i);
+        Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO, stats);
+        int value = page.getIntValue(0);
+        Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+        if (value != values[i]) {
+          System.err.println("*** Page " + pageno.pid
+              + " has stale contents\n");
+          status = FAIL;
+          break;
+        }
+      }
+      System.out.println("  - Scan with stride " + stride + ": "
+          + stats.getHits() + " hits, " + stats.getMisses() + " misses\n");
+      if ((stride == 1) && (stats.getHits() == 0)) {
+        System.err.println("*** Nothing was prefetched\n");
+        status = FAIL;
+      }
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS)
+      System.out.println("  Test 12 completed successfully.\n");
+    return status;
+
+  } // protected boolean test12()
+
+  /**
+   * Shrinks the pool while another thread keeps pinning pages in the frames
+   * being removed, which should move them rather than stall; then shrinks it
+   * while a page stays pinned, which should time out and keep the old size.
+   */
+  protected boolean test13() {
+
+    System.out.println("\n  Test 13: Shrinking around hot pages\n");
+    boolean status = PASS;
+    new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, false, STORAGE_CHANNEL,
+        PAGE_SIZE, new String[0], REPLACE_CLOCK);
+    Minibase.BufferManager.setReadAhead(false);
+    int num_pages = BUF_SIZE * 2;
+    PageId first = Minibase.DiskManager.allocate_page(num_pages);
+    PageId other = Minibase.DiskManager.allocate_page(num_pages);
+    Minibase.BufferManager.resize(num_pages);
+    pinRun(first.pid, num_pages, null);
+
+    // keep pinning the pages in the new frames while shrinking
+    System.out.println("  - Shrink while pages are re-pinned");
+    boolean[] done = new boolean[1];
+    Thread hot = new Thread(() -> {
+      Page page = new Page();
+      while (!done[0]) {
+        for (int i = BUF_SIZE; i < num_pages; i++) {
+          PageId pageno = new PageId(first.pid + i);
+          Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+          Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+        }
+      }
+    });
+    hot.start();
+    sleep(10);
+    long start = System.currentTimeMillis();
+    try {
+      Minibase.BufferManager.resize(BUF_SIZE / 2);
+    } catch (IllegalStateException exc) {
+      System.err.println("*** " + exc.getMessage() + "\n");
+      status = FAIL;
+    }
+    long elapsed = System.currentTimeMillis() - start;
+    synchronized (done) {
+      done[0] = true;
+    }
+    boolean interrupted = false;
+    while (hot.isAlive()) {
+      try {
+        hot.join();
+      } catch (InterruptedException exc) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    int frames = Minibase.BufferManager.getNumFrames();
+    if ((frames != BUF_SIZE / 2) || (elapsed >= RESIZE_TIMEOUT)) {
+      System.err.println("*** The pool wasn't shrunk (" + frames
+          + " frames after " + elapsed + " ms)\n");
+      status = FAIL;
+    }
+
+    // hold every page pinned, so that shrinking times out
+    System.out.println("  - Shrink while pages stay pinned");
+    Minibase.BufferManager.resize(num_pages);
+    Page page = new Page();
+    for (int i = 0; i < num_pages; i++) {
+      Minibase.BufferManager.pinPage(new PageId(first.pid + i), page,
+          PIN_DISKIO);
+    }
+    boolean aborted = false;
+    try {
+      Minibase.BufferManager.resize(BUF_SIZE / 2);
+    } catch (IllegalStateException exc) {
+      aborted = true;
+    }
+    for (int i = 0; i < num_pages; i++) {
+      Minibase.BufferManager.unpinPage(new PageId(first.pid + i),
+          UNPIN_CLEAN);
+    }
+
+    // the pool should have kept every frame, and be able to use them all
+    frames = Minibase.BufferManager.getNumFrames();
+    int reads = Minibase.DiskManager.getReadCount();
+    pinRun(other.pid, num_pages, null);
+    pinRun(other.pid, num_pages, null);
+    reads = Minibase.DiskManager.getReadCount() - reads;
+    System.out.println("  - " + frames + " frames left, " + reads
+        + " pages read twice over");
+    if (!aborted || (frames != num_pages) || (reads != num_pages)) {
+      System.err.println("*** The aborted shrink didn't keep the pool\n");
+      status = FAIL;
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS)
+      System.out.println("\n  Test 13 completed successfully.\n");
+    return status;
+
+  } // protected boolean test13()
+
+} // class BMTest extends TestDriver
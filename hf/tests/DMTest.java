@@ -0,0 +1,1277 @@
+package tests;
+
+import diskmgr.DiskMgr;
+import diskmgr.FlushBatch;
+import global.Minibase;
+import global.Page;
+import global.PageId;
+import global.RID;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Test suite for the disk manager layer.
+ */
+class DMTest extends TestDriver {
+
+  /** The display name of the test suite. */
+  private static final String TEST_NAME = "disk manager tests";
+
+  /**
+   * Size of the database to create (in pages); large enough that page
+   * offsets don't fit in an int.  The file is sparse, so this doesn't need
+   * much actual disk space.
+   */
+  private static final int LARGE_DB_SIZE = 3 * 1024 * 1024;
+
+  /** First page id whose byte offset overflows an int. */
+  private static final int FIRST_LARGE_PID = Integer.MAX_VALUE / PAGE_SIZE + 1;
+
+  /**
+   * Test application entry point; runs all tests.
+   */
+  public static void main(String argv[]) {
+
+    // create a clean (and large) Minibase instance
+    DMTest dmt = new DMTest();
+    dmt.DB_SIZE = LARGE_DB_SIZE;
+    dmt.create_minibase();
+
+    // run all the test cases
+    System.out.println("\n" + "Running " + TEST_NAME + "...");
+    boolean status = PASS;
+    status &= dmt.test1();
+    status &= dmt.test2();
+    status &= dmt.test3();
+    status &= dmt.test4();
+
+    // remove the large database file
+    Minibase.DiskManager.destroyDB();
+
+    // these tests use their own databases
+    status &= dmt.test5();
+    status &= dmt.test6();
+    status &= dmt.test7();
+    status &= dmt.test8();
+    status &= dmt.test9();
+    status &= dmt.test10();
+    status &= dmt.test11();
+    status &= dmt.test12();
+    status &= dmt.test13();
+    status &= dmt.test14();
+    status &= dmt.test15();
+    status &= dmt.test16();
+    status &= dmt.test17();
+    status &= dmt.test18();
+
+    // display the final results
+    System.out.println();
+    if (status != PASS) {
+      System.out.println("Error(s) encountered during " + TEST_NAME + ".");
+    } else {
+      System.out.println("All " + TEST_NAME + " completed successfully!");
+    }
+
+  } // public static void main (String argv[])
+
+  /**
+   * Writes and reads pages beyond the 2 GB offset.
+   */
+  protected boolean test1() {
+
+    System.out.println("\n  Test 1: Read and write pages past 2 GB\n");
+    boolean status = PASS;
+
+    // the file should have been created at its full size
+    long length = new File(DB_PATH).length();
+    if (length != (long) LARGE_DB_SIZE * PAGE_SIZE) {
+      System.err.println("*** Database file is " + length + " bytes long\n");
+      status = FAIL;
+    }
+
+    // write a low page, and pages whose offsets would wrap around in an int
+    System.out.println("  - Write pages on both sides of the 2 GB offset\n");
+    int[] pids = { 1000, FIRST_LARGE_PID, LARGE_DB_SIZE - 1 };
+    Page page = new Page();
+    try {
+      for (int i = 0; i < pids.length; i++) {
+        page.setIntValue(pids[i], 0);
+        page.setIntValue(i, PAGE_SIZE - 4);
+        Minibase.DiskManager.write_page(new PageId(pids[i]), page);
+      }
+    } catch (Exception e) {
+      System.err.println("*** Error writing pages\n");
+      e.printStackTrace();
+      return false;
+    }
+
+    // read them back and make sure none overwrote another
+    System.out.println("  - Read the pages back\n");
+    try {
+      for (int i = 0; i < pids.length; i++) {
+        Minibase.DiskManager.read_page(new PageId(pids[i]), page);
+        if ((page.getIntValue(0) != pids[i])
+            || (page.getIntValue(PAGE_SIZE - 4) != i)) {
+          System.err.println("*** Page " + pids[i]
+              + " differs from what we wrote\n");
+          status = FAIL;
+        }
+      }
+    } catch (Exception e) {
+      System.err.println("*** Error reading pages\n");
+      e.printStackTrace();
+      return false;
+    }
+
+    if (status == PASS)
+      System.out.println("  Test 1 completed successfully.\n");
+    return status;
+
+  } // protected boolean test1()
+
+  /**
+   * Allocates a run that crosses the 2 GB offset and reopens the database.
+   */
+  protected boolean test2() {
+
+    System.out.println("\n  Test 2: Allocate space past 2 GB\n");
+    boolean status = PASS;
+
+    // allocate a run that can only fit by crossing the 2 GB offset
+    System.out.println("  - Allocate a run of " + FIRST_LARGE_PID + " pages\n");
+    int before = Minibase.DiskManager.getAllocCount();
+    PageId run = null;
+    try {
+      run = Minibase.DiskManager.allocate_page(FIRST_LARGE_PID);
+    } catch (Exception e) {
+      System.err.println("*** Error allocating the run\n");
+      e.printStackTrace();
+      return false;
+    }
+    if (Minibase.DiskManager.getAllocCount() != before + FIRST_LARGE_PID) {
+      System.err.println("*** Allocated count is "
+          + Minibase.DiskManager.getAllocCount() + ", not "
+          + (before + FIRST_LARGE_PID) + "\n");
+      status = FAIL;
+    }
+
+    // the space map must survive a restart
+    System.out.println("  - Reopen the database\n");
+    int allocs = Minibase.DiskManager.getAllocCount();
+    try {
+      Minibase.DiskManager.closeDB();
+      load_minibase();
+    } catch (Exception e) {
+      System.err.println("*** Error reopening the database\n");
+      e.printStackTrace();
+      return false;
+    }
+    if (Minibase.DiskManager.getAllocCount() != allocs) {
+      System.err.println("*** Reopened database has "
+          + Minibase.DiskManager.getAllocCount() + " allocated pages, not "
+          + allocs + "\n");
+      status = FAIL;
+    }
+
+    // the page written in test 1 must still be there
+    Page page = new Page();
+    Minibase.DiskManager.read_page(new PageId(LARGE_DB_SIZE - 1), page);
+    if (page.getIntValue(0) != LARGE_DB_SIZE - 1) {
+      System.err.println("*** Last page was lost on reopen\n");
+      status = FAIL;
+    }
+
+    // free the run again
+    System.out.println("  - Deallocate the run\n");
+    try {
+      Minibase.DiskManager.deallocate_page(run, FIRST_LARGE_PID);
+    } catch (Exception e) {
+      System.err.println("*** Error deallocating the run\n");
+      e.printStackTrace();
+      return false;
+    }
+    if (Minibase.DiskManager.getAllocCount() != before) {
+      System.err.println("*** Allocated count is "
+          + Minibase.DiskManager.getAllocCount() + ", not " + before + "\n");
+      status = FAIL;
+    }
+
+    if (status == PASS)
+      System.out.println("  Test 2 completed successfully.\n");
+    return status;
+
+  } // protected boolean test2()
+
+  /**
+   * Checks that RIDs on pages past 65535 hash to distinct values.
+   */
+  protected boolean test3() {
+
+    System.out.println("\n  Test 3: Hash RIDs in a large database\n");
+    boolean status = PASS;
+
+    // these all collided when only the low 16 bits of the page id were used
+    int count = LARGE_DB_SIZE / 65536;
+    HashSet<Integer> hashes = new HashSet<Integer>();
+    for (int i = 0; i < count; i++) {
+      for (int slotno = 0; slotno < 100; slotno++) {
+        hashes.add(new RID(new PageId(7 + i * 65536), slotno).hashCode());
+      }
+    }
+    if (hashes.size() != count * 100) {
+      System.err.println("*** " + (count * 100 - hashes.size())
+          + " RID hash collisions\n");
+      status = FAIL;
+    }
+
+    if (status == PASS)
+      System.out.println("  Test 3 completed successfully.\n");
+    return status;
+
+  } // protected boolean test3()
+
+  /**
+   * Fills the database with auto-grow enabled, so that it has to extend the
+   * file and its space map, then reopens it.
+   */
+  protected boolean test4() {
+
+    System.out.println("\n  Test 4: Grow the database on demand\n");
+    boolean status = PASS;
+    Minibase.DiskManager.setAutoGrow(true);
+
+    // allocate runs until the database has had to grow twice
+    System.out.println("  - Allocate past the end of the database\n");
+    int run_size = 4000;
+    ArrayList<PageId> runs = new ArrayList<PageId>();
+    int before = Minibase.DiskManager.getAllocCount();
+    long length = new File(DB_PATH).length();
+    try {
+      while (new File(DB_PATH).length() < length * 3 / 2) {
+        runs.add(Minibase.DiskManager.allocate_page(run_size));
+      }
+    } catch (Exception e) {
+      System.err.println("*** Error allocating run " + runs.size() + "\n");
+      e.printStackTrace();
+      return false;
+    }
+
+    // write to the last run, which is past the original end
+    PageId last = runs.get(runs.size() - 1);
+    if (last.pid + run_size <= LARGE_DB_SIZE) {
+      System.err.println("*** Last run " + last + " is not in the new space\n");
+      status = FAIL;
+    }
+    Page page = new Page();
+    page.setIntValue(last.pid, 0);
+    Minibase.DiskManager.write_page(last, page);
+
+    // the grown database must survive a restart
+    System.out.println("  - Reopen the database\n");
+    int allocs = Minibase.DiskManager.getAllocCount();
+    try {
+      Minibase.DiskManager.closeDB();
+      load_minibase();
+    } catch (Exception e) {
+      System.err.println("*** Error reopening the database\n");
+      e.printStackTrace();
+      return false;
+    }
+    if (Minibase.DiskManager.getAllocCount() != allocs) {
+      System.err.println("*** Reopened database has "
+          + Minibase.DiskManager.getAllocCount() + " allocated pages, not "
+          + allocs + "\n");
+      status = FAIL;
+    }
+    Minibase.DiskManager.read_page(last, page);
+    if (page.getIntValue(0) != last.pid) {
+      System.err.println("*** Page " + last + " was lost on reopen\n");
+      status = FAIL;
+    }
+
+    // free the runs; only the new space-map pages remain allocated
+    System.out.println("  - Deallocate the runs\n");
+    for (PageId run : runs) {
+      Minibase.DiskManager.deallocate_page(run, run_size);
+    }
+    int map_pages = Minibase.DiskManager.getAllocCount() - before;
+    if ((map_pages < 1) || (map_pages > LARGE_DB_SIZE / (PAGE_SIZE * 8))) {
+      System.err.println("*** " + map_pages
+          + " pages remain allocated after deallocating\n");
+      status = FAIL;
+    }
+
+    if (status == PASS)
+      System.out.println("  Test 4 completed successfully.\n");
+    return status;
+
+  } // protected boolean test4()
+
+  /**
+   * Stores compressible and incompressible pages in a compressed database.
+   */
+  protected boolean test5() {
+
+    System.out.println("\n  Test 5: Compressed storage\n");
+    boolean status = PASS;
+    initRandom();
+
+    // fill half the pages with text and the rest with noise
+    System.out.println("  - Write text and random pages\n");
+    new Minibase(DB_PATH, 2000, BUF_SIZE, false, STORAGE_COMPRESSED);
+    int num_pages = 1000;
+    PageId first = Minibase.DiskManager.allocate_page(num_pages);
+    byte[][] images = new byte[num_pages][];
+    for (int i = 0; i < num_pages; i++) {
+      Page page = new Page();
+      if (i % 2 == 0) {
+        for (int pos = 0; pos + 20 <= PAGE_SIZE; pos += 20) {
+          page.setStringValue("record " + (i * 100 + pos), pos);
+        }
+      } else {
+        byte[] data = new byte[PAGE_SIZE];
+        random.nextBytes(data);
+        page.setData(data);
+      }
+      images[i] = page.getBytes();
+      Minibase.DiskManager.write_page(new PageId(first.pid + i), page);
+    }
+
+    // the file should hold well under the raw size
+    Minibase.DiskManager.closeDB();
+    long length = new File(DB_PATH).length();
+    if (length > (long) num_pages * PAGE_SIZE * 3 / 4) {
+      System.err.println("*** Compressed file is " + length + " bytes\n");
+      status = FAIL;
+    }
+
+    // rewrite some pages with the other kind of data, then check them all
+    System.out.println("  - Reopen and rewrite pages\n");
+    new Minibase(DB_PATH, 2000, BUF_SIZE, true, STORAGE_COMPRESSED);
+    for (int i = 0; i < num_pages; i += 7) {
+      byte[] tmp = images[i];
+      images[i] = images[num_pages - 1 - i];
+      images[num_pages - 1 - i] = tmp;
+      Minibase.DiskManager.write_page(new PageId(first.pid + i),
+          new Page(images[i].clone()));
+      Minibase.DiskManager.write_page(new PageId(first.pid + num_pages - 1 - i),
+          new Page(images[num_pages - 1 - i].clone()));
+    }
+    Minibase.DiskManager.closeDB();
+    new Minibase(DB_PATH, 2000, BUF_SIZE, true, STORAGE_COMPRESSED);
+    Page page = new Page();
+    for (int i = 0; i < num_pages; i++) {
+      Minibase.DiskManager.read_page(new PageId(first.pid + i), page);
+      if (!Arrays.equals(page.getBytes(), images[i])) {
+        System.err.println("*** Page " + (first.pid + i) + " was changed\n");
+        status = FAIL;
+        break;
+      }
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS)
+      System.out.println("  Test 5 completed successfully.\n");
+    return status;
+
+  } // protected boolean test5()
+
+  /**
+   * Reads and writes runs of pages in a database striped across files.
+   */
+  protected boolean test6() {
+
+    System.out.println("\n  Test 6: Striped storage\n");
+    boolean status = PASS;
+    String[] stripes = { DB_PATH + ".1", DB_PATH + ".2" };
+
+    // write runs that cross the stripe units
+    System.out.println("  - Write runs across three files\n");
+    new Minibase(DB_PATH, 3000, BUF_SIZE, false, STORAGE_CHANNEL, PAGE_SIZE,
+        stripes);
+    int num_pages = 2000;
+    PageId first = Minibase.DiskManager.allocate_page(num_pages);
+    for (int i = 0; i < num_pages; i += 250) {
+      Page[] pages = new Page[250];
+      for (int j = 0; j < pages.length; j++) {
+        pages[j] = new Page();
+        pages[j].setIntValue(first.pid + i + j, 0);
+      }
+      Minibase.DiskManager.write_pages(new PageId(first.pid + i), 250, pages);
+    }
+
+    // each file should hold a third of the pages
+    Minibase.DiskManager.closeDB();
+    long length = new File(DB_PATH).length();
+    for (String stripe : stripes) {
+      if (Math.abs(new File(stripe).length() - length) > 64 * PAGE_SIZE) {
+        System.err.println("*** Stripe " + stripe + " is "
+            + new File(stripe).length() + " bytes, not about " + length + "\n");
+        status = FAIL;
+      }
+    }
+
+    // read the pages back with different runs
+    System.out.println("  - Reopen and read the runs\n");
+    new Minibase(DB_PATH, 3000, BUF_SIZE, true, STORAGE_CHANNEL, PAGE_SIZE,
+        stripes);
+    for (int i = 0; i < num_pages; i += 333) {
+      int count = Math.min(333, num_pages - i);
+      Page[] pages = new Page[count];
+      for (int j = 0; j < count; j++) {
+        pages[j] = new Page();
+      }
+      Minibase.DiskManager.read_pages(new PageId(first.pid + i), count, pages);
+      for (int j = 0; j < count; j++) {
+        if (pages[j].getIntValue(0) != first.pid + i + j) {
+          System.err.println("*** Page " + (first.pid + i + j)
+              + " has the wrong contents\n");
+          status = FAIL;
+          break;
+        }
+      }
+    }
+
+    // destroying the database removes all of its files
+    Minibase.DiskManager.destroyDB();
+    for (String stripe : stripes) {
+      if (new File(stripe).exists()) {
+        System.err.println("*** Stripe " + stripe + " was not removed\n");
+        status = FAIL;
+      }
+    }
+
+    if (status == PASS)
+      System.out.println("  Test 6 completed successfully.\n");
+    return status;
+
+  } // protected boolean test6()
+
+  /**
+   * Keeps many asynchronous reads and writes in flight.
+   */
+  protected boolean test7() {
+
+    System.out.println("\n  Test 7: Asynchronous I/O\n");
+    boolean status = PASS;
+    new Minibase(DB_PATH, 3000, BUF_SIZE, false);
+    Minibase.DiskManager.setQueueDepth(8);
+    int num_pages = 2000;
+    PageId first = Minibase.DiskManager.allocate_page(num_pages);
+
+    // issue all of the writes before waiting for any of them
+    System.out.println("  - Write pages asynchronously\n");
+    ArrayList<CompletableFuture<Void>> writes =
+        new ArrayList<CompletableFuture<Void>>();
+    for (int i = 0; i < num_pages; i++) {
+      Page page = new Page();
+      page.setIntValue(first.pid + i, 0);
+      writes.add(Minibase.DiskManager.writePageAsync(
+          new PageId(first.pid + i), page));
+    }
+    CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).join();
+
+    // likewise for the reads
+    System.out.println("  - Read pages asynchronously\n");
+    ArrayList<CompletableFuture<Page>> reads =
+        new ArrayList<CompletableFuture<Page>>();
+    for (int i = 0; i < num_pages; i++) {
+      reads.add(Minibase.DiskManager.readPageAsync(new PageId(first.pid + i)));
+    }
+    for (int i = 0; i < num_pages; i++) {
+      if (reads.get(i).join().getIntValue(0) != first.pid + i) {
+        System.err.println("*** Page " + (first.pid + i)
+            + " has the wrong contents\n");
+        status = FAIL;
+        break;
+      }
+    }
+
+    // invalid requests fail their futures
+    System.out.println("  - Read an invalid page\n");
+    try {
+      Minibase.DiskManager.readPageAsync(new PageId(-1)).join();
+      System.err.println("*** Reading page -1 did not fail\n");
+      status = FAIL;
+    } catch (CompletionException exc) {
+      if (!(exc.getCause() instanceof IllegalArgumentException)) {
+        System.err.println("*** Reading page -1 failed with " + exc + "\n");
+        status = FAIL;
+      }
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS)
+      System.out.println("  Test 7 completed successfully.\n");
+    return status;
+
+  } // protected boolean test7()
+
+  /**
+   * Stores pages that barely compress, including one that compresses to
+   * exactly a page, which must not be mistaken for a raw copy.
+   */
+  protected boolean test8() {
+
+    System.out.println("\n  Test 8: Pages that barely compress\n");
+    boolean status = PASS;
+    initRandom();
+
+    // noise with one repeat; each longer repeat saves about one more byte
+    System.out.println("  - Write noise with short repeats\n");
+    new Minibase(DB_PATH, 100, BUF_SIZE, false, STORAGE_COMPRESSED);
+    int num_pages = 40;
+    PageId first = Minibase.DiskManager.allocate_page(num_pages);
+    byte[][] images = new byte[num_pages][];
+    for (int i = 0; i < num_pages; i++) {
+      byte[] data = new byte[PAGE_SIZE];
+      random.nextBytes(data);
+      System.arraycopy(data, 0, data, 100, i + 1);
+      images[i] = data.clone();
+      Minibase.DiskManager.write_page(new PageId(first.pid + i),
+          new Page(data));
+    }
+
+    // reopen and check them all
+    System.out.println("  - Reopen and read them back\n");
+    Minibase.DiskManager.closeDB();
+    new Minibase(DB_PATH, 100, BUF_SIZE, true, STORAGE_COMPRESSED);
+    Page page = new Page();
+    for (int i = 0; i < num_pages; i++) {
+      Minibase.DiskManager.read_page(new PageId(first.pid + i), page);
+      if (!Arrays.equals(page.getBytes(), images[i])) {
+        System.err.println("*** Page with a " + (i + 1)
+            + "-byte repeat was changed\n");
+        status = FAIL;
+        break;
+      }
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS)
+      System.out.println("  Test 8 completed successfully.\n");
+    return status;
+
+  } // protected boolean test8()
+
+  /**
+   * Copies a compressed database while pages are being rewritten, as a
+   * crash would leave it, and checks that the copy still has the pages as
+   * they were last saved.
+   */
+  protected boolean test9() {
+
+    System.out.println("\n  Test 9: Compressed storage after a crash\n");
+    boolean status = PASS;
+    initRandom();
+
+    // write and save some pages
+    System.out.println("  - Write and save text pages\n");
+    new Minibase(DB_PATH, 1000, BUF_SIZE, false, STORAGE_COMPRESSED);
+    int num_pages = 200;
+    PageId first = Minibase.DiskManager.allocate_page(num_pages);
+    byte[][] images = new byte[num_pages][];
+    for (int i = 0; i < num_pages; i++) {
+      Page page = new Page();
+      for (int pos = 0; pos + 20 <= PAGE_SIZE; pos += 20) {
+        page.setStringValue("record " + (i * 100 + pos), pos);
+      }
+      images[i] = page.getBytes();
+      Minibase.DiskManager.write_page(new PageId(first.pid + i), page);
+    }
+    Minibase.DiskManager.closeDB();
+
+    // rewrite them all, and some new ones, then copy the file
+    System.out.println("  - Rewrite pages and copy the file\n");
+    new Minibase(DB_PATH, 1000, BUF_SIZE, true, STORAGE_COMPRESSED);
+    PageId more = Minibase.DiskManager.allocate_page(num_pages);
+    Page page = new Page();
+    for (int i = 0; i < num_pages; i++) {
+      for (int pos = 0; pos + 20 <= PAGE_SIZE; pos += 20) {
+        page.setStringValue("changed " + random.nextInt(), pos);
+      }
+      Minibase.DiskManager.write_page(new PageId(first.pid + i), page);
+      Minibase.DiskManager.write_page(new PageId(more.pid + i), page);
+    }
+    String copy = DB_PATH + ".crash";
+    try {
+      Files.copy(Paths.get(DB_PATH), Paths.get(copy),
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException exc) {
+      System.err.println("*** Couldn't copy the database: " + exc + "\n");
+      status = FAIL;
+    }
+    Minibase.DiskManager.destroyDB();
+
+    // the copy should have the saved pages
+    if (status == PASS) {
+      System.out.println("  - Open the copy and read the saved pages\n");
+      new Minibase(copy, 1000, BUF_SIZE, true, STORAGE_COMPRESSED);
+      for (int i = 0; i < num_pages; i++) {
+        Minibase.DiskManager.read_page(new PageId(first.pid + i), page);
+        if (!Arrays.equals(page.getBytes(), images[i])) {
+          System.err.println("*** Page " + (first.pid + i) + " was changed\n");
+          status = FAIL;
+          break;
+        }
+      }
+      Minibase.DiskManager.destroyDB();
+    }
+
+    if (status == PASS)
+      System.out.println("  Test 9 completed successfully.\n");
+    return status;
+
+  } // protected boolean test9()
+
+  /**
+   * Writes pages during a flush on one thread and without one on another;
+   * only the first thread's pages wait for its end_flush.
+   */
+  protected boolean test10() {
+
+    System.out.println("\n  Test 10: Flushes on separate threads\n");
+    boolean status = PASS;
+    new Minibase(DB_PATH, 100, BUF_SIZE, false);
+    PageId first = Minibase.DiskManager.allocate_page(2);
+    PageId other = new PageId(first.pid + 1);
+    Page page = new Page();
+
+    // this thread's write is saved, but not the other thread's
+    System.out.println("  - Write a page during a flush, and another "
+        + "without one\n");
+    int writes = Minibase.DiskManager.getWriteCount();
+    FlushBatch batch = Minibase.DiskManager.begin_flush();
+    try {
+      page.setIntValue(1, 0);
+      Minibase.DiskManager.write_page(first, page);
+      Thread writer = new Thread(() -> {
+        Page mine = new Page();
+        mine.setIntValue(2, 0);
+        Minibase.DiskManager.write_page(other, mine);
+      });
+      writer.start();
+      writer.join();
+      if (Minibase.DiskManager.getWriteCount() != writes + 1) {
+        System.err.println("*** Other thread's write was deferred\n");
+        status = FAIL;
+      }
+      Minibase.DiskManager.read_page(first, page);
+      if (page.getIntValue(0) != 1) {
+        System.err.println("*** Saved page wasn't read back\n");
+        status = FAIL;
+      }
+    } catch (InterruptedException exc) {
+      status = FAIL;
+    } finally {
+      Minibase.DiskManager.end_flush(batch);
+    }
+
+    // the saved page is written by end_flush
+    if (Minibase.DiskManager.getWriteCount() != writes + 2) {
+      System.err.println("*** Saved page wasn't written by end_flush\n");
+      status = FAIL;
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS)
+      System.out.println("  Test 10 completed successfully.\n");
+    return status;
+
+  } // protected boolean test10()
+
+  /**
+   * Reads the page size from the first page of a database, and rejects
+   * files that don't have a valid one.
+   */
+  protected boolean test11() {
+
+    System.out.println("\n  Test 11: Page size on the first page\n");
+    boolean status = PASS;
+
+    // a closed database should report the size it was created with
+    System.out.println("  - Read the size of a database\n");
+    new Minibase(DB_PATH, 100, BUF_SIZE, false, STORAGE_CHANNEL, 4096,
+        new String[0], REPLACE_CLOCK);
+    Minibase.DiskManager.closeDB();
+    if (DiskMgr.read_page_size(DB_PATH) != 4096) {
+      System.err.println("*** Wrong page size read\n");
+      status = FAIL;
+    }
+    new Minibase(DB_PATH, 100, BUF_SIZE, true, STORAGE_CHANNEL, PAGE_SIZE,
+        new String[0], REPLACE_CLOCK);
+    if (Minibase.DiskManager.getPageSize() != 4096) {
+      System.err.println("*** Database opened with the wrong page size\n");
+      status = FAIL;
+    }
+    Minibase.DiskManager.destroyDB();
+
+    // an empty file, and a page of zeros, have no page size
+    System.out.println("  - Read the size of invalid files\n");
+    for (int length : new int[] { 0, PAGE_SIZE }) {
+      try {
+        Files.write(Paths.get(DB_PATH), new byte[length]);
+        DiskMgr.read_page_size(DB_PATH);
+        System.err.println("*** Read a page size from " + length
+            + " bytes\n");
+        status = FAIL;
+      } catch (IllegalStateException exc) {
+        // expected
+      } catch (IOException exc) {
+        System.err.println("*** " + exc + "\n");
+        status = FAIL;
+      }
+    }
+    delete_minibase();
+
+    if (status == PASS)
+      System.out.println("  Test 11 completed successfully.\n");
+    return status;
+
+  } // protected boolean test11()
+
+  /**
+   * Reads and writes runs of pages that end at the last page of the
+   * database, and rejects invalid runs.
+   */
+  protected boolean test12() {
+
+    System.out.println("\n  Test 12: Runs of pages at the end of the file\n");
+    boolean status = PASS;
+    int num_pages = 100;
+    int count = 8;
+    new Minibase(DB_PATH, num_pages, BUF_SIZE, false);
+    PageId first = new PageId(num_pages - count);
+
+    // the last pages haven't been written yet, so they read as zeros
+    System.out.println("  - Read and write the last pages\n");
+    Page[] pages = new Page[count];
+    for (int i = 0; i < count; i++) {
+      pages[i] = new Page();
+      pages[i].setIntValue(-1, 0);
+    }
+    Minibase.DiskManager.read_pages(first, count, pages);
+    for (int i = 0; i < count; i++) {
+      if (pages[i].getIntValue(0) != 0) {
+        System.err.println("*** Unwritten page " + (first.pid + i)
+            + " isn't zeros\n");
+        status = FAIL;
+        break;
+      }
+      pages[i].setIntValue(first.pid + i, 0);
+    }
+    Minibase.DiskManager.write_pages(first, count, pages);
+
+    // they should still be there after reopening, read with a longer array
+    Minibase.DiskManager.closeDB();
+    new Minibase(DB_PATH, num_pages, BUF_SIZE, true);
+    Page[] out = new Page[count + 1];
+    for (int i = 0; i < out.length; i++) {
+      out[i] = new Page();
+    }
+    Minibase.DiskManager.read_pages(first, count, out);
+    for (int i = 0; i < count; i++) {
+      if (out[i].getIntValue(0) != first.pid + i) {
+        System.err.println("*** Page " + (first.pid + i)
+            + " has the wrong contents\n");
+        status = FAIL;
+        break;
+      }
+    }
+
+    // runs that are empty, too long for the array, or past the end
+    System.out.println("  - Reject invalid runs\n");
+    int[][] runs = { { first.pid, 0 }, { first.pid, -1 },
+        { first.pid - 1, count + 1 }, { first.pid + 1, count },
+        { -1, count } };
+    for (int[] run : runs) {
+      try {
+        Minibase.DiskManager.read_pages(new PageId(run[0]), run[1], pages);
+        System.err.println("*** Read " + run[1] + " pages at " + run[0]
+            + "\n");
+        status = FAIL;
+      } catch (IllegalArgumentException exc) {
+        // expected
+      }
+      try {
+        Minibase.DiskManager.write_pages(new PageId(run[0]), run[1], pages);
+        System.err.println("*** Wrote " + run[1] + " pages at " + run[0]
+            + "\n");
+        status = FAIL;
+      } catch (IllegalArgumentException exc) {
+        // expected
+      }
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS)
+      System.out.println("  Test 12 completed successfully.\n");
+    return status;
+
+  } // protected boolean test12()
+
+  /**
+   * Allocates runs that cross space-map pages, and reuses freed space, also
+   * after reopening the database.
+   */
+  protected boolean test13() {
+
+    System.out.println("\n  Test 13: Runs across space-map pages\n");
+    boolean status = PASS;
+    int bits_per_page = PAGE_SIZE * 8;
+    int num_pages = bits_per_page * 2 + 1000;
+    new Minibase(DB_PATH, num_pages, BUF_SIZE, false);
+
+    // fill the first space-map page up to just before its last pages
+    System.out.println("  - Allocate a run across the first map page\n");
+    PageId next = Minibase.DiskManager.allocate_page();
+    PageId filler = Minibase.DiskManager.allocate_page(
+        bits_per_page - 50 - next.pid - 1);
+    if (filler.pid != next.pid + 1) {
+      System.err.println("*** Run allocated at " + filler.pid + ", not "
+          + (next.pid + 1) + "\n");
+      status = FAIL;
+    }
+    int tail = bits_per_page - 50;
+    PageId across = Minibase.DiskManager.allocate_page(100);
+    if (across.pid != tail) {
+      System.err.println("*** Run allocated at " + across.pid + ", not "
+          + tail + "\n");
+      status = FAIL;
+    }
+
+    // free it, then reopen; the free space should still be one extent
+    System.out.println("  - Free it and reopen\n");
+    Minibase.DiskManager.deallocate_page(across, 100);
+    Minibase.DiskManager.closeDB();
+    new Minibase(DB_PATH, num_pages, BUF_SIZE, true);
+    across = Minibase.DiskManager.allocate_page(100);
+    if (across.pid != tail) {
+      System.err.println("*** Run reallocated at " + across.pid + ", not "
+          + tail + "\n");
+      status = FAIL;
+    }
+
+    // a hole freed in the middle is reused by the runs that fit in it
+    System.out.println("  - Reuse a freed hole\n");
+    PageId hole = new PageId(filler.pid + 100);
+    Minibase.DiskManager.deallocate_page(hole, 10);
+    int[][] runs = { { 4, hole.pid }, { 6, hole.pid + 4 },
+        { 1, across.pid + 100 } };
+    for (int[] run : runs) {
+      PageId pageno = Minibase.DiskManager.allocate_page(run[0]);
+      if (pageno.pid != run[1]) {
+        System.err.println("*** Run of " + run[0] + " allocated at "
+            + pageno.pid + ", not " + run[1] + "\n");
+        status = FAIL;
+      }
+    }
+
+    // a run too long for any extent fails
+    try {
+      Minibase.DiskManager.allocate_page(num_pages - across.pid);
+      System.err.println("*** Allocated a run past the end\n");
+      status = FAIL;
+    } catch (IllegalStateException exc) {
+      // expected
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS)
+      System.out.println("  Test 13 completed successfully.\n");
+    return status;
+
+  } // protected boolean test13()
+
+  /**
+   * Keeps track of the number of allocated pages as runs that cross
+   * space-map pages are allocated and freed, and after reopening.
+   */
+  protected boolean test14() {
+
+    System.out.println("\n  Test 14: Count of allocated pages\n");
+    boolean status = PASS;
+    int bits_per_page = PAGE_SIZE * 8;
+    int num_pages = bits_per_page * 3;
+    new Minibase(DB_PATH, num_pages, BUF_SIZE, false);
+
+    // allocate runs that span map pages, and free parts of them
+    System.out.println("  - Allocate and free runs\n");
+    int expected = Minibase.DiskManager.getAllocCount();
+    PageId first = Minibase.DiskManager.allocate_page(bits_per_page + 500);
+    PageId second = Minibase.DiskManager.allocate_page(bits_per_page);
+    expected += bits_per_page * 2 + 500;
+    Minibase.DiskManager.deallocate_page(new PageId(first.pid + 100),
+        bits_per_page);
+    Minibase.DiskManager.deallocate_page(second, 10);
+    expected -= bits_per_page + 10;
+
+    // freeing pages twice only counts once
+    Minibase.DiskManager.deallocate_page(second, 20);
+    expected -= 10;
+    if (Minibase.DiskManager.getAllocCount() != expected) {
+      System.err.println("*** " + Minibase.DiskManager.getAllocCount()
+          + " pages allocated, not " + expected + "\n");
+      status = FAIL;
+    }
+
+    // reopening recounts the same number from the space map
+    System.out.println("  - Reopen and count again\n");
+    Minibase.DiskManager.closeDB();
+    new Minibase(DB_PATH, num_pages, BUF_SIZE, true);
+    if (Minibase.DiskManager.getAllocCount() != expected) {
+      System.err.println("*** " + Minibase.DiskManager.getAllocCount()
+          + " pages allocated after reopening, not " + expected + "\n");
+      status = FAIL;
+    }
+    Minibase.DiskManager.allocate_page(bits_per_page);
+    expected += bits_per_page;
+    if (Minibase.DiskManager.getAllocCount() != expected) {
+      System.err.println("*** " + Minibase.DiskManager.getAllocCount()
+          + " pages allocated, not " + expected + "\n");
+      status = FAIL;
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS)
+      System.out.println("  Test 14 completed successfully.\n");
+    return status;
+
+  } // protected boolean test14()
+
+  /**
+   * Writes pages with each kind of storage, and reads them back after
+   * reopening the database.
+   */
+  protected boolean test15() {
+
+    System.out.println("\n  Test 15: Round trip with each storage\n");
+    boolean status = PASS;
+    int[] modes = { STORAGE_FILE, STORAGE_MAPPED, STORAGE_DIRECT };
+    for (int mode : modes) {
+      System.out.println("  - Storage mode " + mode + "\n");
+      status &= roundTrip(mode);
+    }
+
+    if (status == PASS)
+      System.out.println("  Test 15 completed successfully.\n");
+    return status;
+
+  } // protected boolean test15()
+
+  /**
+   * Writes random pages one at a time and in runs with the given storage,
+   * then reopens the database and reads them back both ways.
+   */
+  protected boolean roundTrip(int mode) {
+
+    // write the first half a page at a time, and the rest as one run
+    initRandom();
+    new Minibase(DB_PATH, 1000, BUF_SIZE, false, mode);
+    int num_pages = 200;
+    PageId first = Minibase.DiskManager.allocate_page(num_pages);
+    byte[][] images = new byte[num_pages][PAGE_SIZE];
+    Page[] pages = new Page[num_pages];
+    for (int i = 0; i < num_pages; i++) {
+      random.nextBytes(images[i]);
+      pages[i] = new Page(images[i].clone());
+    }
+    int half = num_pages / 2;
+    for (int i = 0; i < half; i++) {
+      Minibase.DiskManager.write_page(new PageId(first.pid + i), pages[i]);
+    }
+    Minibase.DiskManager.write_pages(new PageId(first.pid + half),
+        num_pages - half, Arrays.copyOfRange(pages, half, num_pages));
+    Minibase.DiskManager.closeDB();
+
+    // read the first half as one run, and the rest a page at a time
+    new Minibase(DB_PATH, 1000, BUF_SIZE, true, mode);
+    for (int i = 0; i < num_pages; i++) {
+      pages[i] = new Page();
+    }
+    Minibase.DiskManager.read_pages(first, half, pages);
+    for (int i = half; i < num_pages; i++) {
+      Minibase.DiskManager.read_page(new PageId(first.pid + i), pages[i]);
+    }
+    boolean status = PASS;
+    for (int i = 0; i < num_pages; i++) {
+      if (!Arrays.equals(pages[i].getBytes(), images[i])) {
+        System.err.println("*** Page " + (first.pid + i) + " was changed\n");
+        status = FAIL;
+        break;
+      }
+    }
+    Minibase.DiskManager.destroyDB();
+    return status;
+
+  } // protected boolean roundTrip(int mode)
+
+  /**
+   * Writes pages out of order during a nested flush; they should be read
+   * back before it ends, and be on disk once the outermost flush ends.
+   */
+  protected boolean test16() {
+
+    System.out.println("\n  Test 16: Deferred writes during a flush\n");
+    boolean status = PASS;
+    new Minibase(DB_PATH, 100, BUF_SIZE, false);
+    PageId first = Minibase.DiskManager.allocate_page(20);
+    int[] order = { 7, 3, 4, 15, 5, 14, 3 };
+
+    // nothing is written until the outermost flush ends
+    System.out.println("  - Write pages during a nested flush\n");
+    int writes = Minibase.DiskManager.getWriteCount();
+    FlushBatch outer = Minibase.DiskManager.begin_flush();
+    try {
+      FlushBatch inner = Minibase.DiskManager.begin_flush();
+      try {
+        for (int i = 0; i < order.length; i++) {
+          Page page = new Page();
+          page.setIntValue(i, 0);
+          Minibase.DiskManager.write_page(new PageId(first.pid + order[i]),
+              page);
+        }
+      } finally {
+        Minibase.DiskManager.end_flush(inner);
+      }
+      if (Minibase.DiskManager.getWriteCount() != writes) {
+        System.err.println("*** Pages were written before the flush ended\n");
+        status = FAIL;
+      }
+
+      // the saved pages are read back, alone or in runs
+      Page page = new Page();
+      Minibase.DiskManager.read_page(new PageId(first.pid + 7), page);
+      if (page.getIntValue(0) != 0) {
+        System.err.println("*** Saved page wasn't read back\n");
+        status = FAIL;
+      }
+      Page[] pages = new Page[4];
+      for (int i = 0; i < pages.length; i++) {
+        pages[i] = new Page();
+      }
+      Minibase.DiskManager.read_pages(new PageId(first.pid + 3), 4, pages);
+      int[] values = { 6, 2, 4, 0 };
+      for (int i = 0; i < pages.length; i++) {
+        if (pages[i].getIntValue(0) != values[i]) {
+          System.err.println("*** Page " + (first.pid + 3 + i)
+              + " wasn't read back in a run\n");
+          status = FAIL;
+          break;
+        }
+      }
+    } finally {
+      Minibase.DiskManager.end_flush(outer);
+    }
+
+    // each page is written once, with its last contents
+    System.out.println("  - End the flush and reopen\n");
+    if (Minibase.DiskManager.getWriteCount() != writes + 6) {
+      System.err.println("*** " + (Minibase.DiskManager.getWriteCount()
+          - writes) + " pages written by the flush, not 6\n");
+      status = FAIL;
+    }
+    Minibase.DiskManager.closeDB();
+    new Minibase(DB_PATH, 100, BUF_SIZE, true);
+    int[] last = new int[20];
+    Arrays.fill(last, -1);
+    for (int i = 0; i < order.length; i++) {
+      last[order[i]] = i;
+    }
+    Page page = new Page();
+    for (int i = 0; i < last.length; i++) {
+      if (last[i] >= 0) {
+        Minibase.DiskManager.read_page(new PageId(first.pid + i), page);
+        if (page.getIntValue(0) != last[i]) {
+          System.err.println("*** Page " + (first.pid + i)
+              + " wasn't written by the flush\n");
+          status = FAIL;
+        }
+      }
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS)
+      System.out.println("  Test 16 completed successfully.\n");
+    return status;
+
+  } // protected boolean test16()
+
+  /**
+   * Adds, deletes, and looks up enough files to fill several directory
+   * pages, also after reopening the database.
+   */
+  protected boolean test17() {
+
+    System.out.println("\n  Test 17: File library across directory pages\n");
+    boolean status = PASS;
+    new Minibase(DB_PATH, 1000, BUF_SIZE, false);
+    int num_files = 200;
+    int[] starts = new int[num_files];
+
+    // add the files, which takes several directory pages
+    System.out.println("  - Add and look up files\n");
+    int allocated = Minibase.DiskManager.getAllocCount();
+    for (int i = 0; i < num_files; i++) {
+      starts[i] = i + 1;
+      Minibase.DiskManager.add_file_entry("file" + i, new PageId(starts[i]));
+    }
+    if (Minibase.DiskManager.getAllocCount() < allocated + 2) {
+      System.err.println("*** The files fit on one directory page\n");
+      status = FAIL;
+    }
+    status &= checkFiles(starts);
+    try {
+      Minibase.DiskManager.add_file_entry("file7", new PageId(1));
+      System.err.println("*** Added a file twice\n");
+      status = FAIL;
+    } catch (IllegalArgumentException exc) {
+      // expected
+    }
+
+    // delete every third file, then add them back in the freed slots
+    System.out.println("  - Delete files and add them back\n");
+    for (int i = 0; i < num_files; i += 3) {
+      Minibase.DiskManager.delete_file_entry("file" + i);
+      starts[i] = -1;
+    }
+    status &= checkFiles(starts);
+    try {
+      Minibase.DiskManager.delete_file_entry("file0");
+      System.err.println("*** Deleted a file twice\n");
+      status = FAIL;
+    } catch (IllegalArgumentException exc) {
+      // expected
+    }
+    allocated = Minibase.DiskManager.getAllocCount();
+    for (int i = 0; i < num_files; i += 3) {
+      starts[i] = num_files + i;
+      Minibase.DiskManager.add_file_entry("file" + i, new PageId(starts[i]));
+    }
+    if (Minibase.DiskManager.getAllocCount() != allocated) {
+      System.err.println("*** Freed slots weren't reused\n");
+      status = FAIL;
+    }
+
+    // the library should be the same after reopening
+    System.out.println("  - Reopen and look up files\n");
+    Minibase.DiskManager.closeDB();
+    new Minibase(DB_PATH, 1000, BUF_SIZE, true);
+    status &= checkFiles(starts);
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS)
+      System.out.println("  Test 17 completed successfully.\n");
+    return status;
+
+  } // protected boolean test17()
+
+  /**
+   * Opens a database written in the original layout, whose first page has
+   * no page size, space-map count, or stripe count.
+   */
+  protected boolean test18() {
+
+    System.out.println("\n  Test 18: Database in the original layout\n");
+    boolean status = PASS;
+    int num_pages = 100;
+    int entries = 17;
+    int entry_size = 4 + NAME_MAXLEN + 2;
+
+    // the first page has the library and the page count, page 1 the space
+    // map; pages 0 to 2 are in use, and page 2 is the first page of a file
+    System.out.println("  - Write a 1 KB database by hand\n");
+    ByteBuffer file = ByteBuffer.allocate(num_pages * 1024);
+    file.putInt(0, INVALID_PAGEID);
+    file.putInt(4, entries);
+    for (int i = 0; i < entries; i++) {
+      file.putInt(8 + i * entry_size, INVALID_PAGEID);
+    }
+    file.putInt(8, 2);
+    file.position(12);
+    file.put("legacy".getBytes());
+    file.putInt(1024 - 4, num_pages);
+    file.put(1024, (byte) 0x07);
+    try {
+      Files.write(Paths.get(DB_PATH), file.array());
+    } catch (IOException exc) {
+      System.err.println("*** " + exc + "\n");
+      return FAIL;
+    }
+
+    // it should open with 1 KB pages, whatever size was asked for
+    System.out.println("  - Open the database and use it\n");
+    if (DiskMgr.read_page_size(DB_PATH) != 1024) {
+      System.err.println("*** Wrong page size read\n");
+      status = FAIL;
+    }
+    new Minibase(DB_PATH, num_pages, BUF_SIZE, true, STORAGE_CHANNEL, 4096,
+        new String[0], REPLACE_CLOCK);
+    if (Minibase.DiskManager.getPageSize() != 1024) {
+      System.err.println("*** Database opened with the wrong page size\n");
+      status = FAIL;
+    }
+    PageId pageno = Minibase.DiskManager.get_file_entry("legacy");
+    if ((pageno == null) || (pageno.pid != 2)) {
+      System.err.println("*** The file library wasn't read\n");
+      status = FAIL;
+    }
+    if (Minibase.DiskManager.getAllocCount() != 3) {
+      System.err.println("*** The space map wasn't read\n");
+      status = FAIL;
+    }
+    PageId newpage = Minibase.DiskManager.allocate_page();
+    if (newpage.pid < 3) {
+      System.err.println("*** Allocated page " + newpage.pid
+          + ", which is in use\n");
+      status = FAIL;
+    }
+    Minibase.DiskManager.add_file_entry("added", newpage);
+
+    // both files should still be there after reopening
+    System.out.println("  - Reopen the database\n");
+    Minibase.DiskManager.closeDB();
+    new Minibase(DB_PATH, num_pages, BUF_SIZE, true);
+    pageno = Minibase.DiskManager.get_file_entry("added");
+    if ((pageno == null) || (pageno.pid != newpage.pid)
+        || (Minibase.DiskManager.get_file_entry("legacy") == null)
+        || (Minibase.DiskManager.getAllocCount() != 4)) {
+      System.err.println("*** The database changed after reopening\n");
+      status = FAIL;
+    }
+    Minibase.DiskManager.destroyDB();
+
+    if (status == PASS)
+      System.out.println("  Test 18 completed successfully.\n");
+    return status;
+
+  } // protected boolean test18()
+
+  /**
+   * Checks that each file i is in the library with the given first page,
+   * or isn't if that is -1.
+   */
+  protected boolean checkFiles(int[] starts) {
+    for (int i = 0; i < starts.length; i++) {
+      PageId pageno = Minibase.DiskManager.get_file_entry("file" + i);
+      int pid = (pageno == null) ? -1 : pageno.pid;
+      if (pid != starts[i]) {
+        System.err.println("*** File " + i + " starts at " + pid + ", not "
+            + starts[i] + "\n");
+        return FAIL;
+      }
+    }
+    return PASS;
+  }
+
+} // class DMTest extends TestDriver
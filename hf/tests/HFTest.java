@@ -529,7 +529,7 @@ class HFTest extends TestDriver {
 	  
 	//Try to insert a record that is so large it requires a new data page 
     //Hopefully it requires few if any I/Os.
-	record = new byte[PAGE_SIZE - 24];
+	record = new byte[Minibase.PageSize - 24];
     try {
       rid = f.insertRecord(record);
     } catch (Exception e) {
@@ -611,7 +611,7 @@ class HFTest extends TestDriver {
     scan = null;
 
       System.out.println("  - Try to insert a record that's too long");
-      record = new byte[PAGE_SIZE + 4];
+      record = new byte[Minibase.PageSize + 4];
       try {
         rid = f.insertRecord(record);
         status = FAIL;
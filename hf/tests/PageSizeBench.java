@@ -0,0 +1,142 @@
+package tests;
+
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+/**
+ * Benchmark that runs the same workload on databases with different page
+ * sizes.  The data volume and the buffer pool's memory are fixed, so larger
+ * pages mean fewer (but bigger) I/Os for sequential access and more bytes
+ * moved per random lookup.
+ */
+class PageSizeBench extends TestDriver {
+
+  /** The display name of the benchmark. */
+  private static final String TEST_NAME = "page size benchmark";
+
+  /** Page sizes to compare (in bytes). */
+  private static final int[] PAGE_SIZES = { 1024, 4096, 8192, 16384 };
+
+  /** Total size of the records (in bytes). */
+  private static final int DATA_SIZE = 16 * 1024 * 1024;
+
+  /** Memory given to the buffer pool (in bytes). */
+  private static final int BUF_BYTES = 512 * 1024;
+
+  /** Size of each record (in bytes). */
+  private static final int REC_SIZE = 100;
+
+  /** Number of random record lookups. */
+  private static final int NUM_LOOKUPS = 20000;
+
+  /**
+   * Benchmark entry point; runs the workload once per page size.
+   */
+  public static void main(String argv[]) {
+
+    PageSizeBench psb = new PageSizeBench();
+    psb.initCounts();
+    System.out.println("\n" + "Running " + TEST_NAME + "...");
+    boolean status = PASS;
+    for (int page_size : PAGE_SIZES) {
+      status &= psb.run(page_size);
+    }
+    psb.printSummary(3);
+
+    // display the final results
+    System.out.println();
+    if (status != PASS) {
+      System.out.println("Error(s) encountered during " + TEST_NAME + ".");
+    } else {
+      System.out.println("Completed " + TEST_NAME + " successfully!");
+    }
+
+  } // public static void main (String argv[])
+
+  /**
+   * Loads, scans, and probes the records on a new database with the given
+   * page size.
+   */
+  protected boolean run(int page_size) {
+
+    System.out.println("\n  Page size " + page_size + "\n");
+    boolean status = PASS;
+    initRandom();
+
+    // size the database and the pool for a fixed amount of memory
+    int recs_per_page = page_size / REC_SIZE;
+    int num_pages = DATA_SIZE / page_size;
+    int num_recs = num_pages * recs_per_page;
+    DB_SIZE = num_pages * 2;
+    BUF_SIZE = BUF_BYTES / page_size;
+    new Minibase(DB_PATH, DB_SIZE, BUF_SIZE, false, STORAGE_CHANNEL,
+        page_size);
+    String prefix = (page_size / 1024) + "K ";
+
+    // load the records sequentially
+    saveCounts(null);
+    long start = System.nanoTime();
+    PageId first = Minibase.DiskManager.allocate_page(num_pages);
+    Page page = new Page();
+    for (int i = 0; i < num_pages; i++) {
+      PageId pageno = new PageId(first.pid + i);
+      Minibase.BufferManager.pinPage(pageno, page, PIN_MEMCPY);
+      for (int j = 0; j < recs_per_page; j++) {
+        page.setIntValue(i * recs_per_page + j, j * REC_SIZE);
+      }
+      Minibase.BufferManager.unpinPage(pageno, UNPIN_DIRTY);
+      page = new Page();
+    }
+    Minibase.BufferManager.flushAllFrames();
+    printTime("load", start);
+    saveCounts(prefix + "load");
+
+    // scan all of the records
+    saveCounts(null);
+    start = System.nanoTime();
+    for (int i = 0; i < num_pages; i++) {
+      PageId pageno = new PageId(first.pid + i);
+      Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+      for (int j = 0; j < recs_per_page; j++) {
+        if (page.getIntValue(j * REC_SIZE) != i * recs_per_page + j) {
+          System.out.println("    Wrong record on page " + pageno.pid);
+          status = FAIL;
+        }
+      }
+      Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+    }
+    printTime("scan", start);
+    saveCounts(prefix + "scan");
+
+    // look up records at random
+    saveCounts(null);
+    start = System.nanoTime();
+    for (int i = 0; i < NUM_LOOKUPS; i++) {
+      int recno = random.nextInt(num_recs);
+      PageId pageno = new PageId(first.pid + recno / recs_per_page);
+      int offset = (recno % recs_per_page) * REC_SIZE;
+      Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+      if (page.getIntValue(offset) != recno) {
+        System.out.println("    Wrong record " + recno);
+        status = FAIL;
+      }
+      Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+    }
+    printTime("probe", start);
+    saveCounts(prefix + "probe");
+
+    Minibase.DiskManager.destroyDB();
+    return status;
+
+  } // protected boolean run(int page_size)
+
+  /**
+   * Prints the time elapsed since the given start, in milliseconds.
+   */
+  protected void printTime(String desc, long start) {
+    System.out.println("    " + desc + ": "
+        + (System.nanoTime() - start) / 1000000 + " ms");
+  }
+
+} // class PageSizeBench extends TestDriver
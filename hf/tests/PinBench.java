@@ -0,0 +1,107 @@
+package tests;
+
+import global.Minibase;
+import global.Page;
+import global.PageId;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Benchmark that pins and unpins random pages from several threads at once,
+ * and reports the throughput.  The hot workload fits in the buffer pool, so
+ * it measures the cost of pinning alone; the cold one doesn't, so most pins
+ * also evict and read a page.
+ */
+class PinBench extends TestDriver {
+
+  /** The display name of the benchmark. */
+  private static final String TEST_NAME = "pin/unpin benchmark";
+
+  /** Numbers of threads to compare. */
+  private static final int[] NUM_THREADS = { 1, 2, 4, 8 };
+
+  /** Total number of pins in each hot run, split between the threads. */
+  private static final int NUM_PINS = 2000000;
+
+  /**
+   * Benchmark entry point; runs both workloads with each number of threads.
+   */
+  public static void main(String argv[]) {
+
+    PinBench pb = new PinBench();
+    pb.BUF_SIZE = 1000;
+    pb.create_minibase();
+    PageId first = Minibase.DiskManager.allocate_page(pb.BUF_SIZE * 4);
+    Minibase.BufferManager.setReadAhead(false);
+
+    System.out.println("\n" + "Running " + TEST_NAME + "...");
+    boolean status = PASS;
+    for (int num_threads : NUM_THREADS) {
+      status &= pb.run("hot ", first, pb.BUF_SIZE / 2, NUM_PINS, num_threads);
+    }
+    for (int num_threads : NUM_THREADS) {
+      status &= pb.run("cold", first, pb.BUF_SIZE * 4, NUM_PINS / 10,
+          num_threads);
+    }
+    Minibase.DiskManager.destroyDB();
+
+    // display the final results
+    System.out.println();
+    if (status != PASS) {
+      System.out.println("Error(s) encountered during " + TEST_NAME + ".");
+    } else {
+      System.out.println("Completed " + TEST_NAME + " successfully!");
+    }
+
+  } // public static void main (String argv[])
+
+  /**
+   * Pins and unpins random pages among the given number of pages, splitting
+   * the given number of pins between the given number of threads.
+   */
+  protected boolean run(String desc, PageId first, int num_pages,
+      int total_pins, int num_threads) {
+
+    // start all the threads, and wait for them to finish
+    int num_pins = total_pins / num_threads;
+    ArrayList<Thread> threads = new ArrayList<Thread>();
+    boolean[] failed = new boolean[1];
+    long start = System.nanoTime();
+    for (int t = 0; t < num_threads; t++) {
+      long seed = t;
+      Thread thread = new Thread(() -> {
+        Random rand = new Random(seed);
+        Page page = new Page();
+        PageId pageno = new PageId();
+        for (int i = 0; i < num_pins; i++) {
+          pageno.pid = first.pid + rand.nextInt(num_pages);
+          Minibase.BufferManager.pinPage(pageno, page, PIN_DISKIO);
+          Minibase.BufferManager.unpinPage(pageno, UNPIN_CLEAN);
+        }
+      });
+      thread.setUncaughtExceptionHandler((thr, exc) -> {
+        exc.printStackTrace();
+        failed[0] = true;
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (InterruptedException exc) {
+        failed[0] = true;
+      }
+    }
+
+    // report the throughput
+    long nanos = System.nanoTime() - start;
+    long total = (long) num_pins * num_threads;
+    System.out.println("    " + desc + " " + num_threads + " threads: "
+        + (total * 1000000000L / nanos) + " pins/s");
+    return !failed[0];
+
+  } // protected boolean run(String desc, PageId first, int num_pages, ...)
+
+} // class PinBench extends TestDriver